@@ -0,0 +1,204 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Local stand-in for a server speaking the default {@link
+ * com.jungle.majorhttps.request.upload.ChunkedUploadProtocol}.
+ */
+class ChunkedUploadServer extends Dispatcher {
+
+    static final String PATH = "/upload";
+
+
+    private static class Upload {
+
+        final long mLength;
+        final TreeMap<Long, byte[]> mRanges = new TreeMap<>();
+        byte[] mCommitted;
+
+
+        Upload(long length) {
+            mLength = length;
+        }
+    }
+
+
+    private final Map<String, Upload> mUploads = new HashMap<>();
+    private final Map<Integer, Integer> mChunkFailures = new HashMap<>();
+    private final Map<Integer, Integer> mChunkPuts = new HashMap<>();
+    private int mCommitFailure;
+    private int mNextId = 1;
+    private int mCreateCount;
+    private int mCommitCount;
+
+
+    /**
+     * Answer the next PUT of `chunk` with `status`.
+     */
+    synchronized void failChunkOnce(int chunk, int status) {
+        mChunkFailures.put(chunk, status);
+    }
+
+    synchronized void failCommitOnce(int status) {
+        mCommitFailure = status;
+    }
+
+    /**
+     * An upload created earlier, as if by a previous run of the app.
+     */
+    synchronized String addUpload(long length) {
+        String uploadId = "u" + mNextId++;
+        mUploads.put(uploadId, new Upload(length));
+        return uploadId;
+    }
+
+    synchronized void putRange(String uploadId, long offset, byte[] data) {
+        mUploads.get(uploadId).mRanges.put(offset, data);
+    }
+
+    synchronized byte[] getCommitted(String uploadId) {
+        Upload upload = mUploads.get(uploadId);
+        return upload != null ? upload.mCommitted : null;
+    }
+
+    synchronized int getCreateCount() {
+        return mCreateCount;
+    }
+
+    synchronized int getCommitCount() {
+        return mCommitCount;
+    }
+
+    synchronized int getChunkPutCount(int chunk) {
+        Integer count = mChunkPuts.get(chunk);
+        return count != null ? count : 0;
+    }
+
+    synchronized int getChunkPutCount() {
+        int total = 0;
+        for (int count : mChunkPuts.values()) {
+            total += count;
+        }
+
+        return total;
+    }
+
+    @Override
+    public synchronized MockResponse dispatch(RecordedRequest request) {
+        String path = request.getPath();
+        if (!path.startsWith(PATH)) {
+            return new MockResponse().setResponseCode(404);
+        }
+
+        String[] segments = path.substring(PATH.length()).split("/");
+        String method = request.getMethod();
+        if (segments.length <= 1 && "POST".equals(method)) {
+            return create(request);
+        }
+
+        Upload upload = segments.length == 3 ? mUploads.get(segments[1]) : null;
+        if (upload == null) {
+            return new MockResponse().setResponseCode(404);
+        }
+
+        if ("PUT".equals(method)) {
+            return putChunk(request, upload, Integer.parseInt(segments[2]));
+        } else if ("POST".equals(method) && "commit".equals(segments[2])) {
+            return commit(segments[1], upload);
+        }
+
+        return new MockResponse().setResponseCode(405);
+    }
+
+    private MockResponse create(RecordedRequest request) {
+        ++mCreateCount;
+        String length = request.getHeader("Upload-Length");
+        if (length == null) {
+            return new MockResponse().setResponseCode(400);
+        }
+
+        String uploadId = "u" + mNextId++;
+        mUploads.put(uploadId, new Upload(Long.parseLong(length)));
+        return new MockResponse().setResponseCode(201).setHeader("Upload-Id", uploadId);
+    }
+
+    private MockResponse putChunk(RecordedRequest request, Upload upload, int chunk) {
+        Integer count = mChunkPuts.get(chunk);
+        mChunkPuts.put(chunk, count != null ? count + 1 : 1);
+
+        Integer failure = mChunkFailures.remove(chunk);
+        if (failure != null) {
+            return new MockResponse().setResponseCode(failure);
+        }
+
+        // bytes first-last/total
+        String range = request.getHeader("Content-Range");
+        if (range == null || !range.startsWith("bytes ")) {
+            return new MockResponse().setResponseCode(400);
+        }
+
+        String[] parts = range.substring("bytes ".length()).split("[-/]");
+        long first = Long.parseLong(parts[0]);
+        long last = Long.parseLong(parts[1]);
+        byte[] data = request.getBody().readByteArray();
+        if (last - first + 1 != data.length || Long.parseLong(parts[2]) != upload.mLength) {
+            return new MockResponse().setResponseCode(400);
+        }
+
+        upload.mRanges.put(first, data);
+        return new MockResponse().setResponseCode(204);
+    }
+
+    private MockResponse commit(String uploadId, Upload upload) {
+        ++mCommitCount;
+        if (mCommitFailure != 0) {
+            int status = mCommitFailure;
+            mCommitFailure = 0;
+            return new MockResponse().setResponseCode(status);
+        }
+
+        byte[] content = new byte[(int) upload.mLength];
+        long position = 0;
+        for (Map.Entry<Long, byte[]> range : upload.mRanges.entrySet()) {
+            if (range.getKey() != position) {
+                return new MockResponse().setResponseCode(409);
+            }
+
+            byte[] data = range.getValue();
+            System.arraycopy(data, 0, content, (int) position, data.length);
+            position += data.length;
+        }
+
+        if (position != upload.mLength) {
+            return new MockResponse().setResponseCode(409);
+        }
+
+        upload.mCommitted = content;
+        return new MockResponse().setResponseCode(200).setBody("committed " + uploadId);
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import com.jungle.majorhttps.model.binary.ChunkedUploadRequestModel;
+import com.jungle.majorhttps.model.listener.ModelListener;
+import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.upload.UploadState;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ChunkedUploadTest {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int CHUNK_COUNT = 5;
+    private static final int FILE_SIZE = CHUNK_SIZE * (CHUNK_COUNT - 1) + 100;
+    private static final long TIMEOUT_SECONDS = 30;
+
+
+    private static class Result {
+
+        final CountDownLatch mLatch = new CountDownLatch(1);
+        String mResponse;
+        int mErrorCode;
+    }
+
+
+    private MockWebServer mServer;
+    private ChunkedUploadServer mDispatcher;
+    private MajorHttpClient mClient;
+    private String mUrl;
+    private File mFile;
+    private String mStateFilePath;
+    private byte[] mContent;
+
+
+    @Before
+    public void setUp() throws IOException {
+        mDispatcher = new ChunkedUploadServer();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(mDispatcher);
+        mServer.start();
+        mUrl = mServer.url(ChunkedUploadServer.PATH).toString();
+
+        Context context = InstrumentationRegistry.getTargetContext();
+        mClient = new MajorHttpClient(context);
+
+        mContent = new byte[FILE_SIZE];
+        new Random(FILE_SIZE).nextBytes(mContent);
+        mFile = new File(context.getCacheDir(), "chunked-upload-test.bin");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(mContent);
+        } finally {
+            out.close();
+        }
+
+        mStateFilePath = mFile.getPath() + ".upload.state";
+        new File(mStateFilePath).delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mClient.onTerminate();
+        mServer.shutdown();
+        mFile.delete();
+        new File(mStateFilePath).delete();
+    }
+
+    @Test
+    public void createsUploadsChunksAndCommits() throws InterruptedException {
+        Result result = upload();
+
+        assertEquals(0, result.mErrorCode);
+        assertEquals("committed u1", result.mResponse);
+        assertArrayEquals(mContent, mDispatcher.getCommitted("u1"));
+        assertEquals(1, mDispatcher.getCreateCount());
+        assertEquals(CHUNK_COUNT, mDispatcher.getChunkPutCount());
+        assertEquals(1, mDispatcher.getCommitCount());
+        assertFalse(new File(mStateFilePath).exists());
+    }
+
+    @Test
+    public void retriesFailedChunk() throws InterruptedException {
+        mDispatcher.failChunkOnce(2, 503);
+        Result result = upload();
+
+        assertEquals(0, result.mErrorCode);
+        assertEquals(2, mDispatcher.getChunkPutCount(2));
+        assertEquals(CHUNK_COUNT + 1, mDispatcher.getChunkPutCount());
+        assertArrayEquals(mContent, mDispatcher.getCommitted("u1"));
+    }
+
+    @Test
+    public void resumesFromSavedState() throws IOException, InterruptedException {
+        String uploadId = mDispatcher.addUpload(FILE_SIZE);
+        saveState(uploadId, 0, 1);
+        mDispatcher.putRange(uploadId, 0, Arrays.copyOfRange(mContent, 0, CHUNK_SIZE * 2));
+
+        Result result = upload();
+
+        assertEquals(0, result.mErrorCode);
+        assertEquals(0, mDispatcher.getCreateCount());
+        assertEquals(0, mDispatcher.getChunkPutCount(0));
+        assertEquals(0, mDispatcher.getChunkPutCount(1));
+        assertEquals(CHUNK_COUNT - 2, mDispatcher.getChunkPutCount());
+        assertArrayEquals(mContent, mDispatcher.getCommitted(uploadId));
+    }
+
+    @Test
+    public void restartsLostUpload() throws IOException, InterruptedException {
+        // The server never heard of this upload, so the first chunk gets a 404.
+        saveState("expired", 0);
+
+        Result result = upload();
+
+        assertEquals(0, result.mErrorCode);
+        assertEquals(1, mDispatcher.getCreateCount());
+        // Chunk 0 was saved as done, it is only sent again after the restart.
+        assertEquals(1, mDispatcher.getChunkPutCount(0));
+        assertArrayEquals(mContent, mDispatcher.getCommitted("u1"));
+    }
+
+    @Test
+    public void keepsStateWhenCommitFails() throws InterruptedException {
+        mDispatcher.failCommitOnce(409);
+        Result result = upload();
+
+        assertEquals(409, result.mErrorCode);
+        assertNull(mDispatcher.getCommitted("u1"));
+        assertTrue(new File(mStateFilePath).exists());
+
+        // Every chunk is saved as done, so loading again only commits.
+        Result retry = upload();
+
+        assertEquals(0, retry.mErrorCode);
+        assertEquals(1, mDispatcher.getCreateCount());
+        assertEquals(CHUNK_COUNT, mDispatcher.getChunkPutCount());
+        assertEquals(2, mDispatcher.getCommitCount());
+        assertArrayEquals(mContent, mDispatcher.getCommitted("u1"));
+    }
+
+    private void saveState(String uploadId, int... doneChunks) throws IOException {
+        UploadState state = UploadState.create(
+                mStateFilePath, mUrl, mFile.getPath(), CHUNK_SIZE);
+
+        state.setUploadId(uploadId);
+        for (int chunk : doneChunks) {
+            state.setChunkDone(chunk);
+        }
+
+        state.save();
+    }
+
+    private Result upload() throws InterruptedException {
+        final Result result = new Result();
+        final ChunkedUploadRequestModel model = ChunkedUploadRequestModel.newModel()
+                .filePath(mFile.getPath())
+                .chunkSize(CHUNK_SIZE)
+                .url(mUrl)
+                .client(mClient);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                model.load(new ModelListener<String>() {
+                    @Override
+                    public void onSuccess(NetworkResp networkResp, String response) {
+                        result.mResponse = response;
+                        result.mLatch.countDown();
+                    }
+
+                    @Override
+                    public void onError(int errorCode, String message) {
+                        result.mErrorCode = errorCode;
+                        result.mLatch.countDown();
+                    }
+                });
+            }
+        });
+
+        assertTrue("Upload timed out.", result.mLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return result;
+    }
+}
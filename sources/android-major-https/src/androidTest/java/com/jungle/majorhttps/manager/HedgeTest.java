@@ -0,0 +1,136 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import com.jungle.majorhttps.model.listener.ModelListener;
+import com.jungle.majorhttps.model.text.TextRequestModel;
+import com.jungle.majorhttps.request.base.NetworkResp;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class HedgeTest {
+
+    private static final long HEDGE_DELAY_MS = 200;
+    private static final long TIMEOUT_SECONDS = 10;
+
+
+    private static class Result {
+
+        final CountDownLatch mLatch = new CountDownLatch(1);
+        String mResponse;
+        int mErrorCode;
+    }
+
+
+    /**
+     * Stalls the first request until released, every later one is answered at once.
+     */
+    private static class StallingServer extends Dispatcher {
+
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final AtomicInteger mRequestCount = new AtomicInteger();
+
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            if (mRequestCount.incrementAndGet() == 1) {
+                mRelease.await(TIMEOUT_SECONDS * 2, TimeUnit.SECONDS);
+                return new MockResponse().setBody("primary");
+            }
+
+            return new MockResponse().setBody("hedge");
+        }
+    }
+
+
+    private MockWebServer mServer;
+    private StallingServer mDispatcher;
+    private MajorHttpClient mClient;
+
+
+    @Before
+    public void setUp() throws IOException {
+        mDispatcher = new StallingServer();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(mDispatcher);
+        mServer.start();
+
+        mClient = new MajorHttpClient(InstrumentationRegistry.getTargetContext());
+        mClient.setHedgeBudget(null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mDispatcher.mRelease.countDown();
+        mClient.onTerminate();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void hedgeCompletesWhilePrimaryStalls() throws InterruptedException {
+        final Result result = new Result();
+        final TextRequestModel model = TextRequestModel.newModel()
+                .url(mServer.url("/hedge").toString())
+                .hedge(HEDGE_DELAY_MS)
+                .client(mClient);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                model.load(new ModelListener<String>() {
+                    @Override
+                    public void onSuccess(NetworkResp networkResp, String response) {
+                        result.mResponse = response;
+                        result.mLatch.countDown();
+                    }
+
+                    @Override
+                    public void onError(int errorCode, String message) {
+                        result.mErrorCode = errorCode;
+                        result.mLatch.countDown();
+                    }
+                });
+            }
+        });
+
+        assertTrue("Request timed out.", result.mLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, result.mErrorCode);
+        assertEquals("hedge", result.mResponse);
+        // The primary is still held by the server.
+        assertEquals(1, mDispatcher.mRelease.getCount());
+        assertEquals(2, mDispatcher.mRequestCount.get());
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import com.jungle.majorhttps.model.binary.ChunkedUploadRequestModel;
+import com.jungle.majorhttps.model.listener.ModelRequestListener;
+import com.jungle.majorhttps.network.CommonError;
+import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.base.ProgressReporter;
+import com.jungle.majorhttps.request.upload.ChunkedUploadProtocol;
+import com.jungle.majorhttps.request.upload.FileRangeRequestBody;
+import com.jungle.majorhttps.request.upload.UploadState;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs a chunked upload: creates it on the server, sends the missing chunks of its
+ * {@link UploadState} over a bounded number of requests and commits it.
+ *
+ * Every call is a request of its own, retried by the client like any other.
+ * Callbacks all arrive on the main thread.
+ */
+class ChunkedUpload implements CompositeCall {
+
+    private final MajorHttpClient mClient;
+    private final int mSeqId;
+    private final ChunkedUploadRequestModel.Request mRequest;
+    private final ChunkedUploadProtocol mProtocol;
+    private final ModelRequestListener<String> mListener;
+    private final ProgressReporter mProgress;
+
+    private UploadState mState;
+    private int mCallSeqId;
+    private Map<Integer, Integer> mRunningChunks = new HashMap<>();
+    private int mNextChunk;
+    private boolean mRestarted;
+    private boolean mFinished;
+
+
+    ChunkedUpload(
+            MajorHttpClient client, int seqId,
+            ChunkedUploadRequestModel.Request request, ModelRequestListener<String> listener) {
+
+        mClient = client;
+        mSeqId = seqId;
+        mRequest = request;
+        mProtocol = request.getProtocol();
+        mListener = listener;
+        mProgress = request.createProgressReporter(seqId);
+    }
+
+    void start() {
+        String filePath = mRequest.getFilePath();
+        if (filePath == null || !new File(filePath).isFile()) {
+            fail(CommonError.FAILED, "Cannot upload " + filePath + ", no such file.");
+            return;
+        }
+
+        mState = UploadState.load(mRequest.getStateFilePath(),
+                mRequest.getUrl(), filePath, mRequest.getChunkSize());
+
+        if (mState == null || mState.getUploadId().length() == 0) {
+            create();
+        } else {
+            startChunks();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        mFinished = true;
+        cancelRequests();
+    }
+
+    private void create() {
+        mState = UploadState.create(mRequest.getStateFilePath(),
+                mRequest.getUrl(), mRequest.getFilePath(), mRequest.getChunkSize());
+
+        mCallSeqId = mClient.loadUploadCall(mRequest, mProtocol.getCreateMethod(),
+                mProtocol.getCreateUrl(mRequest.getUrl()),
+                mProtocol.getCreateHeaders(mState, mRequest.getFileName()), null,
+                new ModelRequestListener<String>() {
+                    @Override
+                    public void onSuccess(int seqId, NetworkResp networkResp, String response) {
+                        onCreated(networkResp, response);
+                    }
+
+                    @Override
+                    public void onError(int seqId, int errorCode, String message) {
+                        fail(errorCode, message);
+                    }
+                });
+    }
+
+    private void onCreated(NetworkResp networkResp, String response) {
+        if (mFinished) {
+            return;
+        }
+
+        String uploadId = mProtocol.parseUploadId(networkResp, response);
+        if (uploadId == null) {
+            fail(CommonError.FAILED, "The server returned no upload id.");
+            return;
+        }
+
+        mState.setUploadId(uploadId);
+        try {
+            mState.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(CommonError.FAILED, e.toString());
+            return;
+        }
+
+        startChunks();
+    }
+
+    private void startChunks() {
+        mNextChunk = 0;
+        mRunningChunks.clear();
+        if (mProgress != null) {
+            mProgress.start(mState.getUploadedBytes(), mState.getFileLength());
+        }
+
+        for (int i = 0; i < mRequest.getParallelism() && !mFinished; ++i) {
+            if (!loadNextChunk()) {
+                break;
+            }
+        }
+
+        if (mRunningChunks.isEmpty() && !mFinished) {
+            commit();
+        }
+    }
+
+    /**
+     * @return false if no chunk is left to start.
+     */
+    private boolean loadNextChunk() {
+        int count = mState.getChunkCount();
+        while (mNextChunk < count && mState.isChunkDone(mNextChunk)) {
+            ++mNextChunk;
+        }
+
+        if (mNextChunk >= count) {
+            return false;
+        }
+
+        final int chunk = mNextChunk++;
+        FileRangeRequestBody body = new FileRangeRequestBody(mState.getFilePath(),
+                mState.getChunkOffset(chunk), mState.getChunkLength(chunk),
+                mRequest.getMimeType());
+
+        // Registered before the call starts, an early error then cancels it too.
+        mRunningChunks.put(chunk, 0);
+        int seqId = mClient.loadUploadCall(mRequest, mProtocol.getChunkMethod(),
+                mProtocol.getChunkUrl(mRequest.getUrl(), mState.getUploadId(), chunk),
+                mProtocol.getChunkHeaders(mState, chunk), body,
+                new ModelRequestListener<String>() {
+                    @Override
+                    public void onSuccess(int seqId, NetworkResp networkResp, String response) {
+                        onChunkSuccess(chunk);
+                    }
+
+                    @Override
+                    public void onError(int seqId, int errorCode, String message) {
+                        onCallError(errorCode, message);
+                    }
+                });
+
+        if (mRunningChunks.containsKey(chunk)) {
+            mRunningChunks.put(chunk, seqId);
+        }
+
+        return true;
+    }
+
+    private void onChunkSuccess(int chunk) {
+        if (mFinished) {
+            return;
+        }
+
+        mRunningChunks.remove(chunk);
+        mState.setChunkDone(chunk);
+        try {
+            mState.save();
+        } catch (IOException e) {
+            // Only costs this chunk again if the upload is resumed later.
+            e.printStackTrace();
+        }
+
+        if (mProgress != null) {
+            mProgress.add(mState.getChunkLength(chunk));
+        }
+
+        if (!loadNextChunk() && mRunningChunks.isEmpty()) {
+            commit();
+        }
+    }
+
+    private void commit() {
+        mCallSeqId = mClient.loadUploadCall(mRequest, mProtocol.getCommitMethod(),
+                mProtocol.getCommitUrl(mRequest.getUrl(), mState.getUploadId()),
+                mProtocol.getCommitHeaders(mState), null,
+                new ModelRequestListener<String>() {
+                    @Override
+                    public void onSuccess(int seqId, NetworkResp networkResp, String response) {
+                        onCommitted(networkResp, response);
+                    }
+
+                    @Override
+                    public void onError(int seqId, int errorCode, String message) {
+                        onCallError(errorCode, message);
+                    }
+                });
+    }
+
+    private void onCommitted(NetworkResp networkResp, String response) {
+        if (mFinished) {
+            return;
+        }
+
+        mState.delete();
+        if (mProgress != null) {
+            mProgress.finish();
+        }
+
+        if (finish()) {
+            mListener.onSuccess(mSeqId, networkResp, response);
+        }
+    }
+
+    private void onCallError(int errorCode, String message) {
+        if (mFinished) {
+            return;
+        }
+
+        cancelRequests();
+        if (mProtocol.isUploadLost(errorCode) && !mRestarted) {
+            // The server dropped the upload, its saved chunks are worthless.
+            mRestarted = true;
+            mState.delete();
+            mRunningChunks.clear();
+            create();
+            return;
+        }
+
+        fail(errorCode, message);
+    }
+
+    private void fail(int errorCode, String message) {
+        // The state stays on disk, a later load continues from it.
+        if (finish()) {
+            cancelRequests();
+            mListener.onError(mSeqId, errorCode, message);
+        }
+    }
+
+    private boolean finish() {
+        if (mFinished) {
+            return false;
+        }
+
+        mFinished = true;
+        mClient.removeCompositeCall(mSeqId);
+        return true;
+    }
+
+    private void cancelRequests() {
+        if (mCallSeqId != 0) {
+            mClient.cancelBizModel(mCallSeqId);
+        }
+
+        for (int seqId : mRunningChunks.values()) {
+            if (seqId != 0) {
+                mClient.cancelBizModel(seqId);
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import android.os.SystemClock;
+
+import com.android.volley.VolleyError;
+import com.jungle.majorhttps.network.FailureType;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-host circuit breaker.
+ *
+ * Outcomes are counted in a rolling window of `windowMs`. When at least `minRequests`
+ * finished in the window and the failure rate reaches `failureRateThreshold`, the
+ * circuit opens and requests to the host fail fast. After `openDurationMs` the circuit
+ * is half-open and lets `halfOpenProbes` requests through, it closes once all of them
+ * succeed and opens again on the first failure.
+ *
+ * Only timeouts, connection failures and 5xx count as failures, other responses prove
+ * the host is alive.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+
+    public static final float DEFAULT_FAILURE_RATE_THRESHOLD = 0.5f;
+    public static final int DEFAULT_MIN_REQUESTS = 20;
+    public static final long DEFAULT_WINDOW_MS = 30 * 1000;
+    public static final long DEFAULT_OPEN_DURATION_MS = 10 * 1000;
+    public static final int DEFAULT_HALF_OPEN_PROBES = 1;
+
+    private static final int BUCKET_COUNT = 10;
+
+
+    private class Circuit {
+
+        final long[] mBucketEpochs = new long[BUCKET_COUNT];
+        final int[] mSuccesses = new int[BUCKET_COUNT];
+        final int[] mFailures = new int[BUCKET_COUNT];
+
+        State mState = State.CLOSED;
+        long mOpenedAt;
+        long mLastProbeAt;
+        int mProbesInFlight;
+        int mProbeSuccesses;
+
+
+        synchronized boolean allowRequest(long now) {
+            if (mState == State.OPEN) {
+                if (now - mOpenedAt < mOpenDurationMs) {
+                    return false;
+                }
+
+                mState = State.HALF_OPEN;
+                mProbesInFlight = 0;
+                mProbeSuccesses = 0;
+            }
+
+            if (mState == State.HALF_OPEN) {
+                // A probe may have been canceled and never report back.
+                if (mProbesInFlight >= mHalfOpenProbes && now - mLastProbeAt < mOpenDurationMs) {
+                    return false;
+                }
+
+                ++mProbesInFlight;
+                mLastProbeAt = now;
+            }
+
+            return true;
+        }
+
+        synchronized boolean allowUnreported(long now) {
+            return mState != State.OPEN || now - mOpenedAt >= mOpenDurationMs;
+        }
+
+        synchronized void onSuccess(long now) {
+            if (mState == State.HALF_OPEN) {
+                if (++mProbeSuccesses >= mHalfOpenProbes) {
+                    close();
+                }
+
+                return;
+            }
+
+            if (mState == State.CLOSED) {
+                ++mSuccesses[bucketOf(now)];
+            }
+        }
+
+        synchronized void onFailure(long now) {
+            if (mState == State.HALF_OPEN) {
+                open(now);
+                return;
+            }
+
+            if (mState != State.CLOSED) {
+                return;
+            }
+
+            ++mFailures[bucketOf(now)];
+
+            int successes = 0;
+            int failures = 0;
+            long epoch = now / bucketMs();
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                if (epoch - mBucketEpochs[i] < BUCKET_COUNT) {
+                    successes += mSuccesses[i];
+                    failures += mFailures[i];
+                }
+            }
+
+            int total = successes + failures;
+            if (total >= mMinRequests && failures >= total * mFailureRateThreshold) {
+                open(now);
+            }
+        }
+
+        synchronized State getState() {
+            return mState;
+        }
+
+        private int bucketOf(long now) {
+            long epoch = now / bucketMs();
+            int index = (int) (epoch % BUCKET_COUNT);
+            if (mBucketEpochs[index] != epoch) {
+                mBucketEpochs[index] = epoch;
+                mSuccesses[index] = 0;
+                mFailures[index] = 0;
+            }
+
+            return index;
+        }
+
+        private void open(long now) {
+            mState = State.OPEN;
+            mOpenedAt = now;
+        }
+
+        private void close() {
+            mState = State.CLOSED;
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                mSuccesses[i] = 0;
+                mFailures[i] = 0;
+            }
+        }
+    }
+
+
+    private final ConcurrentHashMap<String, Circuit> mCircuits = new ConcurrentHashMap<>();
+    private volatile float mFailureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    private volatile int mMinRequests = DEFAULT_MIN_REQUESTS;
+    private volatile long mWindowMs = DEFAULT_WINDOW_MS;
+    private volatile long mOpenDurationMs = DEFAULT_OPEN_DURATION_MS;
+    private volatile int mHalfOpenProbes = DEFAULT_HALF_OPEN_PROBES;
+
+
+    /**
+     * @param threshold Failure rate that opens the circuit, from 0 to 1.
+     */
+    public CircuitBreaker failureRateThreshold(float threshold) {
+        mFailureRateThreshold = Math.max(0, Math.min(1.0f, threshold));
+        return this;
+    }
+
+    public CircuitBreaker minRequests(int minRequests) {
+        mMinRequests = Math.max(1, minRequests);
+        return this;
+    }
+
+    public CircuitBreaker windowMs(long windowMs) {
+        mWindowMs = Math.max(BUCKET_COUNT, windowMs);
+        return this;
+    }
+
+    public CircuitBreaker openDurationMs(long openDurationMs) {
+        mOpenDurationMs = Math.max(0, openDurationMs);
+        return this;
+    }
+
+    public CircuitBreaker halfOpenProbes(int probes) {
+        mHalfOpenProbes = Math.max(1, probes);
+        return this;
+    }
+
+    /**
+     * @return false if requests to the host must fail fast.
+     */
+    public boolean allowRequest(String host) {
+        return getCircuit(host).allowRequest(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Like {@link #allowRequest(String)}, for requests whose outcome is never reported.
+     * They fail fast while the circuit is open, but never take a half-open probe slot.
+     */
+    public boolean allowUnreported(String host) {
+        Circuit circuit = mCircuits.get(host);
+        return circuit == null || circuit.allowUnreported(SystemClock.elapsedRealtime());
+    }
+
+    public void onSuccess(String host) {
+        getCircuit(host).onSuccess(SystemClock.elapsedRealtime());
+    }
+
+    public void onError(String host, VolleyError error) {
+        if (isFailure(FailureType.fromError(error))) {
+            getCircuit(host).onFailure(SystemClock.elapsedRealtime());
+        } else {
+            onSuccess(host);
+        }
+    }
+
+    public State getState(String host) {
+        Circuit circuit = mCircuits.get(host);
+        return circuit != null ? circuit.getState() : State.CLOSED;
+    }
+
+    public void reset() {
+        mCircuits.clear();
+    }
+
+    private long bucketMs() {
+        return mWindowMs / BUCKET_COUNT;
+    }
+
+    private Circuit getCircuit(String host) {
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null) {
+            circuit = new Circuit();
+            Circuit existing = mCircuits.putIfAbsent(host, circuit);
+            if (existing != null) {
+                circuit = existing;
+            }
+        }
+
+        return circuit;
+    }
+
+    private static boolean isFailure(FailureType type) {
+        return type == FailureType.TIMEOUT || type == FailureType.CONNECT
+                || type == FailureType.NETWORK || type == FailureType.SERVER;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the most recent network times of every host to estimate its tail latency.
+ */
+class HostLatencyTracker {
+
+    private static final int WINDOW_SIZE = 64;
+    private static final int MIN_SAMPLES = 16;
+
+
+    private static class Window {
+        final long[] mSamples = new long[WINDOW_SIZE];
+        int mCount;
+        int mNext;
+
+        synchronized void record(long latencyMs) {
+            mSamples[mNext] = latencyMs;
+            mNext = (mNext + 1) % WINDOW_SIZE;
+            mCount = Math.min(WINDOW_SIZE, mCount + 1);
+        }
+
+        synchronized long percentile(float percentile) {
+            if (mCount < MIN_SAMPLES) {
+                return -1;
+            }
+
+            long[] sorted = Arrays.copyOf(mSamples, mCount);
+            Arrays.sort(sorted);
+            return sorted[Math.min(mCount - 1, (int) (mCount * percentile))];
+        }
+    }
+
+
+    private final ConcurrentHashMap<String, Window> mWindows = new ConcurrentHashMap<>();
+
+
+    public void record(String host, long latencyMs) {
+        Window window = mWindows.get(host);
+        if (window == null) {
+            window = new Window();
+            Window existing = mWindows.putIfAbsent(host, window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+
+        window.record(latencyMs);
+    }
+
+    /**
+     * @return the latency percentile of the host, or -1 if there are not enough samples yet.
+     */
+    public long getPercentile(String host, float percentile) {
+        Window window = mWindows.get(host);
+        return window != null ? window.percentile(percentile) : -1;
+    }
+}
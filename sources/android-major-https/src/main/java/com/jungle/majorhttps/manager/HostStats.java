@@ -0,0 +1,71 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+/**
+ * Snapshot of the scheduling state of one host.
+ */
+public class HostStats {
+
+    public interface Listener {
+
+        /**
+         * Called when a host becomes saturated (requests are waiting for its limit)
+         * or stops being saturated. Not called on the main thread necessarily.
+         */
+        void onHostStatsChanged(HostStats stats);
+    }
+
+
+    public String mHost;
+    public int mMaxRequests;
+    public int mRunningCount;
+    public int mWaitingCount;
+    public long mDispatchedCount;
+
+    /**
+     * How many requests of this host had to wait because the host was at its limit.
+     */
+    public long mSaturatedCount;
+
+
+    public HostStats(String host) {
+        mHost = host;
+    }
+
+    public HostStats(HostStats stats) {
+        mHost = stats.mHost;
+        mMaxRequests = stats.mMaxRequests;
+        mRunningCount = stats.mRunningCount;
+        mWaitingCount = stats.mWaitingCount;
+        mDispatchedCount = stats.mDispatchedCount;
+        mSaturatedCount = stats.mSaturatedCount;
+    }
+
+    public boolean isSaturated() {
+        return mWaitingCount > 0 && mRunningCount >= mMaxRequests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: running=%d/%d, waiting=%d, dispatched=%d, saturated=%d",
+                mHost, mRunningCount, mMaxRequests, mWaitingCount,
+                mDispatchedCount, mSaturatedCount);
+    }
+}
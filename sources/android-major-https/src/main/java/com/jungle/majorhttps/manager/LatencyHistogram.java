@@ -0,0 +1,164 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of latencies in milliseconds.
+ *
+ * Every power of two is split into 8 linear buckets, so any reported value is within
+ * 12.5% of the recorded one. Recording never allocates. Snapshots of different
+ * histograms with the same layout can be merged, e.g. on the server.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 24;
+
+    /**
+     * Values above 2^25 ms, about 9 hours, fall into the last bucket.
+     */
+    public static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+
+    public static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    public static long lowerBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    public static long upperBoundOf(int index) {
+        return index < BUCKET_COUNT - 1 ? lowerBoundOf(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+
+    public static class Snapshot {
+
+        public final long[] mCounts;
+        public final long mCount;
+        public final long mSum;
+        public final long mMax;
+
+
+        public Snapshot(long[] counts, long sum, long max) {
+            long count = 0;
+            for (long bucketCount : counts) {
+                count += bucketCount;
+            }
+
+            mCounts = counts;
+            mCount = count;
+            mSum = sum;
+            mMax = max;
+        }
+
+        public Snapshot merge(Snapshot other) {
+            long[] counts = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                counts[i] = mCounts[i] + other.mCounts[i];
+            }
+
+            return new Snapshot(counts, mSum + other.mSum, Math.max(mMax, other.mMax));
+        }
+
+        /**
+         * @param percentile from 0 to 1, e.g. 0.99f for p99.
+         * @return the upper bound of the bucket holding the percentile, or 0 if empty.
+         */
+        public long getPercentile(float percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(mCount * (double) percentile));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), mMax);
+                }
+            }
+
+            return mMax;
+        }
+
+        public long getMean() {
+            return mCount > 0 ? mSum / mCount : 0;
+        }
+    }
+
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+
+    public void record(long valueMs) {
+        mCounts.incrementAndGet(indexOf(valueMs));
+        mSum.addAndGet(valueMs);
+
+        long max = mMax.get();
+        while (valueMs > max && !mMax.compareAndSet(max, valueMs)) {
+            max = mMax.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts[i] = mCounts.get(i);
+        }
+
+        return new Snapshot(counts, mSum.get(), mMax.get());
+    }
+
+    /**
+     * Each sample ends up in exactly one snapshot. Samples recorded concurrently may have
+     * their sum and max reported one snapshot later than their bucket count.
+     */
+    public Snapshot snapshotAndReset() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts[i] = mCounts.getAndSet(i, 0);
+        }
+
+        return new Snapshot(counts, mSum.getAndSet(0), mMax.getAndSet(0));
+    }
+}
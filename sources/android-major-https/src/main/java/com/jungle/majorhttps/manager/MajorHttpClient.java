@@ -18,39 +18,76 @@
 
 package com.jungle.majorhttps.manager;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
-import com.android.volley.DefaultRetryPolicy;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import com.android.volley.Cache;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.RetryPolicy;
+import com.android.volley.Response;
 import com.android.volley.VolleyError;
 import com.jungle.majorhttps.model.base.AbstractModel;
+import com.jungle.majorhttps.model.base.CachePolicy;
+import com.jungle.majorhttps.model.base.ModelMethod;
+import com.jungle.majorhttps.model.base.ModelPriority;
+import com.jungle.majorhttps.model.binary.ChunkedUploadRequestModel;
 import com.jungle.majorhttps.model.binary.DownloadFileRequestModel;
 import com.jungle.majorhttps.model.binary.UploadRequestModel;
 import com.jungle.majorhttps.model.listener.ModelRequestListener;
+import com.jungle.majorhttps.network.BackoffRetryPolicy;
+import com.jungle.majorhttps.network.CacheMissError;
+import com.jungle.majorhttps.network.CircuitOpenError;
 import com.jungle.majorhttps.network.CommonError;
+import com.jungle.majorhttps.network.ContentEncoding;
+import com.jungle.majorhttps.network.DeadlineExceededError;
+import com.jungle.majorhttps.network.DeadlineRetryPolicy;
+import com.jungle.majorhttps.network.RetryBudget;
 import com.jungle.majorhttps.request.base.BizBaseRequest;
 import com.jungle.majorhttps.request.base.BizBaseResponse;
+import com.jungle.majorhttps.request.base.BizParseError;
 import com.jungle.majorhttps.request.base.BizRequestListener;
 import com.jungle.majorhttps.request.base.ExtraHeadersFiller;
+import com.jungle.majorhttps.request.base.ProgressReporter;
+import com.jungle.majorhttps.request.base.RequestBody;
+import com.jungle.majorhttps.request.base.RequestEventListener;
+import com.jungle.majorhttps.request.base.RequestTiming;
+import com.jungle.majorhttps.request.base.ResponseParser;
 import com.jungle.majorhttps.request.binary.BizBinaryRequest;
+import com.jungle.majorhttps.request.cache.CacheStats;
+import com.jungle.majorhttps.request.cache.ParsedObjectCache;
+import com.jungle.majorhttps.request.cache.TwoTierCache;
 import com.jungle.majorhttps.request.download.BizDownloadFileRequest;
 import com.jungle.majorhttps.request.download.BizDownloadRequest;
+import com.jungle.majorhttps.request.download.DownloadState;
 import com.jungle.majorhttps.request.queue.HttpRequestQueueFactory;
 import com.jungle.majorhttps.request.queue.RequestQueueFactory;
+import com.jungle.majorhttps.request.text.BizParsedTextRequest;
 import com.jungle.majorhttps.request.text.BizTextRequest;
 import com.jungle.majorhttps.request.upload.BizMultipartRequest;
+import com.jungle.majorhttps.request.upload.BizUploadCallRequest;
+import com.jungle.majorhttps.request.upload.MultipartRequestBody;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class MajorHttpClient {
 
     public static final int DEFAULT_TIMEOUT_MS = 20 * 1000;
     public static final int UPLOAD_TIMEOUT_MS = 40 * 1000;
+    public static final float DEFAULT_HEDGE_RATIO = 0.05f;
+    public static final int DEFAULT_HEDGE_MAX_TOKENS = 5;
+    public static final float HEDGE_PERCENTILE = 0.95f;
+    public static final String DEFAULT_DEADLINE_HEADER = "X-Request-Timeout-Ms";
 
 
     private static MajorHttpClient mDefaultInstance;
@@ -64,17 +101,39 @@ public class MajorHttpClient {
     }
 
 
-    private static class RequestNode {
-        int mSeqId;
+    private static final String COALESCE_TEXT = "text";
+    private static final String COALESCE_BINARY = "binary";
+    private static final String COALESCE_DOWNLOAD = "download";
+
+
+    private interface VolleyRequestCreator {
+        Request<?> create(int seqId);
+    }
+
+
+    private static class RequestNode extends RequestRegistry.Node {
         Type mResponseType;
-        Request<?> mVolleyRequest;
+        volatile Request<?> mVolleyRequest;
         ModelRequestListener mListener;
+        CoalescedCall mCoalescedCall;
+        AbstractModel.Request mModelRequest;
+        VolleyRequestCreator mCreator;
+        int mRetryCount;
+        long mDeadline = DeadlineRetryPolicy.NO_DEADLINE;
+        long mStartTime;
+        Request<?> mHedgeRequest;
+        int mRunningAttempts;
+        ProgressReporter mProgress;
+        CachePolicy mCachePolicy;
+        Cache.Entry mCacheEntry;
+        RequestMetrics.Endpoint mEndpoint;
+        String mHost;
 
         public RequestNode(
                 int seqId, Request<?> request,
                 Type responseType, ModelRequestListener listener) {
 
-            mSeqId = seqId;
+            super(seqId);
             mVolleyRequest = request;
             mResponseType = responseType;
             mListener = listener;
@@ -83,16 +142,103 @@ public class MajorHttpClient {
         public RequestNode(int seqId, Request<?> request, ModelRequestListener listener) {
             this(seqId, request, null, listener);
         }
+
+        synchronized void addAttempt(Request<?> request, boolean hedge) {
+            if (hedge) {
+                mHedgeRequest = request;
+            } else {
+                mVolleyRequest = request;
+            }
+
+            ++mRunningAttempts;
+        }
+
+        /**
+         * @return true if another attempt of this node is still running.
+         */
+        synchronized boolean finishAttempt() {
+            return --mRunningAttempts > 0;
+        }
+
+        synchronized void cancelAttempts() {
+            if (mVolleyRequest != null) {
+                mVolleyRequest.cancel();
+            }
+
+            if (mHedgeRequest != null) {
+                mHedgeRequest.cancel();
+            }
+        }
     }
 
 
-    @SuppressLint("UseSparseArrays")
-    private Map<Integer, RequestNode> mRequestList = new HashMap<>();
+    /**
+     * One network request shared by every identical model request that joined it
+     * while it was in flight. Registered under its own seqId, which is the one
+     * the Volley request reports back with.
+     */
+    private static class CoalescedCall extends RequestNode {
+        final String mKey;
+        final List<RequestNode> mSubscribers = new ArrayList<>();
+        boolean mClosed;
+
+        public CoalescedCall(int seqId, String key) {
+            super(seqId, null, null);
+            mKey = key;
+        }
+
+        synchronized boolean join(RequestNode subscriber) {
+            if (mClosed) {
+                return false;
+            }
+
+            subscriber.mCoalescedCall = this;
+            subscriber.mVolleyRequest = mVolleyRequest;
+            mSubscribers.add(subscriber);
+            return true;
+        }
+
+        /**
+         * @return true if the subscriber was the last one and the call is now closed.
+         */
+        synchronized boolean leave(RequestNode subscriber) {
+            mSubscribers.remove(subscriber);
+            if (mClosed || !mSubscribers.isEmpty()) {
+                return false;
+            }
+
+            mClosed = true;
+            return true;
+        }
+
+        synchronized List<RequestNode> close() {
+            mClosed = true;
+            return new ArrayList<>(mSubscribers);
+        }
+    }
+
+
+    private RequestRegistry<RequestNode> mRequestRegistry = new RequestRegistry<>();
+    private Map<String, CoalescedCall> mCoalescedCalls = new ConcurrentHashMap<>();
+    private Map<Integer, CompositeCall> mCompositeCalls = new ConcurrentHashMap<>();
+    private Map<String, ContentEncoding> mHostBodyEncodings = new ConcurrentHashMap<>();
     private AtomicInteger mSeqIdGenerator = new AtomicInteger();
-    private RetryPolicy mDefaultRetryPolicy;
-    private RetryPolicy mUploadRetryPolicy;
+    private int mDefaultTimeoutMs;
+    private int mUploadTimeoutMs;
+    private BackoffRetryPolicy mRetryPolicy = new BackoffRetryPolicy();
+    private RetryBudget mRetryBudget = new RetryBudget();
+    private RetryBudget mHedgeBudget = new RetryBudget(DEFAULT_HEDGE_RATIO, DEFAULT_HEDGE_MAX_TOKENS);
+    private HostLatencyTracker mLatencyTracker = new HostLatencyTracker();
+    private CircuitBreaker mCircuitBreaker = new CircuitBreaker();
+    private RequestMetrics mMetrics = new RequestMetrics();
+    private Handler mHandler = new Handler(Looper.getMainLooper());
     private RequestQueue mRequestQueue;
+    private RequestScheduler mScheduler = new RequestScheduler();
     private ExtraHeadersFiller mExtraHeadersFiller;
+    private String mDeadlineHeader = DEFAULT_DEADLINE_HEADER;
+    private RequestEventListener mRequestEventListener;
+    private ExecutorService mCacheExecutor = Executors.newSingleThreadExecutor();
+    private ParsedObjectCache mParsedCache;
 
 
     public MajorHttpClient() {
@@ -114,150 +260,991 @@ public class MajorHttpClient {
     }
 
     public void onTerminate() {
-        mRequestList.clear();
+        mHandler.removeCallbacksAndMessages(null);
+        mRequestRegistry.clear();
+        mCoalescedCalls.clear();
+        mCompositeCalls.clear();
+        mCacheExecutor.shutdownNow();
     }
 
     public void setRequestQueueFactory(RequestQueueFactory factory) {
         if (factory != null) {
             mRequestQueue = factory.createRequestQueue();
+            mScheduler.setRequestQueue(mRequestQueue);
         }
     }
 
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        mScheduler.setMaxConcurrentRequests(maxConcurrentRequests);
+    }
+
+    public void setMaxRequestsPerHost(int maxRequests) {
+        mScheduler.setMaxRequestsPerHost(maxRequests);
+    }
+
+    public void setMaxRequestsPerHost(String host, int maxRequests) {
+        mScheduler.setMaxRequestsPerHost(host, maxRequests);
+    }
+
+    public HostStats getHostStats(String host) {
+        return mScheduler.getHostStats(host);
+    }
+
+    public List<HostStats> getAllHostStats() {
+        return mScheduler.getAllHostStats();
+    }
+
+    public void setHostStatsListener(HostStats.Listener listener) {
+        mScheduler.setHostStatsListener(listener);
+    }
+
+    public void setPriorityAgingIntervalMs(long agingIntervalMs) {
+        mScheduler.setAgingIntervalMs(agingIntervalMs);
+    }
+
+    public List<RequestScheduler.LaneStats> getQueueWaitStats() {
+        return mScheduler.getLaneStats();
+    }
+
+    public void resetQueueWaitStats() {
+        mScheduler.resetLaneStats();
+    }
+
     public void setUploadTimeoutMilliseconds(int milliseconds) {
-        mUploadRetryPolicy = new DefaultRetryPolicy(milliseconds, 1, 1.0f);
+        mUploadTimeoutMs = milliseconds;
     }
 
     public void setDefaultTimeoutMilliseconds(int milliseconds) {
-        mDefaultRetryPolicy = new DefaultRetryPolicy(milliseconds, 1, 1.0f);
+        mDefaultTimeoutMs = milliseconds;
+    }
+
+    /**
+     * Retry policy for models that do not set their own.
+     */
+    public void setRetryPolicy(BackoffRetryPolicy policy) {
+        mRetryPolicy = policy != null ? policy : BackoffRetryPolicy.noRetry();
+    }
+
+    public void setRetryBudget(RetryBudget budget) {
+        mRetryBudget = budget;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return mRetryBudget;
+    }
+
+    /**
+     * Caps hedged duplicates to a fraction of the traffic, 5% by default.
+     */
+    public void setHedgeBudget(RetryBudget budget) {
+        mHedgeBudget = budget;
+    }
+
+    /**
+     * @param breaker null to disable failing fast for unhealthy hosts.
+     */
+    public void setCircuitBreaker(CircuitBreaker breaker) {
+        mCircuitBreaker = breaker;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
+    /**
+     * Header that carries the milliseconds left until the deadline of a model,
+     * null to not send it.
+     */
+    public void setDeadlineHeader(String headerName) {
+        mDeadlineHeader = headerName;
+    }
+
+    /**
+     * @param metrics null to stop collecting latency and error metrics.
+     */
+    public void setMetrics(RequestMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public RequestMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Receives the phase timings of every model request attempt, which are also
+     * exposed as {@link com.jungle.majorhttps.request.base.NetworkResp#mTiming}.
+     * Nothing is recorded while no listener is set.
+     */
+    public void setRequestEventListener(RequestEventListener listener) {
+        mRequestEventListener = listener;
+    }
+
+    /**
+     * @return counters of the response cache, null if the queue has no {@link TwoTierCache}.
+     */
+    public CacheStats getCacheStats() {
+        Cache cache = getCache();
+        return cache instanceof TwoTierCache ? ((TwoTierCache) cache).getStats() : null;
+    }
+
+    /**
+     * Reuse parsed data of unchanged responses for models whose parser has a key. Off by
+     * default: every load of an unchanged response then gets the same object, so callers
+     * must not modify it.
+     *
+     * @param cache null to parse every response.
+     */
+    public void setParsedObjectCache(ParsedObjectCache cache) {
+        mParsedCache = cache;
+    }
+
+    public ParsedObjectCache getParsedObjectCache() {
+        return mParsedCache;
     }
 
     public void setExtraHeadersFiller(ExtraHeadersFiller filler) {
         mExtraHeadersFiller = filler;
     }
 
-    public synchronized int loadTextModel(
-            AbstractModel.Request request, ModelRequestListener<String> listener) {
+    /**
+     * Compress request bodies sent to {@code host}, unless a model sets its own encoding.
+     * Uploads are never compressed.
+     *
+     * @param encoding null to send bodies as they are.
+     */
+    public void setBodyEncoding(String host, ContentEncoding encoding) {
+        if (encoding != null) {
+            mHostBodyEncodings.put(host, encoding);
+        } else {
+            mHostBodyEncodings.remove(host);
+        }
+    }
+
+    public int loadTextModel(
+            final AbstractModel.Request request, ModelRequestListener<String> listener) {
+
+        return loadModel(request, COALESCE_TEXT, listener, new VolleyRequestCreator() {
+            @Override
+            public Request<?> create(int seqId) {
+                BizTextRequest textRequest = new BizTextRequest(
+                        seqId, request.getRequestMethod().toVolleyMethod(),
+                        request.getUrl(), request.getRequestParams(),
+                        request.getRequestHeaders(), request.getBody(),
+                        mBizTextRequestListener);
+
+                textRequest.setRequestBody(request.getRequestBody());
+                textRequest.setCacheable(request.isCacheable());
+                return textRequest;
+            }
+        });
+    }
+
+    /**
+     * Like {@link #loadTextModel(AbstractModel.Request, ModelRequestListener)}, but the body
+     * is parsed by `parser` on the network dispatcher thread.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> int loadTextModel(
+            final AbstractModel.Request request, final ResponseParser<T> parser,
+            ModelRequestListener<T> listener) {
+
+        String parserKey = parser.getKey();
+        String coalesceKind = parserKey != null ? COALESCE_TEXT + ' ' + parserKey : null;
+        final BizRequestListener<T> requestListener =
+                (BizRequestListener<T>) (BizRequestListener<?>) mBizParsedRequestListener;
+
+        return loadModel(request, coalesceKind, listener, new VolleyRequestCreator() {
+            @Override
+            public Request<?> create(int seqId) {
+                BizParsedTextRequest<T> textRequest = new BizParsedTextRequest<>(
+                        seqId, request.getRequestMethod().toVolleyMethod(),
+                        request.getUrl(), request.getRequestParams(),
+                        request.getRequestHeaders(), request.getBody(),
+                        parser, request.isStreaming(), requestListener);
+
+                textRequest.setRequestBody(request.getRequestBody());
+                textRequest.setCacheable(request.isCacheable());
+                textRequest.setParsedCache(mParsedCache);
+                return textRequest;
+            }
+        });
+    }
+
+    public int loadBinaryModel(
+            final AbstractModel.Request request, ModelRequestListener<byte[]> listener) {
+
+        return loadModel(request, COALESCE_BINARY, listener, new VolleyRequestCreator() {
+            @Override
+            public Request<?> create(int seqId) {
+                BizBinaryRequest binaryRequest = new BizBinaryRequest(
+                        seqId, request.getRequestMethod().toVolleyMethod(),
+                        request.getUrl(), request.getRequestParams(),
+                        request.getRequestHeaders(), request.getBody(),
+                        mBizBinaryRequestListener);
+
+                binaryRequest.setCacheable(request.isCacheable());
+                return binaryRequest;
+            }
+        });
+    }
+
+    public int loadUploadModel(
+            final UploadRequestModel.Request request, ModelRequestListener<String> listener) {
+
+        // One body for all attempts, its part headers and length are built only once.
+        final MultipartRequestBody body = new MultipartRequestBody(request.getFormItems());
+        return loadModel(request, null, listener, new VolleyRequestCreator() {
+            @Override
+            public Request<?> create(int seqId) {
+                return new BizMultipartRequest(
+                        seqId, request.getRequestMethod().toVolleyMethod(),
+                        request.getUrl(), body,
+                        request.getRequestHeaders(),
+                        mBizUploadRequestListener);
+            }
+        });
+    }
+
+    public int loadChunkedUploadModel(
+            ChunkedUploadRequestModel.Request request, ModelRequestListener<String> listener) {
 
         int seqId = nextSeqId();
         request.seqId(seqId);
-        BizTextRequest textRequest = new BizTextRequest(
-                seqId, request.getRequestMethod().toVolleyMethod(),
-                request.getUrl(), request.getRequestParams(),
-                request.getRequestHeaders(), request.getBody(),
-                mBizTextRequestListener);
+        if (checkRequestQueue(seqId, listener)) {
+            ChunkedUpload upload = new ChunkedUpload(this, seqId, request, listener);
+            mCompositeCalls.put(seqId, upload);
+            upload.start();
+        }
 
-        addRequestNode(seqId, request, textRequest, listener);
         return seqId;
     }
 
-    public synchronized int loadBinaryModel(
-            AbstractModel.Request request, ModelRequestListener<byte[]> listener) {
+    public int loadDownloadModel(
+            final AbstractModel.Request request, ModelRequestListener<byte[]> listener) {
+
+        return loadModel(request, COALESCE_DOWNLOAD, listener, new VolleyRequestCreator() {
+            @Override
+            public Request<?> create(int seqId) {
+                return new BizDownloadRequest(
+                        seqId, request.getRequestMethod().toVolleyMethod(),
+                        request.getUrl(), request.getRequestParams(),
+                        request.getRequestHeaders(),
+                        mBizDownloadRequestListener);
+            }
+        });
+    }
+
+    public int loadDownloadFileModel(
+            DownloadFileRequestModel.Request request, ModelRequestListener<String> listener) {
+
+        if (request.getSegmentCount() <= 1) {
+            return loadModel(request, null, listener, createDownloadFileCreator(request));
+        }
 
         int seqId = nextSeqId();
         request.seqId(seqId);
-        BizBinaryRequest binaryRequest = new BizBinaryRequest(
-                seqId, request.getRequestMethod().toVolleyMethod(),
-                request.getUrl(), request.getRequestParams(),
-                request.getRequestHeaders(), request.getBody(),
-                mBizBinaryRequestListener);
+        if (checkRequestQueue(seqId, listener)) {
+            SegmentedDownload download = new SegmentedDownload(this, seqId, request, listener);
+            mCompositeCalls.put(seqId, download);
+            download.start();
+        }
 
-        addRequestNode(seqId, request, binaryRequest, listener);
         return seqId;
     }
 
-    public synchronized int loadUploadModel(
-            UploadRequestModel.Request request, ModelRequestListener<String> listener) {
+    /**
+     * The requests below belong to a {@link SegmentedDownload}, they keep the seqId
+     * of the model request unchanged.
+     */
+    int loadSingleDownload(
+            DownloadFileRequestModel.Request request, ProgressReporter progress,
+            ModelRequestListener<String> listener) {
 
         int seqId = nextSeqId();
-        request.seqId(seqId);
-        BizMultipartRequest uploadRequest = new BizMultipartRequest(
-                seqId, request.getRequestMethod().toVolleyMethod(),
-                request.getUrl(), request.getFormItems(),
-                request.getRequestHeaders(),
-                mBizUploadRequestListener);
+        startModel(seqId, request, null, listener, createDownloadFileCreator(request), progress);
+        return seqId;
+    }
+
+    int loadDownloadProbe(
+            final DownloadFileRequestModel.Request request, ModelRequestListener<byte[]> listener) {
+
+        int seqId = nextSeqId();
+        startModel(seqId, request, null, listener, new VolleyRequestCreator() {
+            @Override
+            public Request<?> create(int seqId) {
+                BizDownloadRequest probe = new BizDownloadRequest(
+                        seqId, Request.Method.HEAD, request.getUrl(), null,
+                        request.getRequestHeaders(), mBizDownloadRequestListener);
+
+                probe.setShouldCache(false);
+                return probe;
+            }
+        }, null);
 
-        addRequestNode(seqId, request, uploadRequest, listener);
         return seqId;
     }
 
-    public synchronized int loadDownloadModel(
-            AbstractModel.Request request, ModelRequestListener<byte[]> listener) {
+    int loadDownloadSegment(
+            final DownloadFileRequestModel.Request request, final DownloadState state,
+            final int segment, ProgressReporter progress, ModelRequestListener<String> listener) {
 
         int seqId = nextSeqId();
-        request.seqId(seqId);
-        BizDownloadRequest downloadRequest = new BizDownloadRequest(
-                seqId, request.getRequestMethod().toVolleyMethod(),
-                request.getUrl(), request.getRequestParams(),
-                request.getRequestHeaders(),
-                mBizDownloadRequestListener);
+        startModel(seqId, request, null, listener, new VolleyRequestCreator() {
+            @Override
+            public Request<?> create(int seqId) {
+                return new BizDownloadFileRequest(
+                        seqId, request.getRequestHeaders(), request.getFilePath(),
+                        state, segment, mBizDownloadFileRequestListener);
+            }
+        }, progress);
 
-        addRequestNode(seqId, request, downloadRequest, listener);
         return seqId;
     }
 
-    public synchronized int loadDownloadFileModel(
-            DownloadFileRequestModel.Request request, ModelRequestListener<String> listener) {
+    /**
+     * One call of a {@link ChunkedUpload}, with the headers, retries and priority of the model.
+     */
+    int loadUploadCall(
+            ChunkedUploadRequestModel.Request request, final ModelMethod method,
+            final String url, Map<String, String> headers, final RequestBody body,
+            ModelRequestListener<String> listener) {
+
+        final Map<String, String> callHeaders = new HashMap<>(request.getRequestHeaders());
+        if (headers != null) {
+            callHeaders.putAll(headers);
+        }
 
         int seqId = nextSeqId();
-        request.seqId(seqId);
-        BizDownloadFileRequest downloadFileRequest = new BizDownloadFileRequest(
-                seqId, request.getRequestMethod().toVolleyMethod(),
-                request.getUrl(), request.getRequestParams(),
-                request.getRequestHeaders(), request.getFilePath(),
-                mBizDownloadFileRequestListener);
+        startModel(seqId, request, null, listener, new VolleyRequestCreator() {
+            @Override
+            public Request<?> create(int seqId) {
+                return new BizUploadCallRequest(
+                        seqId, method.toVolleyMethod(), url, callHeaders, body,
+                        mBizUploadRequestListener);
+            }
+        }, null);
 
-        addRequestNode(seqId, request, downloadFileRequest, listener);
         return seqId;
     }
 
-    public synchronized int sendRequest(Request<?> request) {
+    void removeCompositeCall(int seqId) {
+        mCompositeCalls.remove(seqId);
+    }
+
+    private VolleyRequestCreator createDownloadFileCreator(
+            final DownloadFileRequestModel.Request request) {
+
+        return new VolleyRequestCreator() {
+            @Override
+            public Request<?> create(int seqId) {
+                return new BizDownloadFileRequest(
+                        seqId, request.getRequestMethod().toVolleyMethod(),
+                        request.getUrl(), request.getRequestParams(),
+                        request.getRequestHeaders(), request.getFilePath(),
+                        request.isResumable(), mBizDownloadFileRequestListener);
+            }
+        };
+    }
+
+    public int sendRequest(Request<?> request) {
         int seqId = nextSeqId();
-        addRequestNode(seqId, null, request, null);
+        if (checkRequestQueue(seqId, null)) {
+            addRequestNode(new RequestNode(seqId, request, null));
+        }
+
         return seqId;
     }
 
-    private void addRequestNode(
-            int seqId,
-            AbstractModel.Request modelRequest,
-            Request<?> request,
-            ModelRequestListener listener) {
+    private int loadModel(
+            AbstractModel.Request request, String coalesceKind,
+            ModelRequestListener listener, VolleyRequestCreator creator) {
 
-        if (mRequestQueue == null) {
-            if (listener != null) {
-                String message = "RequestQueue is null!"
-                        + "use **MajorHttpClient.getInstance().setRequestQueueFactory(...)** "
-                        + "to initialize RequestQueue first!";
-                listener.onError(seqId, CommonError.REQUEST_QUEUE_NOT_INITIALIZED, message);
+        int seqId = nextSeqId();
+        request.seqId(seqId);
+        if (checkRequestQueue(seqId, listener)) {
+            startModel(seqId, request, coalesceKind, listener, creator,
+                    request.createProgressReporter(seqId));
+        }
+
+        return seqId;
+    }
+
+    private void startModel(
+            int seqId, AbstractModel.Request request, String coalesceKind,
+            ModelRequestListener listener, VolleyRequestCreator creator,
+            ProgressReporter progress) {
+
+        long deadline = resolveDeadline(request);
+        // Progress, cache policies and deadlines belong to one model, so their requests
+        // are never shared.
+        if (coalesceKind != null && listener != null && progress == null
+                && request.getCachePolicy() == null
+                && deadline == DeadlineRetryPolicy.NO_DEADLINE
+                && request.isCoalesce() && request.getRequestMethod().isSafe()) {
+            loadCoalesced(seqId, buildCoalesceKey(coalesceKind, request),
+                    request, listener, creator);
+        } else {
+            RequestNode node = new RequestNode(seqId, creator.create(seqId), listener);
+            node.mModelRequest = request;
+            node.mCreator = creator;
+            node.mDeadline = deadline;
+            node.mProgress = progress;
+            node.mCachePolicy = resolveCachePolicy(request, node);
+            if (node.mCachePolicy != null && node.mCachePolicy != CachePolicy.NETWORK_ONLY) {
+                lookupCache(node);
+            } else {
+                addRequestNode(node);
             }
 
+            scheduleDeadline(node);
+        }
+    }
+
+    private CachePolicy resolveCachePolicy(AbstractModel.Request request, RequestNode node) {
+        CachePolicy policy = request.getCachePolicy();
+        if (policy == null || node.mListener == null || getCache() == null
+                || !(node.mVolleyRequest instanceof BizBaseRequest)
+                || !node.mVolleyRequest.shouldCache()) {
+            return null;
+        }
+
+        return policy;
+    }
+
+    private Cache getCache() {
+        return mRequestQueue != null ? mRequestQueue.getCache() : null;
+    }
+
+    /**
+     * Reads the cache for a {@link CachePolicy} on the cache thread, then continues
+     * on the main thread. The node is registered meanwhile, so it can be canceled.
+     */
+    private void lookupCache(final RequestNode node) {
+        node.mStartTime = SystemClock.elapsedRealtime();
+        mRequestRegistry.put(node);
+
+        final Cache cache = getCache();
+        final BizBaseRequest<?> request = (BizBaseRequest<?>) node.mVolleyRequest;
+        mCacheExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Cache.Entry entry = cache.get(request.getCacheKey());
+                final Response<? extends BizBaseResponse<?>> response =
+                        entry != null ? request.parseCacheEntry(entry) : null;
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onCacheLookup(node, entry, response);
+                    }
+                });
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onCacheLookup(
+            RequestNode node, Cache.Entry entry, Response<? extends BizBaseResponse<?>> response) {
+
+        if (node.isClaimed()) {
             return;
         }
 
-        if (request instanceof BizMultipartRequest) {
-            request.setRetryPolicy(mUploadRetryPolicy);
-        } else {
-            request.setRetryPolicy(mDefaultRetryPolicy);
+        node.mCacheEntry = entry;
+        boolean hit = response != null && response.isSuccess();
+        BizBaseRequest request = (BizBaseRequest) node.mVolleyRequest;
+
+        switch (node.mCachePolicy) {
+            case CACHE_ONLY:
+                if (hit) {
+                    request.deliverCachedResponse(response.result);
+                } else if (mRequestRegistry.remove(node.mSeqId) != null) {
+                    failFast(node, new CacheMissError());
+                }
+                break;
+            case CACHE_THEN_NETWORK:
+                if (hit) {
+                    BizBaseResponse<?> cached = response.result;
+                    node.mListener.onSuccess(node.mSeqId, cached.mNetworkResp, cached.mContent);
+                }
+
+                startNode(node);
+                break;
+            case STALE_WHILE_REVALIDATE:
+                if (hit) {
+                    request.deliverCachedResponse(response.result);
+                    if (entry.isExpired()) {
+                        refreshCache(node);
+                    }
+                } else {
+                    startNode(node);
+                }
+                break;
+            default:
+                if (hit) {
+                    request.deliverCachedResponse(response.result);
+                } else {
+                    startNode(node);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Updates the cache for a {@link CachePolicy#STALE_WHILE_REVALIDATE} load that was
+     * already answered, nobody listens to the result.
+     */
+    private void refreshCache(RequestNode node) {
+        int seqId = nextSeqId();
+        RequestNode refresh = new RequestNode(seqId, node.mCreator.create(seqId), null);
+        refresh.mCachePolicy = node.mCachePolicy;
+        refresh.mCacheEntry = node.mCacheEntry;
+        addRequestNode(refresh);
+    }
+
+    private static long resolveDeadline(AbstractModel.Request request) {
+        long now = SystemClock.elapsedRealtime();
+        long deadline = DeadlineRetryPolicy.NO_DEADLINE;
+        if (request.getTimeBudgetMs() > 0) {
+            deadline = now + request.getTimeBudgetMs();
+        }
+
+        if (request.getDeadlineMs() > 0) {
+            // Move the wall clock deadline to the monotonic clock.
+            long fromDeadline = now + request.getDeadlineMs() - System.currentTimeMillis();
+            deadline = deadline == DeadlineRetryPolicy.NO_DEADLINE
+                    ? fromDeadline : Math.min(deadline, fromDeadline);
+        }
+
+        return deadline;
+    }
+
+    private void scheduleDeadline(final RequestNode node) {
+        if (node.mDeadline == DeadlineRetryPolicy.NO_DEADLINE) {
+            return;
+        }
+
+        mHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                expire(node);
+            }
+        }, Math.max(0, node.mDeadline - SystemClock.elapsedRealtime()));
+    }
+
+    private void expire(RequestNode node) {
+        if (mRequestRegistry.remove(node.mSeqId) == null) {
+            return;
         }
 
+        cancelNode(node);
+        recordError(node, CommonError.DEADLINE_EXCEEDED);
+        if (node.mListener != null) {
+            node.mListener.onError(node.mSeqId,
+                    CommonError.DEADLINE_EXCEEDED, new DeadlineExceededError().getMessage());
+        }
+    }
+
+    private void loadCoalesced(
+            int seqId, String key, AbstractModel.Request request,
+            ModelRequestListener listener, VolleyRequestCreator creator) {
+
+        // Register before joining, so a completing call always finds its subscribers.
+        RequestNode subscriber = new RequestNode(seqId, null, listener);
+        mRequestRegistry.put(subscriber);
+
+        while (true) {
+            CoalescedCall call = mCoalescedCalls.get(key);
+            if (call != null) {
+                if (call.join(subscriber)) {
+                    return;
+                }
+
+                mCoalescedCalls.remove(key, call);
+                continue;
+            }
+
+            int callSeqId = nextSeqId();
+            call = new CoalescedCall(callSeqId, key);
+            call.mVolleyRequest = creator.create(callSeqId);
+            call.mModelRequest = request;
+            call.mCreator = creator;
+            if (mCoalescedCalls.putIfAbsent(key, call) != null) {
+                continue;
+            }
+
+            call.join(subscriber);
+            addRequestNode(call);
+            return;
+        }
+    }
+
+    private static String buildCoalesceKey(String kind, AbstractModel.Request request) {
+        // GET and HEAD never send a body, so url, params and headers identify the request.
+        StringBuilder builder = new StringBuilder(kind)
+                .append(' ').append(request.getRequestMethod())
+                .append(' ').append(request.getUrl())
+                .append(' ').append(new TreeMap<>(request.getRequestParams()))
+                .append(' ').append(new TreeMap<>(request.getRequestHeaders()));
+
+        if (request.isFillExtraHeader()) {
+            builder.append(" extra-headers");
+        }
+
+        return builder.toString();
+    }
+
+    private boolean checkRequestQueue(int seqId, ModelRequestListener listener) {
+        if (mRequestQueue != null) {
+            return true;
+        }
+
+        if (listener != null) {
+            String message = "RequestQueue is null!"
+                    + "use **MajorHttpClient.getInstance().setRequestQueueFactory(...)** "
+                    + "to initialize RequestQueue first!";
+            listener.onError(seqId, CommonError.REQUEST_QUEUE_NOT_INITIALIZED, message);
+        }
+
+        return false;
+    }
+
+    private void addRequestNode(RequestNode node) {
+        node.mStartTime = SystemClock.elapsedRealtime();
+        String host = hostOf(node);
+        // Requests built by a creator report back through the client's listeners, also
+        // without a listener of their own. Plain sendRequest() ones never do.
+        boolean reported = node.mListener != null || node instanceof CoalescedCall
+                || node.mCreator != null;
+
+        if (mCircuitBreaker != null && !(reported
+                ? mCircuitBreaker.allowRequest(host) : mCircuitBreaker.allowUnreported(host))) {
+            failFast(node, new CircuitOpenError(host));
+            return;
+        }
+
+        if (reported) {
+            mRequestRegistry.put(node);
+        }
+
+        startAttempts(node);
+    }
+
+    /**
+     * Starts the network part of a node that is already registered.
+     */
+    private void startNode(RequestNode node) {
+        String host = hostOf(node);
+        if (mCircuitBreaker != null && !mCircuitBreaker.allowRequest(host)) {
+            if (mRequestRegistry.remove(node.mSeqId) != null) {
+                failFast(node, new CircuitOpenError(host));
+            }
+
+            return;
+        }
+
+        startAttempts(node);
+    }
+
+    private void startAttempts(final RequestNode node) {
+        if (node.mCreator != null) {
+            if (mRetryBudget != null) {
+                mRetryBudget.onRequest();
+            }
+
+            if (mHedgeBudget != null) {
+                mHedgeBudget.onRequest();
+            }
+        }
+
+        RequestScheduler.DispatchListener hedgeStarter = null;
+        if (isHedged(node)) {
+            hedgeStarter = new RequestScheduler.DispatchListener() {
+                @Override
+                public void onDispatched(Request<?> request) {
+                    // Time spent waiting in a lane is not network latency, hedge from here.
+                    scheduleHedge(node);
+                }
+            };
+        }
+
+        dispatch(node, node.mVolleyRequest, false, hedgeStarter);
+    }
+
+    /**
+     * Every attempt of a node goes to the same url, the host is parsed once.
+     */
+    private static String hostOf(RequestNode node) {
+        String host = node.mHost;
+        if (host == null) {
+            host = RequestScheduler.hostOf(node.mVolleyRequest.getUrl());
+            node.mHost = host;
+        }
+
+        return host;
+    }
+
+    private RequestMetrics.Endpoint endpointOf(RequestNode node, RequestMetrics metrics) {
+        RequestMetrics.Endpoint endpoint = node.mEndpoint;
+        if (endpoint == null || endpoint.mOwner != metrics) {
+            endpoint = metrics.getEndpoint(node.mVolleyRequest.getUrl());
+            node.mEndpoint = endpoint;
+        }
+
+        return endpoint;
+    }
+
+    private void recordError(RequestNode node, int errorCode) {
+        RequestMetrics metrics = mMetrics;
+        if (metrics != null && node.mVolleyRequest != null) {
+            metrics.recordError(endpointOf(node, metrics), errorCode);
+        }
+    }
+
+    private void failFast(RequestNode node, VolleyError error) {
+        if (node.mListener == null && !(node instanceof CoalescedCall)) {
+            node.mVolleyRequest.deliverError(error);
+            return;
+        }
+
+        int errorCode = CommonError.fromError(error);
+        recordError(node, errorCode);
+        for (RequestNode target : resolveTargets(node)) {
+            if (target.mListener != null) {
+                target.mListener.onError(target.mSeqId, errorCode, error.getMessage());
+            }
+        }
+    }
+
+    private boolean isCircuitClosed(RequestNode node) {
+        return mCircuitBreaker == null
+                || mCircuitBreaker.getState(hostOf(node)) == CircuitBreaker.State.CLOSED;
+    }
+
+    private void dispatch(RequestNode node, Request<?> request, boolean hedge) {
+        dispatch(node, request, hedge, null);
+    }
+
+    private void dispatch(
+            RequestNode node, Request<?> request, boolean hedge,
+            RequestScheduler.DispatchListener dispatchListener) {
+
+        AbstractModel.Request modelRequest = node.mModelRequest;
+        ModelPriority priority = modelRequest != null
+                ? modelRequest.getPriority()
+                : ModelPriority.fromVolleyPriority(request.getPriority());
+
+        int timeoutMs = request instanceof BizBaseRequest && ((BizBaseRequest) request).isUpload()
+                ? mUploadTimeoutMs : mDefaultTimeoutMs;
+
+        // Model requests are retried by the client with backoff, see `scheduleRetry`.
+        // Plain Volley requests keep Volley's single immediate retry.
+        int volleyRetries = node.mCreator != null ? 0 : 1;
+        request.setRetryPolicy(new DeadlineRetryPolicy(timeoutMs, volleyRetries, node.mDeadline));
+
         if (request instanceof BizBaseRequest) {
             BizBaseRequest bizRequest = (BizBaseRequest) request;
-            if (modelRequest.isFillExtraHeader()) {
+            if (modelRequest != null && modelRequest.isFillExtraHeader()) {
                 bizRequest.setExtraHeadersFiller(mExtraHeadersFiller);
             }
+
+            if (node.mDeadline != DeadlineRetryPolicy.NO_DEADLINE && mDeadlineHeader != null) {
+                bizRequest.setDeadline(node.mDeadline, mDeadlineHeader);
+            }
+
+            bizRequest.setPriority(priority.toVolleyPriority());
+            bizRequest.setProgressReporter(node.mProgress);
+            if (node.mCachePolicy != null) {
+                // The cache was read already, or is skipped, the network response is stored.
+                bizRequest.setShouldCache(false);
+                bizRequest.setCacheWriter(getCache());
+                bizRequest.setCacheEntry(node.mCacheEntry);
+            } else if (hedge && bizRequest.shouldCache()) {
+                // Volley parks a cacheable request behind the running one with the same
+                // cache key, the hedge would only start once the primary finished.
+                bizRequest.setShouldCache(false);
+                bizRequest.setCacheWriter(getCache());
+            }
+
+            if (!bizRequest.isUpload()) {
+                setBodyEncoding(bizRequest, hostOf(node), modelRequest);
+            }
+
+            RequestEventListener listener = mRequestEventListener;
+            if (listener != null) {
+                RequestTiming timing = new RequestTiming(node.mSeqId, request.getUrl(), listener);
+                bizRequest.setTiming(timing);
+                timing.mark(RequestTiming.Event.QUEUED);
+            }
         }
 
-        if (listener != null) {
-            mRequestList.put(seqId, new RequestNode(seqId, request, listener));
+        node.addAttempt(request, hedge);
+        mScheduler.schedule(request, hostOf(node), priority, dispatchListener);
+    }
+
+    private void setBodyEncoding(
+            BizBaseRequest request, String host, AbstractModel.Request modelRequest) {
+
+        ContentEncoding encoding = modelRequest != null ? modelRequest.getBodyEncoding() : null;
+        if (encoding == null && !mHostBodyEncodings.isEmpty()) {
+            encoding = mHostBodyEncodings.get(host);
         }
 
-        mRequestQueue.add(request);
+        if (encoding != null) {
+            request.setBodyEncoding(encoding, modelRequest != null
+                    ? modelRequest.getMinCompressSize() : AbstractModel.DEFAULT_MIN_COMPRESS_SIZE);
+        }
+    }
+
+    private static boolean isHedged(RequestNode node) {
+        AbstractModel.Request modelRequest = node.mModelRequest;
+        return modelRequest != null && modelRequest.isHedge() && modelRequest.isIdempotent();
     }
 
-    public synchronized void cancelBizModel(int seqId) {
-        RequestNode node = mRequestList.remove(seqId);
+    private void scheduleHedge(final RequestNode node) {
+        if (node.isClaimed()) {
+            return;
+        }
+
+        long delayMs = node.mModelRequest.getHedgeDelayMs();
+        if (delayMs <= 0) {
+            String host = hostOf(node);
+            delayMs = mLatencyTracker.getPercentile(host, HEDGE_PERCENTILE);
+            if (delayMs <= 0) {
+                // Nothing observed for this host yet.
+                return;
+            }
+        }
+
+        mHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                hedge(node);
+            }
+        }, delayMs);
+    }
+
+    private void hedge(RequestNode node) {
+        // Once an attempt failed, the retry path owns the node.
+        if (node.isClaimed() || node.mRetryCount > 0 || !isCircuitClosed(node)) {
+            return;
+        }
+
+        if (mHedgeBudget != null && !mHedgeBudget.tryAcquire()) {
+            return;
+        }
+
+        Request<?> request = node.mCreator.create(node.mSeqId);
+        dispatch(node, request, true);
+        if (node.isClaimed()) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * @return true if another attempt of the node was scheduled instead of failing it.
+     */
+    private boolean scheduleRetry(final RequestNode node, VolleyError error) {
+        if (node.mCreator == null || !isCircuitClosed(node)) {
+            return false;
+        }
+
+        BackoffRetryPolicy policy = node.mModelRequest.getRetryPolicy();
+        if (policy == null) {
+            policy = mRetryPolicy;
+        }
+
+        long delayMs = policy.getRetryDelayMs(
+                node.mRetryCount, node.mModelRequest.isIdempotent(), error);
+        if (delayMs == BackoffRetryPolicy.NO_RETRY) {
+            return false;
+        }
+
+        // No time would be left for the attempt itself.
+        if (node.mDeadline != DeadlineRetryPolicy.NO_DEADLINE
+                && SystemClock.elapsedRealtime() + delayMs >= node.mDeadline) {
+            return false;
+        }
+
+        if (mRetryBudget != null && !mRetryBudget.tryAcquire()) {
+            return false;
+        }
+
+        ++node.mRetryCount;
+        mHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                retry(node);
+            }
+        }, delayMs);
+
+        return true;
+    }
+
+    private void retry(RequestNode node) {
+        if (node.isClaimed()) {
+            return;
+        }
+
+        Request<?> request = node.mCreator.create(node.mSeqId);
+        dispatch(node, request, false);
+
+        // Canceled while the new attempt was being created.
+        if (node.isClaimed()) {
+            request.cancel();
+        }
+    }
+
+    public void cancelBizModel(int seqId) {
+        RequestNode node = mRequestRegistry.remove(seqId);
         if (node != null) {
-            node.mVolleyRequest.cancel();
+            cancelNode(node);
+            return;
+        }
+
+        CompositeCall call = mCompositeCalls.remove(seqId);
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Cancels the network work of a node that was already removed from the registry.
+     */
+    private void cancelNode(RequestNode node) {
+        CoalescedCall call = node.mCoalescedCall;
+        if (call == null) {
+            node.cancelAttempts();
+            return;
+        }
+
+        // Only cancel the shared network request once nobody is waiting for it.
+        if (call.leave(node)) {
+            mCoalescedCalls.remove(call.mKey, call);
+            if (mRequestRegistry.remove(call.mSeqId) != null) {
+                call.cancelAttempts();
+            }
+        }
+    }
+
+    /**
+     * @return the nodes to deliver the result of `node` to.
+     */
+    private List<RequestNode> resolveTargets(RequestNode node) {
+        if (!(node instanceof CoalescedCall)) {
+            return Collections.singletonList(node);
+        }
+
+        List<RequestNode> targets = new ArrayList<>();
+        CoalescedCall call = (CoalescedCall) node;
+        mCoalescedCalls.remove(call.mKey, call);
+        for (RequestNode subscriber : call.close()) {
+            if (mRequestRegistry.remove(subscriber.mSeqId) != null) {
+                targets.add(subscriber);
+            }
         }
+
+        return targets;
     }
 
     public RequestQueue getRequestQueue() {
@@ -284,6 +1271,22 @@ public class MajorHttpClient {
                 }
             };
 
+    private WrappedRequestListener<Object> mBizParsedRequestListener =
+            new WrappedRequestListener<Object>() {
+                @Override
+                protected void handleSuccess(int seqId,
+                        ModelRequestListener<Object> listener,
+                        BizBaseResponse<Object> response) {
+
+                    if (response == null) {
+                        listener.onSuccess(seqId, null, null);
+                        return;
+                    }
+
+                    listener.onSuccess(seqId, response.mNetworkResp, response.mContent);
+                }
+            };
+
     private WrappedRequestListener<byte[]> mBizBinaryRequestListener =
             new WrappedRequestListener<byte[]>() {
                 @Override
@@ -359,14 +1362,36 @@ public class MajorHttpClient {
         @SuppressWarnings("unchecked")
         @Override
         public void onSuccess(int seqId, BizBaseResponse<T> response) {
-            synchronized (MajorHttpClient.this) {
-                RequestNode node = mRequestList.remove(seqId);
-                if (node == null || node.mListener == null) {
-                    return;
+            RequestNode node = mRequestRegistry.remove(seqId);
+            if (node == null) {
+                return;
+            }
+
+            // Cancels the losing attempt if this request was hedged.
+            node.cancelAttempts();
+            String host = hostOf(node);
+
+            // Cache hits carry no network time, they say nothing about the host.
+            if (response != null && response.mNetworkResp != null
+                    && response.mNetworkResp.mNetworkTimeMs > 0) {
+                RequestMetrics metrics = mMetrics;
+                if (metrics != null) {
+                    metrics.recordSuccess(endpointOf(node, metrics),
+                            SystemClock.elapsedRealtime() - node.mStartTime);
                 }
 
-                ModelRequestListener<T> listener = (ModelRequestListener<T>) node.mListener;
-                handleSuccess(seqId, listener, response);
+                if (mCircuitBreaker != null) {
+                    mCircuitBreaker.onSuccess(host);
+                }
+
+                mLatencyTracker.record(host, response.mNetworkResp.mNetworkTimeMs);
+            }
+
+            for (RequestNode target : resolveTargets(node)) {
+                if (target.mListener != null) {
+                    ModelRequestListener<T> listener = (ModelRequestListener<T>) target.mListener;
+                    handleSuccess(target.mSeqId, listener, response);
+                }
             }
         }
 
@@ -376,12 +1401,38 @@ public class MajorHttpClient {
         }
     }
 
-    private synchronized void handleError(int seqId, VolleyError error) {
-        RequestNode node = mRequestList.remove(seqId);
-        if (node == null || node.mListener == null) {
+    private void handleError(int seqId, VolleyError error) {
+        RequestNode node = mRequestRegistry.get(seqId);
+        if (node == null) {
+            return;
+        }
+
+        if (mCircuitBreaker != null) {
+            mCircuitBreaker.onError(hostOf(node), error);
+        }
+
+        // A hedged twin is still running and may succeed.
+        if (node.finishAttempt() || scheduleRetry(node, error)) {
             return;
         }
 
-        node.mListener.onError(seqId, CommonError.fromError(error), error.toString());
+        node = mRequestRegistry.remove(seqId);
+        if (node == null) {
+            return;
+        }
+
+        if (node.mDeadline != DeadlineRetryPolicy.NO_DEADLINE
+                && SystemClock.elapsedRealtime() >= node.mDeadline) {
+            error = new DeadlineExceededError(error);
+        }
+
+        int errorCode = CommonError.fromError(error);
+        String message = error instanceof BizParseError ? error.getMessage() : error.toString();
+        recordError(node, errorCode);
+        for (RequestNode target : resolveTargets(node)) {
+            if (target.mListener != null) {
+                target.mListener.onError(target.mSeqId, errorCode, message);
+            }
+        }
     }
 }
@@ -0,0 +1,297 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import com.jungle.majorhttps.network.CommonError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms and error counters per host and path template, fed by
+ * {@link MajorHttpClient} whenever a model request completes. Cache hits are not
+ * recorded.
+ *
+ * Paths are normalized, so that {@code /users/42/posts} and {@code /users/7/posts} share the
+ * endpoint {@code /users/{id}/posts}. The number of endpoints is capped, the rest is
+ * counted under {@code {other}} of their host.
+ */
+public class RequestMetrics {
+
+    public interface PathNormalizer {
+        String normalize(String path);
+    }
+
+
+    public static class EndpointSnapshot {
+
+        public final String mHost;
+        public final String mPath;
+        public final LatencyHistogram.Snapshot mLatency;
+        /**
+         * Failed requests by {@link com.jungle.majorhttps.network.CommonError} code.
+         */
+        public final Map<Integer, Long> mErrorCounts;
+
+
+        public EndpointSnapshot(
+                String host, String path, LatencyHistogram.Snapshot latency,
+                Map<Integer, Long> errorCounts) {
+
+            mHost = host;
+            mPath = path;
+            mLatency = latency;
+            mErrorCounts = errorCounts;
+        }
+
+        @Override
+        public String toString() {
+            return mHost + mPath + " count=" + mLatency.mCount
+                    + " p50=" + mLatency.getPercentile(0.5f)
+                    + " p95=" + mLatency.getPercentile(0.95f)
+                    + " p99=" + mLatency.getPercentile(0.99f)
+                    + " errors=" + mErrorCounts;
+        }
+    }
+
+
+    public static final int DEFAULT_MAX_ENDPOINTS = 256;
+
+    private static final String OTHER_PATH = "{other}";
+    private static final String ID_SEGMENT = "{id}";
+    private static final int MIN_HEX_ID_LENGTH = 16;
+
+
+    /**
+     * Replaces numeric segments and long hex or UUID segments by {@code {id}}.
+     */
+    public static final PathNormalizer DEFAULT_NORMALIZER = new PathNormalizer() {
+        @Override
+        public String normalize(String path) {
+            StringBuilder builder = null;
+            int start = 0;
+            while (start < path.length()) {
+                int end = path.indexOf('/', start);
+                if (end < 0) {
+                    end = path.length();
+                }
+
+                if (isIdSegment(path, start, end)) {
+                    if (builder == null) {
+                        builder = new StringBuilder(path.length()).append(path, 0, start);
+                    }
+
+                    builder.append(ID_SEGMENT);
+                } else if (builder != null) {
+                    builder.append(path, start, end);
+                }
+
+                if (end < path.length() && builder != null) {
+                    builder.append('/');
+                }
+
+                start = end + 1;
+            }
+
+            return builder != null ? builder.toString() : path;
+        }
+    };
+
+    private static boolean isIdSegment(String path, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+
+        boolean digitsOnly = true;
+        boolean hexOnly = true;
+        for (int i = start; i < end; ++i) {
+            char c = path.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            digitsOnly &= digit;
+            hexOnly &= digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-';
+        }
+
+        return digitsOnly || (hexOnly && end - start >= MIN_HEX_ID_LENGTH);
+    }
+
+
+    /**
+     * Handle of one endpoint. Resolve it once per request with {@link #getEndpoint(String)},
+     * recording through it does not allocate.
+     */
+    public static final class Endpoint {
+
+        private static final int ERROR_SLOTS = 32;
+        private static final int EMPTY_SLOT = Integer.MIN_VALUE;
+
+        final RequestMetrics mOwner;
+        final String mHost;
+        final String mPath;
+        final LatencyHistogram mLatency = new LatencyHistogram();
+        private final AtomicIntegerArray mErrorCodes = new AtomicIntegerArray(ERROR_SLOTS);
+        private final AtomicLongArray mErrorCounts = new AtomicLongArray(ERROR_SLOTS);
+        private final AtomicLong mOtherErrors = new AtomicLong();
+
+
+        Endpoint(RequestMetrics owner, String host, String path) {
+            mOwner = owner;
+            mHost = host;
+            mPath = path;
+            for (int i = 0; i < ERROR_SLOTS; ++i) {
+                mErrorCodes.set(i, EMPTY_SLOT);
+            }
+        }
+
+        void recordError(int errorCode) {
+            int start = (errorCode * 0x9E3779B9) >>> 27;
+            for (int i = 0; i < ERROR_SLOTS; ++i) {
+                int slot = (start + i) & (ERROR_SLOTS - 1);
+                int code = mErrorCodes.get(slot);
+                if (code == EMPTY_SLOT) {
+                    if (!mErrorCodes.compareAndSet(slot, EMPTY_SLOT, errorCode)) {
+                        code = mErrorCodes.get(slot);
+                    } else {
+                        code = errorCode;
+                    }
+                }
+
+                if (code == errorCode) {
+                    mErrorCounts.incrementAndGet(slot);
+                    return;
+                }
+            }
+
+            mOtherErrors.incrementAndGet();
+        }
+
+        EndpointSnapshot snapshotAndReset() {
+            Map<Integer, Long> errors = new HashMap<>();
+            for (int i = 0; i < ERROR_SLOTS; ++i) {
+                long count = mErrorCounts.getAndSet(i, 0);
+                if (count > 0) {
+                    errors.put(mErrorCodes.get(i), count);
+                }
+            }
+
+            long other = mOtherErrors.getAndSet(0);
+            if (other > 0) {
+                errors.put(CommonError.FAILED, other + (errors.containsKey(CommonError.FAILED)
+                        ? errors.get(CommonError.FAILED) : 0));
+            }
+
+            return new EndpointSnapshot(mHost, mPath, mLatency.snapshotAndReset(),
+                    Collections.unmodifiableMap(errors));
+        }
+    }
+
+
+    private final ConcurrentHashMap<String, Endpoint> mEndpoints = new ConcurrentHashMap<>();
+    private volatile PathNormalizer mPathNormalizer = DEFAULT_NORMALIZER;
+    private volatile int mMaxEndpoints = DEFAULT_MAX_ENDPOINTS;
+
+
+    public void setPathNormalizer(PathNormalizer normalizer) {
+        mPathNormalizer = normalizer != null ? normalizer : DEFAULT_NORMALIZER;
+    }
+
+    public void setMaxEndpoints(int maxEndpoints) {
+        mMaxEndpoints = Math.max(1, maxEndpoints);
+    }
+
+    public void recordSuccess(String url, long latencyMs) {
+        recordSuccess(getEndpoint(url), latencyMs);
+    }
+
+    public void recordSuccess(Endpoint endpoint, long latencyMs) {
+        endpoint.mLatency.record(latencyMs);
+    }
+
+    public void recordError(String url, int errorCode) {
+        recordError(getEndpoint(url), errorCode);
+    }
+
+    public void recordError(Endpoint endpoint, int errorCode) {
+        endpoint.recordError(errorCode);
+    }
+
+    /**
+     * @return the endpoints that saw requests since the last call, for periodic upload.
+     */
+    public List<EndpointSnapshot> snapshotAndReset() {
+        List<EndpointSnapshot> snapshots = new ArrayList<>();
+        for (Endpoint endpoint : mEndpoints.values()) {
+            EndpointSnapshot snapshot = endpoint.snapshotAndReset();
+            if (snapshot.mLatency.mCount > 0 || !snapshot.mErrorCounts.isEmpty()) {
+                snapshots.add(snapshot);
+            }
+        }
+
+        return snapshots;
+    }
+
+    /**
+     * Parses and normalizes {@code url}, callers should keep the result for the
+     * lifetime of the request rather than resolve it on every record.
+     */
+    public Endpoint getEndpoint(String url) {
+        int hostStart = url.indexOf("://");
+        hostStart = hostStart >= 0 ? hostStart + 3 : 0;
+
+        int pathEnd = url.length();
+        int query = url.indexOf('?', hostStart);
+        if (query >= 0) {
+            pathEnd = query;
+        }
+
+        int fragment = url.indexOf('#', hostStart);
+        if (fragment >= 0 && fragment < pathEnd) {
+            pathEnd = fragment;
+        }
+
+        int pathStart = url.indexOf('/', hostStart);
+        if (pathStart < 0 || pathStart > pathEnd) {
+            pathStart = pathEnd;
+        }
+
+        String host = url.substring(hostStart, pathStart);
+        String path = mPathNormalizer.normalize(url.substring(pathStart, pathEnd));
+        String key = host + path;
+
+        Endpoint endpoint = mEndpoints.get(key);
+        if (endpoint != null) {
+            return endpoint;
+        }
+
+        if (mEndpoints.size() >= mMaxEndpoints) {
+            path = OTHER_PATH;
+            key = host + path;
+        }
+
+        endpoint = new Endpoint(this, host, path);
+        Endpoint existing = mEndpoints.putIfAbsent(key, endpoint);
+        return existing != null ? existing : endpoint;
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free registry of in-flight requests, keyed by the primitive `seqId`.
+ *
+ * Open addressing with linear probing. A node is removed by atomically claiming it,
+ * so exactly one of `remove(seqId)` callers (completion, error, cancel) wins the node.
+ * Claimed nodes stay in their slot as tombstones until a `put` reuses it or the table
+ * is resized. Resizing publishes the next table first and then forwards every slot
+ * with a `MOVED` marker, so other threads never wait for the resizing thread.
+ */
+class RequestRegistry<N extends RequestRegistry.Node> {
+
+    static abstract class Node {
+
+        private static final AtomicIntegerFieldUpdater<Node> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "mState");
+
+        private static final int STATE_LIVE = 0;
+        private static final int STATE_CLAIMED = 1;
+
+
+        final int mSeqId;
+        private volatile int mState = STATE_LIVE;
+
+
+        Node(int seqId) {
+            mSeqId = seqId;
+        }
+
+        boolean claim() {
+            return STATE_UPDATER.compareAndSet(this, STATE_LIVE, STATE_CLAIMED);
+        }
+
+        boolean isClaimed() {
+            return mState != STATE_LIVE;
+        }
+    }
+
+
+    private static final Object MOVED = new Object();
+    private static final int MIN_CAPACITY = 16;
+
+
+    private static class Table {
+
+        final AtomicReferenceArray<Object> mSlots;
+        final int mMask;
+        final int mThreshold;
+        final AtomicInteger mUsedSlots = new AtomicInteger();
+        final AtomicReference<Table> mNext = new AtomicReference<>();
+        volatile boolean mTransferred;
+
+
+        Table(int capacity) {
+            mSlots = new AtomicReferenceArray<>(capacity);
+            mMask = capacity - 1;
+            mThreshold = capacity >> 1;
+        }
+    }
+
+
+    private final AtomicReference<Table> mTable =
+            new AtomicReference<>(new Table(MIN_CAPACITY));
+    private final AtomicInteger mSize = new AtomicInteger();
+
+
+    public void put(N node) {
+        putInto(mTable.get(), node);
+        mSize.incrementAndGet();
+    }
+
+    @SuppressWarnings("unchecked")
+    public N get(int seqId) {
+        Table table = mTable.get();
+        while (table != null) {
+            // While a resize is running, nodes may already live in the next table.
+            Node node = find(table, seqId);
+            if (node != null) {
+                return (N) node;
+            }
+
+            table = table.mNext.get();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the node if this call claimed it, or null if it is absent
+     * or another thread removed it first.
+     */
+    public N remove(int seqId) {
+        N node = get(seqId);
+        if (node == null || !node.claim()) {
+            return null;
+        }
+
+        mSize.decrementAndGet();
+        return node;
+    }
+
+    public int size() {
+        return mSize.get();
+    }
+
+    public void clear() {
+        mTable.set(new Table(MIN_CAPACITY));
+        mSize.set(0);
+    }
+
+    private static int indexFor(int seqId, int mask) {
+        return (seqId ^ (seqId >>> 16)) & mask;
+    }
+
+    private static Node find(Table table, int seqId) {
+        int mask = table.mMask;
+        int index = indexFor(seqId, mask);
+        for (int probe = 0; probe <= mask; ++probe) {
+            Object slot = table.mSlots.get(index);
+            if (slot == null) {
+                return null;
+            }
+
+            // A `MOVED` slot was copied already, but the probe chain may wrap around
+            // to slots the resize has not reached yet, so keep probing past it.
+            if (slot != MOVED) {
+                Node node = (Node) slot;
+                if (node.mSeqId == seqId) {
+                    return node.isClaimed() ? null : node;
+                }
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        return null;
+    }
+
+    private void putInto(Table table, N node) {
+        while (true) {
+            if (table.mUsedSlots.get() >= table.mThreshold) {
+                table = resize(table);
+                continue;
+            }
+
+            int mask = table.mMask;
+            int index = indexFor(node.mSeqId, mask);
+            boolean moved = false;
+
+            for (int probe = 0; probe <= mask; ) {
+                Object slot = table.mSlots.get(index);
+                if (slot == MOVED) {
+                    moved = true;
+                    break;
+                }
+
+                if (slot == null) {
+                    if (table.mSlots.compareAndSet(index, null, node)) {
+                        table.mUsedSlots.incrementAndGet();
+                        return;
+                    }
+
+                    // Lost the race for this slot, look at it again.
+                    continue;
+                }
+
+                if (((Node) slot).isClaimed()
+                        && table.mSlots.compareAndSet(index, slot, node)) {
+                    return;
+                }
+
+                index = (index + 1) & mask;
+                ++probe;
+            }
+
+            table = moved ? table.mNext.get() : resize(table);
+        }
+    }
+
+    private Table resize(Table table) {
+        Table next = table.mNext.get();
+        if (next != null) {
+            // Another thread is already moving this table, just continue in the next one.
+            return next;
+        }
+
+        int capacity = MIN_CAPACITY;
+        while (capacity < (mSize.get() + 1) * 4) {
+            capacity <<= 1;
+        }
+
+        if (!table.mNext.compareAndSet(null, new Table(capacity))) {
+            return table.mNext.get();
+        }
+
+        next = table.mNext.get();
+        transfer(table, next);
+        table.mTransferred = true;
+
+        // A nested resize of `next` may have finished first, so skip every finished table.
+        Table current = mTable.get();
+        while (current.mTransferred) {
+            mTable.compareAndSet(current, current.mNext.get());
+            current = mTable.get();
+        }
+
+        return next;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void transfer(Table table, Table next) {
+        AtomicReferenceArray<Object> slots = table.mSlots;
+        for (int i = 0; i < slots.length(); ++i) {
+            while (true) {
+                Object slot = slots.get(i);
+                if (slot != null && !((Node) slot).isClaimed()) {
+                    // Copy first, so lookups forwarded by `MOVED` always find the node.
+                    // If the slot changes meanwhile the copy is a claimed tombstone.
+                    putInto(next, (N) slot);
+                }
+
+                if (slots.compareAndSet(i, slot, MOVED)) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,491 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import android.os.SystemClock;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.jungle.majorhttps.model.base.ModelPriority;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admits requests into the Volley RequestQueue only while there is a free network slot,
+ * so waiting requests queue here by {@link ModelPriority} lane instead of behind bulk
+ * traffic inside Volley. A waiting request is promoted by one lane for every
+ * `agingIntervalMs` it has waited, so low lanes can not starve.
+ *
+ * Every lane keeps one queue per host and takes turns between hosts, and a host never
+ * runs more than its `maxRequestsPerHost`, so one slow host can not take every slot.
+ */
+public class RequestScheduler {
+
+    /**
+     * Same as Volley's default network dispatcher pool size.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    public static final long DEFAULT_AGING_INTERVAL_MS = 2000;
+    public static final int UNLIMITED_REQUESTS_PER_HOST = Integer.MAX_VALUE;
+
+
+    public interface DispatchListener {
+        /**
+         * Called once the request left its lane and was added to the Volley queue.
+         */
+        void onDispatched(Request<?> request);
+    }
+
+
+    public static class LaneStats {
+
+        public ModelPriority mPriority;
+        public long mDispatchedCount;
+        public long mTotalWaitMs;
+        public long mMaxWaitMs;
+        public int mWaitingCount;
+
+
+        public LaneStats(ModelPriority priority) {
+            mPriority = priority;
+        }
+
+        public long getAverageWaitMs() {
+            return mDispatchedCount > 0 ? mTotalWaitMs / mDispatchedCount : 0;
+        }
+    }
+
+
+    private static class Task {
+        Request<?> mRequest;
+        String mHost;
+        int mLane;
+        long mEnqueueTime;
+        DispatchListener mDispatchListener;
+        boolean mBlocked;
+
+        Task(Request<?> request, String host, int lane, long enqueueTime,
+                DispatchListener dispatchListener) {
+
+            mRequest = request;
+            mHost = host;
+            mLane = lane;
+            mEnqueueTime = enqueueTime;
+            mDispatchListener = dispatchListener;
+        }
+    }
+
+
+    private static class Lane {
+
+        /**
+         * Waiting tasks by host, in the order the hosts take turns.
+         */
+        final LinkedHashMap<String, ArrayDeque<Task>> mHostQueues = new LinkedHashMap<>();
+        int mWaitingCount;
+
+
+        void add(Task task) {
+            ArrayDeque<Task> queue = mHostQueues.get(task.mHost);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                mHostQueues.put(task.mHost, queue);
+            }
+
+            queue.addLast(task);
+            ++mWaitingCount;
+        }
+
+        void take(Task task) {
+            ArrayDeque<Task> queue = mHostQueues.remove(task.mHost);
+            queue.pollFirst();
+            --mWaitingCount;
+
+            // Re-inserting moves the host to the end of the turn order.
+            if (!queue.isEmpty()) {
+                mHostQueues.put(task.mHost, queue);
+            }
+        }
+    }
+
+
+    private final Object mLock = new Object();
+    private final Lane[] mLanes;
+    private final LaneStats[] mLaneStats;
+    private final Map<Request<?>, Task> mRunning = new IdentityHashMap<>();
+    private final Map<String, HostStats> mHostStats = new HashMap<>();
+    private final Map<String, Integer> mHostLimits = new HashMap<>();
+
+    private RequestQueue mRequestQueue;
+    private int mMaxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private int mMaxRequestsPerHost = UNLIMITED_REQUESTS_PER_HOST;
+    private long mAgingIntervalMs = DEFAULT_AGING_INTERVAL_MS;
+    private HostStats.Listener mHostStatsListener;
+
+    private RequestQueue.RequestFinishedListener<Object> mFinishedListener =
+            new RequestQueue.RequestFinishedListener<Object>() {
+                @Override
+                public void onRequestFinished(Request<Object> request) {
+                    onFinished(request);
+                }
+            };
+
+
+    public RequestScheduler() {
+        ModelPriority[] priorities = ModelPriority.values();
+        mLanes = new Lane[priorities.length];
+        mLaneStats = new LaneStats[priorities.length];
+        for (int i = 0; i < priorities.length; ++i) {
+            mLanes[i] = new Lane();
+            mLaneStats[i] = new LaneStats(priorities[i]);
+        }
+    }
+
+    public void setRequestQueue(RequestQueue queue) {
+        synchronized (mLock) {
+            if (mRequestQueue != null) {
+                mRequestQueue.removeRequestFinishedListener(mFinishedListener);
+            }
+
+            mRequestQueue = queue;
+            mRequestQueue.addRequestFinishedListener(mFinishedListener);
+        }
+
+        drain();
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        synchronized (mLock) {
+            mMaxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        }
+
+        drain();
+    }
+
+    public void setAgingIntervalMs(long agingIntervalMs) {
+        synchronized (mLock) {
+            mAgingIntervalMs = Math.max(1, agingIntervalMs);
+        }
+    }
+
+    /**
+     * Default limit of concurrently running requests for any single host.
+     */
+    public void setMaxRequestsPerHost(int maxRequests) {
+        synchronized (mLock) {
+            mMaxRequestsPerHost = Math.max(1, maxRequests);
+            for (HostStats stats : mHostStats.values()) {
+                stats.mMaxRequests = getHostLimit(stats.mHost);
+            }
+        }
+
+        drain();
+    }
+
+    public void setMaxRequestsPerHost(String host, int maxRequests) {
+        synchronized (mLock) {
+            mHostLimits.put(host, Math.max(1, maxRequests));
+            HostStats stats = mHostStats.get(host);
+            if (stats != null) {
+                stats.mMaxRequests = getHostLimit(host);
+            }
+        }
+
+        drain();
+    }
+
+    public void setHostStatsListener(HostStats.Listener listener) {
+        synchronized (mLock) {
+            mHostStatsListener = listener;
+        }
+    }
+
+    public void schedule(Request<?> request, ModelPriority priority) {
+        schedule(request, hostOf(request.getUrl()), priority, null);
+    }
+
+    /**
+     * @param host the host of the request url, as returned by {@link #hostOf(String)}.
+     */
+    public void schedule(
+            Request<?> request, String host, ModelPriority priority,
+            DispatchListener dispatchListener) {
+
+        HostStats changed;
+        synchronized (mLock) {
+            HostStats stats = obtainHostStats(host);
+            boolean saturated = stats.isSaturated();
+
+            mLanes[priority.ordinal()].add(new Task(
+                    request, host, priority.ordinal(), SystemClock.elapsedRealtime(),
+                    dispatchListener));
+            ++stats.mWaitingCount;
+            changed = snapshotIfChanged(stats, saturated);
+        }
+
+        notifyHostStats(changed);
+        drain();
+    }
+
+    public HostStats getHostStats(String host) {
+        synchronized (mLock) {
+            HostStats stats = mHostStats.get(host);
+            return stats != null ? new HostStats(stats) : null;
+        }
+    }
+
+    public List<HostStats> getAllHostStats() {
+        List<HostStats> list = new ArrayList<>();
+        synchronized (mLock) {
+            for (HostStats stats : mHostStats.values()) {
+                list.add(new HostStats(stats));
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * @return a snapshot of the queue wait of every lane, ordered by priority.
+     */
+    public List<LaneStats> getLaneStats() {
+        List<LaneStats> list = new ArrayList<>();
+        synchronized (mLock) {
+            for (int i = 0; i < mLaneStats.length; ++i) {
+                LaneStats stats = mLaneStats[i];
+                LaneStats copy = new LaneStats(stats.mPriority);
+                copy.mDispatchedCount = stats.mDispatchedCount;
+                copy.mTotalWaitMs = stats.mTotalWaitMs;
+                copy.mMaxWaitMs = stats.mMaxWaitMs;
+                copy.mWaitingCount = mLanes[i].mWaitingCount;
+                list.add(copy);
+            }
+        }
+
+        return list;
+    }
+
+    public void resetLaneStats() {
+        synchronized (mLock) {
+            for (LaneStats stats : mLaneStats) {
+                stats.mDispatchedCount = 0;
+                stats.mTotalWaitMs = 0;
+                stats.mMaxWaitMs = 0;
+            }
+        }
+    }
+
+    private void onFinished(Request<?> request) {
+        HostStats changed;
+        synchronized (mLock) {
+            Task task = mRunning.remove(request);
+            if (task == null) {
+                return;
+            }
+
+            HostStats stats = mHostStats.get(task.mHost);
+            boolean saturated = stats.isSaturated();
+            --stats.mRunningCount;
+            changed = snapshotIfChanged(stats, saturated);
+        }
+
+        notifyHostStats(changed);
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            RequestQueue queue;
+            Task task;
+            HostStats changed;
+            synchronized (mLock) {
+                queue = mRequestQueue;
+                if (queue == null || mRunning.size() >= mMaxConcurrentRequests) {
+                    return;
+                }
+
+                task = pollNext(SystemClock.elapsedRealtime());
+                if (task == null) {
+                    return;
+                }
+
+                mRunning.put(task.mRequest, task);
+                HostStats stats = mHostStats.get(task.mHost);
+                boolean saturated = stats.isSaturated();
+                ++stats.mRunningCount;
+                ++stats.mDispatchedCount;
+                changed = snapshotIfChanged(stats, saturated);
+            }
+
+            notifyHostStats(changed);
+
+            // Volley delivers canceled requests as finished, which frees the slot again.
+            queue.add(task.mRequest);
+            if (task.mDispatchListener != null) {
+                task.mDispatchListener.onDispatched(task.mRequest);
+            }
+        }
+    }
+
+    private Task pollNext(long now) {
+        Task best = null;
+        long bestRank = Long.MAX_VALUE;
+
+        for (Lane lane : mLanes) {
+            Task head = peekRunnable(lane);
+            if (head == null) {
+                continue;
+            }
+
+            long rank = head.mLane - (now - head.mEnqueueTime) / mAgingIntervalMs;
+            if (rank < bestRank || (rank == bestRank && head.mEnqueueTime < best.mEnqueueTime)) {
+                best = head;
+                bestRank = rank;
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+
+        mLanes[best.mLane].take(best);
+        --mHostStats.get(best.mHost).mWaitingCount;
+
+        long waitTime = now - best.mEnqueueTime;
+        LaneStats stats = mLaneStats[best.mLane];
+        ++stats.mDispatchedCount;
+        stats.mTotalWaitMs += waitTime;
+        stats.mMaxWaitMs = Math.max(stats.mMaxWaitMs, waitTime);
+        return best;
+    }
+
+    /**
+     * @return the head task of the first host in turn that is below its limit.
+     */
+    private Task peekRunnable(Lane lane) {
+        Iterator<ArrayDeque<Task>> iterator = lane.mHostQueues.values().iterator();
+        while (iterator.hasNext()) {
+            ArrayDeque<Task> queue = iterator.next();
+            Task head = queue.peekFirst();
+            while (head != null && head.mRequest.isCanceled()) {
+                queue.pollFirst();
+                --lane.mWaitingCount;
+                --mHostStats.get(head.mHost).mWaitingCount;
+                head = queue.peekFirst();
+            }
+
+            if (head == null) {
+                iterator.remove();
+                continue;
+            }
+
+            HostStats stats = mHostStats.get(head.mHost);
+            if (stats.mRunningCount < stats.mMaxRequests) {
+                return head;
+            }
+
+            if (!head.mBlocked) {
+                head.mBlocked = true;
+                ++stats.mSaturatedCount;
+            }
+        }
+
+        return null;
+    }
+
+    private HostStats obtainHostStats(String host) {
+        HostStats stats = mHostStats.get(host);
+        if (stats == null) {
+            stats = new HostStats(host);
+            stats.mMaxRequests = getHostLimit(host);
+            mHostStats.put(host, stats);
+        }
+
+        return stats;
+    }
+
+    private int getHostLimit(String host) {
+        Integer limit = mHostLimits.get(host);
+        return limit != null ? limit : mMaxRequestsPerHost;
+    }
+
+    private HostStats snapshotIfChanged(HostStats stats, boolean wasSaturated) {
+        if (mHostStatsListener == null || stats.isSaturated() == wasSaturated) {
+            return null;
+        }
+
+        return new HostStats(stats);
+    }
+
+    private void notifyHostStats(HostStats stats) {
+        HostStats.Listener listener = mHostStatsListener;
+        if (stats != null && listener != null) {
+            listener.onHostStatsChanged(stats);
+        }
+    }
+
+    /**
+     * Same as {@code new URL(url).getHost()} without building the URL, so "" if there
+     * is no scheme.
+     */
+    static String hostOf(String url) {
+        if (url == null) {
+            return "";
+        }
+
+        int start = url.indexOf("://");
+        if (start <= 0) {
+            return "";
+        }
+
+        start += 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+
+            ++end;
+        }
+
+        int userInfo = url.lastIndexOf('@', end - 1);
+        if (userInfo >= start) {
+            start = userInfo + 1;
+        }
+
+        if (start < end && url.charAt(start) == '[') {
+            int bracket = url.indexOf(']', start);
+            return bracket >= 0 && bracket < end ? url.substring(start, bracket + 1) : "";
+        }
+
+        int port = url.indexOf(':', start);
+        if (port >= 0 && port < end) {
+            end = port;
+        }
+
+        return url.substring(start, end);
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import com.jungle.majorhttps.model.binary.DownloadFileRequestModel;
+import com.jungle.majorhttps.model.listener.ModelRequestListener;
+import com.jungle.majorhttps.network.CommonError;
+import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.base.ProgressReporter;
+import com.jungle.majorhttps.request.download.DownloadState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+/**
+ * Downloads the byte ranges of a {@link DownloadState} over parallel connections.
+ *
+ * A HEAD request finds the length and validator, unless a saved state is resumed.
+ * Every segment is a request of its own, retried and resumed by the client like
+ * any other. Callbacks all arrive on the main thread.
+ */
+class SegmentedDownload implements CompositeCall {
+
+    private static final long MIN_SEGMENT_SIZE = 512 * 1024;
+
+
+    private final MajorHttpClient mClient;
+    private final int mSeqId;
+    private final DownloadFileRequestModel.Request mRequest;
+    private final ModelRequestListener<String> mListener;
+    private final ProgressReporter mProgress;
+
+    private DownloadState mState;
+    private int mProbeSeqId;
+    private int mSingleSeqId;
+    private int[] mSegmentSeqIds;
+    private int mRunningSegments;
+    private NetworkResp mLastResp;
+    private boolean mRestarted;
+    private boolean mFinished;
+
+
+    SegmentedDownload(
+            MajorHttpClient client, int seqId,
+            DownloadFileRequestModel.Request request, ModelRequestListener<String> listener) {
+
+        mClient = client;
+        mSeqId = seqId;
+        mRequest = request;
+        mListener = listener;
+        mProgress = request.createProgressReporter(seqId);
+    }
+
+    void start() {
+        DownloadState state = DownloadState.load(mRequest.getFilePath(), mRequest.getUrl());
+        if (state != null && state.getSegmentCount() > 1 && state.getValidator() != null) {
+            mState = state;
+            startSegments();
+            return;
+        }
+
+        probe();
+    }
+
+    @Override
+    public void cancel() {
+        mFinished = true;
+        cancelRequests();
+    }
+
+    private void probe() {
+        mProbeSeqId = mClient.loadDownloadProbe(mRequest, new ModelRequestListener<byte[]>() {
+            @Override
+            public void onSuccess(int seqId, NetworkResp networkResp, byte[] response) {
+                onProbed(networkResp);
+            }
+
+            @Override
+            public void onError(int seqId, int errorCode, String message) {
+                fail(errorCode, message);
+            }
+        });
+    }
+
+    private void onProbed(NetworkResp networkResp) {
+        if (mFinished) {
+            return;
+        }
+
+        Map<String, String> headers = networkResp != null ? networkResp.mHeaders : null;
+        long length = -1;
+        boolean acceptRanges = false;
+        if (headers != null) {
+            acceptRanges = "bytes".equalsIgnoreCase(headers.get("Accept-Ranges"));
+            // An encoded length says nothing about the bytes the ranged segments receive.
+            String encoding = headers.get("Content-Encoding");
+            if (encoding != null && !"identity".equalsIgnoreCase(encoding.trim())) {
+                acceptRanges = false;
+            }
+
+            try {
+                String contentLength = headers.get("Content-Length");
+                length = contentLength != null ? Long.parseLong(contentLength.trim()) : -1;
+            } catch (NumberFormatException e) {
+                length = -1;
+            }
+        }
+
+        int segmentCount = (int) Math.min(mRequest.getSegmentCount(), length / MIN_SEGMENT_SIZE);
+        if (!acceptRanges || segmentCount < 2) {
+            loadSingle();
+            return;
+        }
+
+        String filePath = mRequest.getFilePath();
+        DownloadState.delete(filePath);
+        mState = DownloadState.create(filePath, mRequest.getUrl(), headers, length, segmentCount);
+
+        RandomAccessFile file = null;
+        try {
+            File dataFile = mState.getDataFile();
+            File dir = dataFile.getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                dir.mkdirs();
+            }
+
+            // Segments write at their own offsets, so the file gets its full length up front.
+            file = new RandomAccessFile(dataFile, "rw");
+            file.setLength(length);
+            mState.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(CommonError.FAILED, e.toString());
+            return;
+        } finally {
+            close(file);
+        }
+
+        startSegments();
+    }
+
+    private void loadSingle() {
+        ModelRequestListener<String> listener = new ModelRequestListener<String>() {
+            @Override
+            public void onSuccess(int seqId, NetworkResp networkResp, String response) {
+                if (finish()) {
+                    mListener.onSuccess(mSeqId, networkResp, response);
+                }
+            }
+
+            @Override
+            public void onError(int seqId, int errorCode, String message) {
+                fail(errorCode, message);
+            }
+        };
+
+        mSingleSeqId = mClient.loadSingleDownload(mRequest, mProgress, listener);
+    }
+
+    private void startSegments() {
+        int count = mState.getSegmentCount();
+        mSegmentSeqIds = new int[count];
+        mRunningSegments = 0;
+        for (int i = 0; i < count; ++i) {
+            if (!mState.isSegmentComplete(i)) {
+                ++mRunningSegments;
+            }
+        }
+
+        if (mRunningSegments == 0) {
+            complete();
+            return;
+        }
+
+        if (mProgress != null) {
+            mProgress.start(mState.getDownloadedBytes(), mState.getContentLength());
+        }
+
+        ModelRequestListener<String> segmentListener = new ModelRequestListener<String>() {
+            @Override
+            public void onSuccess(int seqId, NetworkResp networkResp, String response) {
+                onSegmentSuccess(networkResp);
+            }
+
+            @Override
+            public void onError(int seqId, int errorCode, String message) {
+                onSegmentError(errorCode, message);
+            }
+        };
+
+        for (int i = 0; i < count && !mFinished; ++i) {
+            if (!mState.isSegmentComplete(i)) {
+                mSegmentSeqIds[i] = mClient.loadDownloadSegment(
+                        mRequest, mState, i, mProgress, segmentListener);
+            }
+        }
+    }
+
+    private void onSegmentSuccess(NetworkResp networkResp) {
+        if (mFinished) {
+            return;
+        }
+
+        mLastResp = networkResp;
+        if (--mRunningSegments == 0) {
+            complete();
+        }
+    }
+
+    private void onSegmentError(int errorCode, String message) {
+        if (mFinished) {
+            return;
+        }
+
+        cancelRequests();
+        if (errorCode == CommonError.DOWNLOAD_CHANGED && !mRestarted) {
+            // The saved segments belong to an older version of the file.
+            mRestarted = true;
+            mSegmentSeqIds = null;
+            mState.discard();
+            probe();
+            return;
+        }
+
+        fail(errorCode, message);
+    }
+
+    private void complete() {
+        String filePath = mRequest.getFilePath();
+        File target = new File(filePath);
+        File dataFile = mState.getDataFile();
+        if (!dataFile.renameTo(target)) {
+            // Some file systems refuse to replace an existing file.
+            target.delete();
+            if (!dataFile.renameTo(target)) {
+                fail(CommonError.FAILED, "Cannot move download to " + target);
+                return;
+            }
+        }
+
+        DownloadState.getStateFile(filePath).delete();
+        if (finish()) {
+            mListener.onSuccess(mSeqId, mLastResp, filePath);
+        }
+    }
+
+    private void fail(int errorCode, String message) {
+        // The state stays on disk, a later load continues from it.
+        if (finish()) {
+            cancelRequests();
+            mListener.onError(mSeqId, errorCode, message);
+        }
+    }
+
+    private boolean finish() {
+        if (mFinished) {
+            return false;
+        }
+
+        mFinished = true;
+        mClient.removeCompositeCall(mSeqId);
+        return true;
+    }
+
+    private void cancelRequests() {
+        if (mProbeSeqId != 0) {
+            mClient.cancelBizModel(mProbeSeqId);
+        }
+
+        if (mSingleSeqId != 0) {
+            mClient.cancelBizModel(mSingleSeqId);
+        }
+
+        if (mSegmentSeqIds != null) {
+            for (int seqId : mSegmentSeqIds) {
+                if (seqId != 0) {
+                    mClient.cancelBizModel(seqId);
+                }
+            }
+        }
+    }
+
+    private static void close(RandomAccessFile file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
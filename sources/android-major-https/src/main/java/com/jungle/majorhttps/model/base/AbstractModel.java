@@ -27,11 +27,17 @@ import com.jungle.majorhttps.model.listener.BothProxyModelListener;
 import com.jungle.majorhttps.model.listener.ModelErrorListener;
 import com.jungle.majorhttps.model.listener.ModelListener;
 import com.jungle.majorhttps.model.listener.ModelLoadLifeListener;
+import com.jungle.majorhttps.model.listener.ModelProgressListener;
 import com.jungle.majorhttps.model.listener.ModelSuccessListener;
+import com.jungle.majorhttps.network.BackoffRetryPolicy;
+import com.jungle.majorhttps.network.ContentEncoding;
 import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.base.ProgressReporter;
+import com.jungle.majorhttps.request.base.RequestBody;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public abstract class AbstractModel<
         Impl extends AbstractModel,
@@ -40,6 +46,7 @@ public abstract class AbstractModel<
 
     public static final int INVALID_SEQ_ID = -1;
     public static final String TAG = "AbstractModel";
+    public static final int DEFAULT_MIN_COMPRESS_SIZE = 1024;
 
 
     public static class Request {
@@ -50,7 +57,25 @@ public abstract class AbstractModel<
         private Map<String, Object> mRequestParams = new HashMap<>();
         private Map<String, String> mRequestHeaders = new HashMap<>();
         private byte[] mBody;
+        private RequestBody mRequestBody;
         private boolean mFillExtraHeader;
+        private boolean mCoalesce;
+        private ModelPriority mPriority;
+        private BackoffRetryPolicy mRetryPolicy;
+        private Boolean mIdempotent;
+        private boolean mHedge;
+        private long mHedgeDelayMs;
+        private long mDeadlineMs;
+        private long mTimeBudgetMs;
+        private boolean mStreaming;
+        private ModelProgressListener mProgressListener;
+        private Executor mProgressExecutor;
+        private long mProgressIntervalMs = ProgressReporter.DEFAULT_MIN_INTERVAL_MS;
+        private float mProgressStep = ProgressReporter.DEFAULT_MIN_STEP;
+        private ContentEncoding mBodyEncoding;
+        private CachePolicy mCachePolicy;
+        private boolean mCacheable;
+        private int mMinCompressSize = DEFAULT_MIN_COMPRESS_SIZE;
 
 
         public Request seqId(int seqId) {
@@ -101,6 +126,56 @@ public abstract class AbstractModel<
             return this;
         }
 
+        /**
+         * Written to the connection on the network thread, takes precedence over {@link #body(byte[])}.
+         */
+        public Request requestBody(RequestBody body) {
+            mRequestBody = body;
+            return this;
+        }
+
+        public Request coalesce(boolean coalesce) {
+            mCoalesce = coalesce;
+            return this;
+        }
+
+        public Request priority(ModelPriority priority) {
+            mPriority = priority;
+            return this;
+        }
+
+        public Request retryPolicy(BackoffRetryPolicy policy) {
+            mRetryPolicy = policy;
+            return this;
+        }
+
+        public Request idempotent(boolean idempotent) {
+            mIdempotent = idempotent;
+            return this;
+        }
+
+        public Request hedge(boolean hedge, long delayMs) {
+            mHedge = hedge;
+            mHedgeDelayMs = delayMs;
+            return this;
+        }
+
+        public Request compressBody(ContentEncoding encoding, int minSize) {
+            mBodyEncoding = encoding;
+            mMinCompressSize = minSize;
+            return this;
+        }
+
+        public Request cachePolicy(CachePolicy policy) {
+            mCachePolicy = policy;
+            return this;
+        }
+
+        public Request cacheable(boolean cacheable) {
+            mCacheable = cacheable;
+            return this;
+        }
+
         public int getSeqId() {
             return mSeqId;
         }
@@ -128,6 +203,127 @@ public abstract class AbstractModel<
         public byte[] getBody() {
             return mBody;
         }
+
+        public RequestBody getRequestBody() {
+            return mRequestBody;
+        }
+
+        public boolean isCoalesce() {
+            return mCoalesce;
+        }
+
+        public ModelPriority getPriority() {
+            return mPriority != null ? mPriority : ModelPriority.NORMAL;
+        }
+
+        public boolean isPrioritySet() {
+            return mPriority != null;
+        }
+
+        /**
+         * @return null to use the retry policy of the client.
+         */
+        public BackoffRetryPolicy getRetryPolicy() {
+            return mRetryPolicy;
+        }
+
+        public boolean isIdempotent() {
+            return mIdempotent != null ? mIdempotent : mRequestMethod.isIdempotent();
+        }
+
+        public Request deadline(long deadlineMs) {
+            mDeadlineMs = deadlineMs;
+            return this;
+        }
+
+        public Request timeBudget(long timeBudgetMs) {
+            mTimeBudgetMs = timeBudgetMs;
+            return this;
+        }
+
+        public Request streaming(boolean streaming) {
+            mStreaming = streaming;
+            return this;
+        }
+
+        public boolean isStreaming() {
+            return mStreaming;
+        }
+
+        /**
+         * @param executor null to report on the main thread.
+         */
+        public Request progress(ModelProgressListener listener, Executor executor) {
+            mProgressListener = listener;
+            mProgressExecutor = executor;
+            return this;
+        }
+
+        public Request progressThrottle(long minIntervalMs, float minStep) {
+            mProgressIntervalMs = minIntervalMs;
+            mProgressStep = minStep;
+            return this;
+        }
+
+        public ModelProgressListener getProgressListener() {
+            return mProgressListener;
+        }
+
+        public ProgressReporter createProgressReporter(int seqId) {
+            if (mProgressListener == null) {
+                return null;
+            }
+
+            return new ProgressReporter(seqId, mProgressListener, mProgressExecutor,
+                    mProgressIntervalMs, mProgressStep);
+        }
+
+        /**
+         * @return {@link System#currentTimeMillis()} based deadline, or 0 if not set.
+         */
+        public long getDeadlineMs() {
+            return mDeadlineMs;
+        }
+
+        /**
+         * @return total time allowed from load to completion, or 0 if not set.
+         */
+        public long getTimeBudgetMs() {
+            return mTimeBudgetMs;
+        }
+
+        /**
+         * @return null to use the encoding the client sets for the host.
+         */
+        public ContentEncoding getBodyEncoding() {
+            return mBodyEncoding;
+        }
+
+        public int getMinCompressSize() {
+            return mMinCompressSize;
+        }
+
+        /**
+         * @return null to follow the HTTP cache headers.
+         */
+        public CachePolicy getCachePolicy() {
+            return mCachePolicy;
+        }
+
+        public boolean isCacheable() {
+            return mCacheable;
+        }
+
+        public boolean isHedge() {
+            return mHedge;
+        }
+
+        /**
+         * @return 0 to hedge after the observed p95 latency of the host.
+         */
+        public long getHedgeDelayMs() {
+            return mHedgeDelayMs;
+        }
     }
 
 
@@ -177,6 +373,12 @@ public abstract class AbstractModel<
         return (Impl) this;
     }
 
+    @SuppressWarnings("unchecked")
+    public Impl requestBody(RequestBody body) {
+        mRequest.requestBody(body);
+        return (Impl) this;
+    }
+
     @SuppressWarnings("unchecked")
     public Impl paramCheckNull(String key, Object obj) {
         mRequest.paramCheckNull(key, obj);
@@ -226,6 +428,115 @@ public abstract class AbstractModel<
         return (Impl) this;
     }
 
+    /**
+     * Share one network request with identical GET/HEAD requests already in flight,
+     * the single response is delivered to every one of them. Requests with a deadline
+     * or time budget are never shared.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl coalesce(boolean coalesce) {
+        mRequest.coalesce(coalesce);
+        return (Impl) this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Impl priority(ModelPriority priority) {
+        mRequest.priority(priority);
+        return (Impl) this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Impl retryPolicy(BackoffRetryPolicy policy) {
+        mRequest.retryPolicy(policy);
+        return (Impl) this;
+    }
+
+    /**
+     * Mark a POST or PATCH request as safe to repeat, so it is retried like a GET.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl idempotent(boolean idempotent) {
+        mRequest.idempotent(idempotent);
+        return (Impl) this;
+    }
+
+    /**
+     * Send a duplicate of this idempotent request when no response arrived after the
+     * host's observed p95 latency, the first response wins and the other is canceled.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl hedge(boolean hedge) {
+        mRequest.hedge(hedge, 0);
+        return (Impl) this;
+    }
+
+    /**
+     * Like {@link #hedge(boolean)}, but sends the duplicate after a fixed delay.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl hedge(long delayMs) {
+        mRequest.hedge(true, delayMs);
+        return (Impl) this;
+    }
+
+    /**
+     * Fail with {@link com.jungle.majorhttps.network.CommonError#DEADLINE_EXCEEDED} if the
+     * request, including its retries, has not completed at this point in time.
+     *
+     * @param deadlineMs {@link System#currentTimeMillis()} based.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl deadline(long deadlineMs) {
+        mRequest.deadline(deadlineMs);
+        return (Impl) this;
+    }
+
+    /**
+     * Like {@link #deadline(long)}, relative to the moment the model is loaded.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl timeBudget(long timeBudgetMs) {
+        mRequest.timeBudget(timeBudgetMs);
+        return (Impl) this;
+    }
+
+    /**
+     * Choose how the response cache is used, see {@link CachePolicy}.
+     *
+     * @param policy null to follow the HTTP cache headers.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl cachePolicy(CachePolicy policy) {
+        mRequest.cachePolicy(policy);
+        return (Impl) this;
+    }
+
+    /**
+     * Only GET responses are cached by default. Mark read-only POST queries cacheable,
+     * their cache key includes a hash of the body.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl cacheable(boolean cacheable) {
+        mRequest.cacheable(cacheable);
+        return (Impl) this;
+    }
+
+    /**
+     * Compress the request body with gzip or deflate, bodies below 1KB are sent as they are.
+     * {@link ContentEncoding#IDENTITY} turns off compression set for the host on the client.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl compressBody(ContentEncoding encoding) {
+        mRequest.compressBody(encoding, DEFAULT_MIN_COMPRESS_SIZE);
+        return (Impl) this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Impl compressBody(ContentEncoding encoding, int minSize) {
+        mRequest.compressBody(encoding, minSize);
+        return (Impl) this;
+    }
+
     @SuppressWarnings("unchecked")
     public Impl client(MajorHttpClient client) {
         mHttpClient = client;
@@ -256,6 +567,7 @@ public abstract class AbstractModel<
     }
 
     public int loadWithProgress(Context context) {
+        usePriorityIfNotSet(ModelPriority.HIGH);
         return MajorProgressLoadManager.getInstance().load(context, this, null);
     }
 
@@ -270,6 +582,7 @@ public abstract class AbstractModel<
     }
 
     public int loadWithProgress(Context context, String loadingText) {
+        usePriorityIfNotSet(ModelPriority.HIGH);
         return MajorProgressLoadManager.getInstance().load(context, this, loadingText);
     }
 
@@ -301,6 +614,16 @@ public abstract class AbstractModel<
         return loadWithProgress(context, loadingText);
     }
 
+    /**
+     * The user is waiting in front of a loading dialog, so it should not queue behind
+     * background traffic unless a priority was chosen explicitly.
+     */
+    protected void usePriorityIfNotSet(ModelPriority priority) {
+        if (!mRequest.isPrioritySet()) {
+            mRequest.priority(priority);
+        }
+    }
+
     public void cancel() {
         getHttpClient().cancelBizModel(mRequest.getSeqId());
     }
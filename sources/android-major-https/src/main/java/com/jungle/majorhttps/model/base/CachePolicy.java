@@ -0,0 +1,53 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.model.base;
+
+/**
+ * How a model uses the response cache. Without a policy the HTTP cache headers decide,
+ * as in plain Volley.
+ *
+ * With a policy, responses are cached even if the server marks them `no-cache`,
+ * only `no-store` keeps them out.
+ */
+public enum CachePolicy {
+
+    /**
+     * Always ask the network, the response still updates the cache.
+     */
+    NETWORK_ONLY,
+    /**
+     * Deliver a cached response of any age, the network is only asked on a miss.
+     */
+    CACHE_FIRST,
+    /**
+     * Deliver a cached response first and the network response after it,
+     * the listener succeeds twice on a hit.
+     */
+    CACHE_THEN_NETWORK,
+    /**
+     * Deliver a cached response of any age. If it is expired, refresh the cache
+     * in the background for the next load.
+     */
+    STALE_WHILE_REVALIDATE,
+    /**
+     * Deliver a cached response of any age, or fail with
+     * {@link com.jungle.majorhttps.network.CommonError#CACHE_MISS}.
+     */
+    CACHE_ONLY
+}
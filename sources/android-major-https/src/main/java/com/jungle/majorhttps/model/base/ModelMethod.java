@@ -32,6 +32,22 @@ public enum ModelMethod {
     PATCH;
 
 
+    /**
+     * Safe methods only read data, so identical in-flight requests can share one response.
+     */
+    public boolean isSafe() {
+        return this == GET || this == HEAD;
+    }
+
+    /**
+     * Repeating an idempotent request has the same effect as sending it once,
+     * so it can be retried after a failure.
+     */
+    public boolean isIdempotent() {
+        return this != POST && this != PATCH;
+    }
+
+
     public int toVolleyMethod() {
         if (this == GET) {
             return Request.Method.GET;
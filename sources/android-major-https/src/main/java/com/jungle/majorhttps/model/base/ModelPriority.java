@@ -0,0 +1,58 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.model.base;
+
+import com.android.volley.Request;
+
+/**
+ * Scheduling lanes, from the most to the least urgent.
+ */
+public enum ModelPriority {
+
+    IMMEDIATE,
+    HIGH,
+    NORMAL,
+    LOW,
+    PREFETCH;
+
+
+    public Request.Priority toVolleyPriority() {
+        if (this == IMMEDIATE) {
+            return Request.Priority.IMMEDIATE;
+        } else if (this == HIGH) {
+            return Request.Priority.HIGH;
+        } else if (this == NORMAL) {
+            return Request.Priority.NORMAL;
+        }
+
+        return Request.Priority.LOW;
+    }
+
+    public static ModelPriority fromVolleyPriority(Request.Priority priority) {
+        if (priority == Request.Priority.IMMEDIATE) {
+            return IMMEDIATE;
+        } else if (priority == Request.Priority.HIGH) {
+            return HIGH;
+        } else if (priority == Request.Priority.LOW) {
+            return LOW;
+        }
+
+        return NORMAL;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.model.binary;
+
+import com.jungle.majorhttps.model.base.AbstractModel;
+import com.jungle.majorhttps.model.base.BaseModel;
+import com.jungle.majorhttps.model.listener.ModelProgressListener;
+import com.jungle.majorhttps.network.BackoffRetryPolicy;
+import com.jungle.majorhttps.request.upload.ChunkedUploadProtocol;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+/**
+ * Uploads a file in chunks over a few parallel connections, see {@link ChunkedUploadProtocol}.
+ *
+ * Every chunk is retried on its own. Confirmed chunks are saved in `<filePath>.upload.state`,
+ * so a failed upload, or one cut off by the end of the process, continues with the
+ * missing chunks on the next load of the same url and unchanged file.
+ */
+public class ChunkedUploadRequestModel extends
+        BaseModel<ChunkedUploadRequestModel, ChunkedUploadRequestModel.Request, String> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_PARALLELISM = 3;
+    public static final int DEFAULT_CHUNK_RETRIES = 5;
+
+
+    public static ChunkedUploadRequestModel newModel() {
+        return new ChunkedUploadRequestModel();
+    }
+
+
+    public static class Request extends AbstractModel.Request {
+
+        private String mFilePath;
+        private String mFileName;
+        private String mMimeType = "application/octet-stream";
+        private String mStateFilePath;
+        private int mChunkSize = DEFAULT_CHUNK_SIZE;
+        private int mParallelism = DEFAULT_PARALLELISM;
+        private ChunkedUploadProtocol mProtocol = ChunkedUploadProtocol.DEFAULT;
+
+        public Request filePath(String filePath) {
+            mFilePath = filePath;
+            return this;
+        }
+
+        public Request fileName(String fileName) {
+            mFileName = fileName;
+            return this;
+        }
+
+        public Request mimeType(String mimeType) {
+            mMimeType = mimeType;
+            return this;
+        }
+
+        public Request stateFilePath(String stateFilePath) {
+            mStateFilePath = stateFilePath;
+            return this;
+        }
+
+        public Request chunkSize(int chunkSize) {
+            mChunkSize = Math.max(1, chunkSize);
+            return this;
+        }
+
+        public Request parallelism(int parallelism) {
+            mParallelism = Math.max(1, parallelism);
+            return this;
+        }
+
+        public Request protocol(ChunkedUploadProtocol protocol) {
+            mProtocol = protocol != null ? protocol : ChunkedUploadProtocol.DEFAULT;
+            return this;
+        }
+
+        public String getFilePath() {
+            return mFilePath;
+        }
+
+        public String getFileName() {
+            if (mFileName == null && mFilePath != null) {
+                return new File(mFilePath).getName();
+            }
+
+            return mFileName;
+        }
+
+        public String getMimeType() {
+            return mMimeType;
+        }
+
+        public String getStateFilePath() {
+            if (mStateFilePath == null && mFilePath != null) {
+                return mFilePath + ".upload.state";
+            }
+
+            return mStateFilePath;
+        }
+
+        public int getChunkSize() {
+            return mChunkSize;
+        }
+
+        public int getParallelism() {
+            return mParallelism;
+        }
+
+        public ChunkedUploadProtocol getProtocol() {
+            return mProtocol;
+        }
+    }
+
+
+    public ChunkedUploadRequestModel() {
+        super();
+        // Every call of the protocol may be repeated, chunks are retried more than usual.
+        idempotent(true);
+        retryPolicy(new BackoffRetryPolicy().maxRetries(DEFAULT_CHUNK_RETRIES));
+    }
+
+    public ChunkedUploadRequestModel filePath(String filePath) {
+        mRequest.filePath(filePath);
+        return this;
+    }
+
+    /**
+     * Name sent to the server, the name of the file by default.
+     */
+    public ChunkedUploadRequestModel fileName(String fileName) {
+        mRequest.fileName(fileName);
+        return this;
+    }
+
+    public ChunkedUploadRequestModel mimeType(String mimeType) {
+        mRequest.mimeType(mimeType);
+        return this;
+    }
+
+    /**
+     * Where the upload progress is saved, `<filePath>.upload.state` by default.
+     */
+    public ChunkedUploadRequestModel stateFilePath(String stateFilePath) {
+        mRequest.stateFilePath(stateFilePath);
+        return this;
+    }
+
+    public ChunkedUploadRequestModel chunkSize(int chunkSize) {
+        mRequest.chunkSize(chunkSize);
+        return this;
+    }
+
+    /**
+     * How many chunks are uploaded at the same time, 3 by default.
+     */
+    public ChunkedUploadRequestModel parallelism(int parallelism) {
+        mRequest.parallelism(parallelism);
+        return this;
+    }
+
+    public ChunkedUploadRequestModel protocol(ChunkedUploadProtocol protocol) {
+        mRequest.protocol(protocol);
+        return this;
+    }
+
+    /**
+     * Reports uploaded bytes of confirmed chunks on the main thread,
+     * at most every 100ms and 1%.
+     */
+    public ChunkedUploadRequestModel progress(ModelProgressListener listener) {
+        return progress(listener, null);
+    }
+
+    public ChunkedUploadRequestModel progress(ModelProgressListener listener, Executor executor) {
+        mRequest.progress(listener, executor);
+        return this;
+    }
+
+    public ChunkedUploadRequestModel progressThrottle(long minIntervalMs, float minStep) {
+        mRequest.progressThrottle(minIntervalMs, minStep);
+        return this;
+    }
+
+    @Override
+    protected Request createRequest() {
+        return new Request();
+    }
+
+    @Override
+    public int loadInternal() {
+        // A second attempt of a chunk only competes with the other chunks.
+        mRequest.hedge(false, 0);
+        return getHttpClient().loadChunkedUploadModel(mRequest, this);
+    }
+}
@@ -20,7 +20,14 @@ package com.jungle.majorhttps.model.binary;
 
 import com.jungle.majorhttps.model.base.AbstractModel;
 import com.jungle.majorhttps.model.base.BaseModel;
+import com.jungle.majorhttps.model.listener.ModelProgressListener;
 
+import java.util.concurrent.Executor;
+
+/**
+ * Downloads straight to {@link #filePath(String)}. The body is streamed to a temp file
+ * in the same directory and moved over the target only when complete.
+ */
 public class DownloadFileRequestModel
         extends BaseModel<DownloadFileRequestModel, DownloadFileRequestModel.Request, String> {
 
@@ -32,15 +39,35 @@ public class DownloadFileRequestModel
     public static class Request extends AbstractModel.Request {
 
         private String mFilePath;
+        private boolean mResumable;
+        private int mSegmentCount = 1;
 
         public Request filePath(String filePath) {
             mFilePath = filePath;
             return this;
         }
 
+        public Request resumable(boolean resumable) {
+            mResumable = resumable;
+            return this;
+        }
+
+        public Request segments(int segmentCount) {
+            mSegmentCount = Math.max(1, segmentCount);
+            return this;
+        }
+
         public String getFilePath() {
             return mFilePath;
         }
+
+        public boolean isResumable() {
+            return mResumable || mSegmentCount > 1;
+        }
+
+        public int getSegmentCount() {
+            return mSegmentCount;
+        }
     }
 
     public DownloadFileRequestModel filePath(String filePath) {
@@ -48,6 +75,43 @@ public class DownloadFileRequestModel
         return this;
     }
 
+    /**
+     * Keep partial data in `<filePath>.download` and continue it with a Range request,
+     * on a retry or a later load of the same url and file, as long as the ETag or
+     * Last-Modified of the file is unchanged.
+     */
+    public DownloadFileRequestModel resumable(boolean resumable) {
+        mRequest.resumable(resumable);
+        return this;
+    }
+
+    /**
+     * Download up to `segmentCount` byte ranges over parallel connections into a
+     * preallocated file. Implies {@link #resumable(boolean)}, each segment resumes on its own.
+     * Falls back to one connection if the server does not accept ranges.
+     */
+    public DownloadFileRequestModel segments(int segmentCount) {
+        mRequest.segments(segmentCount);
+        return this;
+    }
+
+    /**
+     * Reports transferred bytes on the main thread, at most every 100ms and 1%.
+     */
+    public DownloadFileRequestModel progress(ModelProgressListener listener) {
+        return progress(listener, null);
+    }
+
+    public DownloadFileRequestModel progress(ModelProgressListener listener, Executor executor) {
+        mRequest.progress(listener, executor);
+        return this;
+    }
+
+    public DownloadFileRequestModel progressThrottle(long minIntervalMs, float minStep) {
+        mRequest.progressThrottle(minIntervalMs, minStep);
+        return this;
+    }
+
     @Override
     protected Request createRequest() {
         return new Request();
@@ -55,6 +119,11 @@ public class DownloadFileRequestModel
 
     @Override
     public int loadInternal() {
+        if (mRequest.isResumable()) {
+            // Attempts of a resumable download share the partial file.
+            mRequest.hedge(false, 0);
+        }
+
         return getHttpClient().loadDownloadFileModel(mRequest, this);
     }
 }
@@ -20,6 +20,9 @@ package com.jungle.majorhttps.model.binary;
 
 import com.jungle.majorhttps.model.base.AbstractModel;
 import com.jungle.majorhttps.model.base.BaseModel;
+import com.jungle.majorhttps.model.listener.ModelProgressListener;
+
+import java.util.concurrent.Executor;
 
 public class DownloadRequestModel
         extends BaseModel<DownloadRequestModel, AbstractModel.Request, byte[]> {
@@ -29,6 +32,23 @@ public class DownloadRequestModel
     }
 
 
+    /**
+     * Reports transferred bytes on the main thread, at most every 100ms and 1%.
+     */
+    public DownloadRequestModel progress(ModelProgressListener listener) {
+        return progress(listener, null);
+    }
+
+    public DownloadRequestModel progress(ModelProgressListener listener, Executor executor) {
+        mRequest.progress(listener, executor);
+        return this;
+    }
+
+    public DownloadRequestModel progressThrottle(long minIntervalMs, float minStep) {
+        mRequest.progressThrottle(minIntervalMs, minStep);
+        return this;
+    }
+
     @Override
     public int loadInternal() {
         return getHttpClient().loadDownloadModel(mRequest, this);
@@ -21,6 +21,7 @@ package com.jungle.majorhttps.model.binary;
 import com.jungle.majorhttps.model.base.AbstractModel;
 import com.jungle.majorhttps.model.base.BaseModel;
 import com.jungle.majorhttps.model.base.ModelMethod;
+import com.jungle.majorhttps.model.listener.ModelProgressListener;
 import com.jungle.majorhttps.request.upload.BinaryMultipartFormItem;
 import com.jungle.majorhttps.request.upload.FileUploadFormItem;
 import com.jungle.majorhttps.request.upload.MultipartFormItem;
@@ -28,6 +29,7 @@ import com.jungle.majorhttps.request.upload.MultipartFormItem;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class UploadRequestModel
         extends BaseModel<UploadRequestModel, UploadRequestModel.Request, String> {
@@ -78,6 +80,23 @@ public class UploadRequestModel
         return addFormItem(new BinaryMultipartFormItem(fileName, content));
     }
 
+    /**
+     * Reports transferred bytes on the main thread, at most every 100ms and 1%.
+     */
+    public UploadRequestModel progress(ModelProgressListener listener) {
+        return progress(listener, null);
+    }
+
+    public UploadRequestModel progress(ModelProgressListener listener, Executor executor) {
+        mRequest.progress(listener, executor);
+        return this;
+    }
+
+    public UploadRequestModel progressThrottle(long minIntervalMs, float minStep) {
+        mRequest.progressThrottle(minIntervalMs, minStep);
+        return this;
+    }
+
     @Override
     protected Request createRequest() {
         return new Request();
@@ -19,15 +19,120 @@
 package com.jungle.majorhttps.model.text;
 
 import com.jungle.majorhttps.model.base.AbstractModel;
+import com.jungle.majorhttps.model.base.ModelTransformer;
 import com.jungle.majorhttps.model.listener.ModelRequestListener;
+import com.jungle.majorhttps.network.CommonError;
+import com.jungle.majorhttps.request.base.BizParseError;
+import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.base.ResponseParser;
+import com.jungle.majorhttps.request.base.StreamingResponseParser;
+
+import java.io.IOException;
+import java.io.Reader;
 
 public abstract class AbstractTextRequestModel<Impl extends AbstractTextRequestModel, Data>
         extends AbstractModel<Impl, AbstractModel.Request, Data>
-        implements ModelRequestListener<String> {
+        implements ModelRequestListener<Data> {
+
+    private static class TransformingParser<T> implements StreamingResponseParser<T> {
+
+        private ResponseParser<T> mParser;
+        private ModelTransformer<T> mTransformer;
+
+
+        TransformingParser(ResponseParser<T> parser, ModelTransformer<T> transformer) {
+            mParser = parser;
+            mTransformer = transformer;
+        }
+
+        @Override
+        public T parse(String content) throws BizParseError {
+            return transform(mParser.parse(content));
+        }
+
+        @Override
+        public T parse(Reader reader) throws BizParseError {
+            if (mParser instanceof StreamingResponseParser) {
+                return transform(((StreamingResponseParser<T>) mParser).parse(reader));
+            }
+
+            return parse(readFully(reader));
+        }
+
+        private T transform(T data) throws BizParseError {
+            try {
+                return mTransformer.transform(data);
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new BizParseError(CommonError.PARSE_BODY_ERROR, e);
+            }
+        }
+
+        @Override
+        public String getKey() {
+            // Transformers are per model, their results are never shared.
+            return null;
+        }
+    }
+
+
+    private static String readFully(Reader reader) throws BizParseError {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[1024];
+        try {
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, count);
+            }
+        } catch (IOException e) {
+            throw new BizParseError(CommonError.PARSE_BODY_ERROR, e);
+        }
+
+        return builder.toString();
+    }
+
+
+    private ModelTransformer<Data> mTransformer;
+
+
+    /**
+     * Parse the response while it is read from the socket, instead of buffering the
+     * whole body first. Bounds memory for large responses, which are then not cached.
+     * Only has an effect for models with a streaming parser, like {@link JsonRequestModel}.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl stream(boolean streaming) {
+        mRequest.streaming(streaming);
+        return (Impl) this;
+    }
+
+    /**
+     * Post-process the parsed data on the network dispatcher thread.
+     */
+    @SuppressWarnings("unchecked")
+    public Impl transform(ModelTransformer<Data> transformer) {
+        mTransformer = transformer;
+        return (Impl) this;
+    }
+
+    /**
+     * The parser runs on the network dispatcher thread, it must not touch the model.
+     */
+    protected abstract ResponseParser<Data> createParser();
 
     @Override
     public int loadInternal() {
-        return getHttpClient().loadTextModel(mRequest, this);
+        ResponseParser<Data> parser = createParser();
+        if (mTransformer != null) {
+            parser = new TransformingParser<>(parser, mTransformer);
+        }
+
+        return getHttpClient().loadTextModel(mRequest, parser, this);
+    }
+
+    @Override
+    public void onSuccess(int seqId, NetworkResp networkResp, Data response) {
+        doSuccess(networkResp, response);
     }
 
     @Override
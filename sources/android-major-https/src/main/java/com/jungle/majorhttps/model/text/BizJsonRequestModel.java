@@ -19,11 +19,13 @@
 package com.jungle.majorhttps.model.text;
 
 import android.text.TextUtils;
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import com.jungle.majorhttps.model.base.ModelMethod;
-import com.jungle.majorhttps.network.CommonError;
-import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.base.BizParseError;
+import com.jungle.majorhttps.request.base.ResponseParser;
+import com.jungle.majorhttps.request.base.StreamingResponseParser;
+
+import java.io.Reader;
+import java.io.StringReader;
 
 /**
  * Using json data as follows:
@@ -36,6 +38,7 @@ import com.jungle.majorhttps.request.base.NetworkResp;
  *     }
  * }
  *
+ * Field names and the success code can be changed with {@link #envelope(JsonEnvelope)}.
  */
 public class BizJsonRequestModel<T> extends JsonRequestModel<T> {
 
@@ -44,39 +47,45 @@ public class BizJsonRequestModel<T> extends JsonRequestModel<T> {
     }
 
 
+    private JsonEnvelope mEnvelope = JsonEnvelope.DEFAULT;
+
+
     public BizJsonRequestModel(Class<T> clazz) {
         super(clazz);
         method(ModelMethod.POST);
     }
 
+    /**
+     * Use other field names or another success code for the envelope.
+     */
+    public BizJsonRequestModel<T> envelope(JsonEnvelope envelope) {
+        mEnvelope = envelope != null ? envelope : JsonEnvelope.DEFAULT;
+        return this;
+    }
+
     @Override
-    public void onSuccess(int seqId, NetworkResp networkResp, String response) {
-        if (TextUtils.isEmpty(response)) {
-            doSuccess(networkResp, null);
-            return;
-        }
+    protected ResponseParser<T> createParser() {
+        final Class<T> clazz = mResponseDataClazz;
+        final JsonEnvelope envelope = mEnvelope;
+        return new StreamingResponseParser<T>() {
+            @Override
+            public T parse(String content) throws BizParseError {
+                if (TextUtils.isEmpty(content)) {
+                    return null;
+                }
+
+                return envelope.decode(new StringReader(content), clazz);
+            }
 
-        JSONObject json = null;
-        try {
-            json = JSON.parseObject(response);
-            int retCode = json.getIntValue("ret");
-            if (retCode != CommonError.SUCCESS) {
-                String message = json.getString("msg");
-                doError(CommonError.FAILED, message);
-                return;
+            @Override
+            public T parse(Reader reader) throws BizParseError {
+                return envelope.decode(reader, clazz);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            doError(CommonError.PARSE_BODY_ERROR, e.getMessage());
-            return;
-        }
 
-        try {
-            T data = json.getObject("data", mResponseDataClazz);
-            doSuccess(networkResp, data);
-        } catch (Exception e) {
-            e.printStackTrace();
-            doError(CommonError.PARSE_BODY_ERROR, e.getMessage());
-        }
+            @Override
+            public String getKey() {
+                return "biz-json " + envelope.getKey() + " " + clazz.getName();
+            }
+        };
     }
 }
@@ -21,7 +21,8 @@ package com.jungle.majorhttps.model.text;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.jungle.majorhttps.network.CommonError;
-import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.base.BizParseError;
+import com.jungle.majorhttps.request.base.ResponseParser;
 
 public class JsonArrayRequestModel
         extends AbstractTextRequestModel<JsonArrayRequestModel, JSONArray> {
@@ -31,17 +32,27 @@ public class JsonArrayRequestModel
     }
 
 
+    private static final ResponseParser<JSONArray> JSON_ARRAY_PARSER =
+            new ResponseParser<JSONArray>() {
+                @Override
+                public JSONArray parse(String content) throws BizParseError {
+                    try {
+                        return JSON.parseArray(content);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        throw new BizParseError(CommonError.PARSE_JSON_ARRAY_FAILED, e);
+                    }
+                }
+
+                @Override
+                public String getKey() {
+                    return "json-array";
+                }
+            };
+
+
     @Override
-    public void onSuccess(int seqId, NetworkResp networkResp, String response) {
-        JSONArray json;
-        try {
-            json = JSON.parseArray(response);
-        } catch (Exception e) {
-            e.printStackTrace();
-            doError(CommonError.PARSE_JSON_ARRAY_FAILED, e.getMessage());
-            return;
-        }
-
-        doSuccess(networkResp, json);
+    protected ResponseParser<JSONArray> createParser() {
+        return JSON_ARRAY_PARSER;
     }
 }
@@ -0,0 +1,124 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.model.text;
+
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.util.TypeUtils;
+import com.jungle.majorhttps.network.CommonError;
+import com.jungle.majorhttps.request.base.BizParseError;
+
+import java.io.Reader;
+
+/**
+ * Field names of the envelope around the data of a {@link BizJsonRequestModel} response,
+ * and the decoder for it.
+ *
+ * The envelope is decoded in one pass with fastjson's JSONReader, the data field is bound
+ * to its target type directly instead of going through a JSONObject first. Only when the
+ * data comes before the code it is kept generic, and bound once the code says success.
+ */
+public class JsonEnvelope {
+
+    public static final JsonEnvelope DEFAULT = new JsonEnvelope("ret", "msg", "data");
+
+
+    private final String mRetField;
+    private final String mMsgField;
+    private final String mDataField;
+    private final int mSuccessCode;
+
+
+    public JsonEnvelope(String retField, String msgField, String dataField) {
+        this(retField, msgField, dataField, CommonError.SUCCESS);
+    }
+
+    public JsonEnvelope(String retField, String msgField, String dataField, int successCode) {
+        mRetField = retField;
+        mMsgField = msgField;
+        mDataField = dataField;
+        mSuccessCode = successCode;
+    }
+
+    /**
+     * @return the data, or null if the envelope has none.
+     * @throws BizParseError {@link CommonError#FAILED} with the message of the envelope if
+     *                       its code is not the success code, or
+     *                       {@link CommonError#PARSE_BODY_ERROR} if it is malformed.
+     */
+    public <T> T decode(Reader reader, Class<T> clazz) throws BizParseError {
+        int retCode = mSuccessCode;
+        boolean retRead = false;
+        String message = null;
+        T data = null;
+        Object rawData = null;
+
+        JSONReader jsonReader = new JSONReader(reader);
+        try {
+            jsonReader.startObject();
+            while (jsonReader.hasNext()) {
+                String key = jsonReader.readString();
+                if (mRetField.equals(key)) {
+                    Integer ret = jsonReader.readInteger();
+                    retCode = ret != null ? ret : mSuccessCode;
+                    retRead = true;
+                } else if (mMsgField.equals(key)) {
+                    message = jsonReader.readString();
+                } else if (mDataField.equals(key)) {
+                    if (retRead && retCode == mSuccessCode) {
+                        data = jsonReader.readObject(clazz);
+                    } else {
+                        // The data of an error envelope may not match `clazz` at all.
+                        rawData = jsonReader.readObject();
+                    }
+                } else {
+                    jsonReader.readObject();
+                }
+            }
+
+            jsonReader.endObject();
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new BizParseError(CommonError.PARSE_BODY_ERROR, e);
+        } finally {
+            jsonReader.close();
+        }
+
+        if (retCode != mSuccessCode) {
+            throw new BizParseError(CommonError.FAILED, message);
+        }
+
+        if (rawData != null) {
+            try {
+                data = TypeUtils.castToJavaBean(rawData, clazz);
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new BizParseError(CommonError.PARSE_BODY_ERROR, e);
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * @return identifies the layout, responses decoded alike can be shared.
+     */
+    public String getKey() {
+        return mRetField + '/' + mMsgField + '/' + mDataField + '/' + mSuccessCode;
+    }
+}
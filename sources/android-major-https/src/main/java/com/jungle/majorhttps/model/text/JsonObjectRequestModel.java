@@ -21,7 +21,8 @@ package com.jungle.majorhttps.model.text;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.jungle.majorhttps.network.CommonError;
-import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.base.BizParseError;
+import com.jungle.majorhttps.request.base.ResponseParser;
 
 public class JsonObjectRequestModel
         extends AbstractTextRequestModel<JsonObjectRequestModel, JSONObject> {
@@ -31,17 +32,27 @@ public class JsonObjectRequestModel
     }
 
 
+    private static final ResponseParser<JSONObject> JSON_OBJECT_PARSER =
+            new ResponseParser<JSONObject>() {
+                @Override
+                public JSONObject parse(String content) throws BizParseError {
+                    try {
+                        return JSON.parseObject(content);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        throw new BizParseError(CommonError.PARSE_JSON_OBJECT_FAILED, e);
+                    }
+                }
+
+                @Override
+                public String getKey() {
+                    return "json-object";
+                }
+            };
+
+
     @Override
-    public void onSuccess(int seqId, NetworkResp networkResp, String response) {
-        JSONObject json;
-        try {
-            json = JSON.parseObject(response);
-        } catch (Exception e) {
-            e.printStackTrace();
-            doError(CommonError.PARSE_JSON_OBJECT_FAILED, e.getMessage());
-            return;
-        }
-
-        doSuccess(networkResp, json);
+    protected ResponseParser<JSONObject> createParser() {
+        return JSON_OBJECT_PARSER;
     }
 }
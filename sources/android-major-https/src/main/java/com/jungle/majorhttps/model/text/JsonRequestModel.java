@@ -20,10 +20,15 @@ package com.jungle.majorhttps.model.text;
 
 import android.text.TextUtils;
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONReader;
 import com.jungle.majorhttps.network.CommonError;
-import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.base.BizParseError;
+import com.jungle.majorhttps.request.base.ResponseParser;
+import com.jungle.majorhttps.request.base.StreamingResponseParser;
+import com.jungle.majorhttps.request.text.JsonRequestBody;
 
-import java.io.UnsupportedEncodingException;
+import java.io.Reader;
+import java.util.HashMap;
 import java.util.Map;
 
 public class JsonRequestModel<T> extends AbstractTextRequestModel<JsonRequestModel<T>, T> {
@@ -44,29 +49,48 @@ public class JsonRequestModel<T> extends AbstractTextRequestModel<JsonRequestMod
     public int loadInternal() {
         Map<String, Object> params = mRequest.getRequestParams();
         if (!params.isEmpty()) {
-            try {
-                body(JSON.toJSONString(params).getBytes("utf-8"));
-            } catch (UnsupportedEncodingException e) {
-                e.printStackTrace();
-            }
+            // Serialized on the network thread, so snapshot the params now.
+            requestBody(new JsonRequestBody(new HashMap<>(params)));
         }
 
         return super.loadInternal();
     }
 
     @Override
-    public void onSuccess(int seqId, NetworkResp networkResp, String response) {
-        if (TextUtils.isEmpty(response)) {
-            doSuccess(networkResp, null);
-            return;
-        }
+    protected ResponseParser<T> createParser() {
+        final Class<T> clazz = mResponseDataClazz;
+        return new StreamingResponseParser<T>() {
+            @Override
+            public T parse(String content) throws BizParseError {
+                if (TextUtils.isEmpty(content)) {
+                    return null;
+                }
 
-        try {
-            T data = JSON.parseObject(response, mResponseDataClazz);
-            doSuccess(networkResp, data);
-        } catch (Exception e) {
-            e.printStackTrace();
-            doError(CommonError.PARSE_BODY_ERROR, e.getMessage());
-        }
+                try {
+                    return JSON.parseObject(content, clazz);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    throw new BizParseError(CommonError.PARSE_BODY_ERROR, e);
+                }
+            }
+
+            @Override
+            public T parse(Reader reader) throws BizParseError {
+                JSONReader jsonReader = new JSONReader(reader);
+                try {
+                    return jsonReader.readObject(clazz);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    throw new BizParseError(CommonError.PARSE_BODY_ERROR, e);
+                } finally {
+                    jsonReader.close();
+                }
+            }
+
+            @Override
+            public String getKey() {
+                return "json " + clazz.getName();
+            }
+        };
     }
 }
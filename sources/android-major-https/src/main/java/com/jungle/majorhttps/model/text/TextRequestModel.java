@@ -18,7 +18,7 @@
 
 package com.jungle.majorhttps.model.text;
 
-import com.jungle.majorhttps.request.base.NetworkResp;
+import com.jungle.majorhttps.request.base.ResponseParser;
 
 public class TextRequestModel extends AbstractTextRequestModel<TextRequestModel, String> {
 
@@ -27,8 +27,21 @@ public class TextRequestModel extends AbstractTextRequestModel<TextRequestModel,
     }
 
 
+    private static final ResponseParser<String> TEXT_PARSER = new ResponseParser<String>() {
+        @Override
+        public String parse(String content) {
+            return content;
+        }
+
+        @Override
+        public String getKey() {
+            return "text";
+        }
+    };
+
+
     @Override
-    public void onSuccess(int seqId, NetworkResp networkResp, String response) {
-        doSuccess(networkResp, response);
+    protected ResponseParser<String> createParser() {
+        return TEXT_PARSER;
     }
 }
@@ -0,0 +1,162 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Decides whether a failed attempt is retried and how long to wait before it.
+ *
+ * Backoff grows exponentially from `initialBackoffMs` and is capped at `maxBackoffMs`,
+ * `jitter` randomizes that fraction of it so clients do not retry in lockstep.
+ * A `Retry-After` header is honored, unless it asks to wait longer than `maxBackoffMs`.
+ *
+ * Requests that are not idempotent are only retried when the failure guarantees the
+ * server did not process them: {@link FailureType#CONNECT} and
+ * {@link FailureType#TOO_MANY_REQUESTS}.
+ */
+public class BackoffRetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 1;
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 500;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 10 * 1000;
+    public static final float DEFAULT_MULTIPLIER = 2.0f;
+    public static final float DEFAULT_JITTER = 0.5f;
+
+    public static final long NO_RETRY = -1;
+
+
+    public static BackoffRetryPolicy noRetry() {
+        return new BackoffRetryPolicy().maxRetries(0);
+    }
+
+
+    private static final Random sRandom = new Random();
+
+
+    private int mMaxRetries = DEFAULT_MAX_RETRIES;
+    private long mInitialBackoffMs = DEFAULT_INITIAL_BACKOFF_MS;
+    private long mMaxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+    private float mMultiplier = DEFAULT_MULTIPLIER;
+    private float mJitter = DEFAULT_JITTER;
+    private Set<FailureType> mRetryOn = EnumSet.of(
+            FailureType.TIMEOUT, FailureType.CONNECT, FailureType.NETWORK,
+            FailureType.SERVER, FailureType.TOO_MANY_REQUESTS);
+
+
+    public BackoffRetryPolicy maxRetries(int maxRetries) {
+        mMaxRetries = Math.max(0, maxRetries);
+        return this;
+    }
+
+    public BackoffRetryPolicy initialBackoffMs(long initialBackoffMs) {
+        mInitialBackoffMs = Math.max(0, initialBackoffMs);
+        return this;
+    }
+
+    public BackoffRetryPolicy maxBackoffMs(long maxBackoffMs) {
+        mMaxBackoffMs = Math.max(0, maxBackoffMs);
+        return this;
+    }
+
+    public BackoffRetryPolicy multiplier(float multiplier) {
+        mMultiplier = Math.max(1.0f, multiplier);
+        return this;
+    }
+
+    /**
+     * @param jitter Fraction of the backoff that is randomized, from 0 to 1.
+     */
+    public BackoffRetryPolicy jitter(float jitter) {
+        mJitter = Math.max(0, Math.min(1.0f, jitter));
+        return this;
+    }
+
+    public BackoffRetryPolicy retryOn(FailureType... types) {
+        mRetryOn = EnumSet.noneOf(FailureType.class);
+        for (FailureType type : types) {
+            mRetryOn.add(type);
+        }
+
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    /**
+     * @param retryCount Retries already made for this request.
+     * @param idempotent Whether repeating the request is harmless.
+     * @return milliseconds to wait before the next attempt, or {@link #NO_RETRY}.
+     */
+    public long getRetryDelayMs(int retryCount, boolean idempotent, VolleyError error) {
+        if (retryCount >= mMaxRetries) {
+            return NO_RETRY;
+        }
+
+        FailureType type = FailureType.fromError(error);
+        if (!mRetryOn.contains(type)) {
+            return NO_RETRY;
+        }
+
+        if (!idempotent
+                && type != FailureType.CONNECT
+                && type != FailureType.TOO_MANY_REQUESTS) {
+            return NO_RETRY;
+        }
+
+        double backoff = mInitialBackoffMs * Math.pow(mMultiplier, retryCount);
+        long delay = (long) Math.min(mMaxBackoffMs, backoff);
+        synchronized (sRandom) {
+            delay -= (long) (delay * mJitter * sRandom.nextFloat());
+        }
+
+        long retryAfter = parseRetryAfterMs(error.networkResponse);
+        if (retryAfter > mMaxBackoffMs) {
+            return NO_RETRY;
+        }
+
+        return Math.max(delay, retryAfter);
+    }
+
+    private static long parseRetryAfterMs(NetworkResponse response) {
+        if (response == null || response.headers == null) {
+            return 0;
+        }
+
+        String value = response.headers.get("Retry-After");
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            long date = HttpHeaderParser.parseDateAsEpoch(value);
+            return date > 0 ? Math.max(0, date - System.currentTimeMillis()) : 0;
+        }
+    }
+}
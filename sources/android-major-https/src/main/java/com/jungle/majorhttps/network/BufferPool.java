@@ -0,0 +1,134 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size-classed pool of byte arrays shared by request body serialization, multipart
+ * assembly and response reading.
+ *
+ * Buffers come in power-of-two classes from {@link #MIN_BUFFER_SIZE} to
+ * {@link #MAX_BUFFER_SIZE}. Larger requests are plain allocations and are never pooled.
+ * The pool drops released buffers once it holds more than its byte limit.
+ */
+public class BufferPool {
+
+    public static final int MIN_BUFFER_SIZE = 512;
+    public static final int MAX_BUFFER_SIZE = 256 * 1024;
+    public static final int DEFAULT_MAX_POOLED_BYTES = 1024 * 1024;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    private static final int CLASS_COUNT =
+            Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SHIFT + 1;
+
+    private static final BufferPool sDefaultPool = new BufferPool(DEFAULT_MAX_POOLED_BYTES);
+
+
+    public static BufferPool getDefault() {
+        return sDefaultPool;
+    }
+
+
+    private final ArrayDeque<byte[]>[] mClasses;
+    private final AtomicInteger mPooledBytes = new AtomicInteger();
+    private final int mMaxPooledBytes;
+
+
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxPooledBytes) {
+        mMaxPooledBytes = maxPooledBytes;
+        mClasses = new ArrayDeque[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; ++i) {
+            mClasses[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @return a buffer of at least `minSize` bytes. Its content is undefined.
+     */
+    public byte[] acquire(int minSize) {
+        if (minSize > MAX_BUFFER_SIZE) {
+            return new byte[minSize];
+        }
+
+        int sizeClass = classFor(minSize);
+        ArrayDeque<byte[]> buffers = mClasses[sizeClass];
+        byte[] buffer;
+        synchronized (buffers) {
+            buffer = buffers.pollLast();
+        }
+
+        if (buffer != null) {
+            mPooledBytes.addAndGet(-buffer.length);
+            return buffer;
+        }
+
+        return new byte[MIN_BUFFER_SIZE << sizeClass];
+    }
+
+    /**
+     * Returns a buffer taken from {@link #acquire(int)}. The caller must not touch it afterwards.
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        int length = buffer.length;
+        if (length < MIN_BUFFER_SIZE || length > MAX_BUFFER_SIZE || Integer.bitCount(length) != 1) {
+            return;
+        }
+
+        if (mPooledBytes.addAndGet(length) > mMaxPooledBytes) {
+            mPooledBytes.addAndGet(-length);
+            return;
+        }
+
+        ArrayDeque<byte[]> buffers =
+                mClasses[Integer.numberOfTrailingZeros(length) - MIN_SHIFT];
+        synchronized (buffers) {
+            buffers.addLast(buffer);
+        }
+    }
+
+    public int getPooledBytes() {
+        return mPooledBytes.get();
+    }
+
+    public void clear() {
+        for (ArrayDeque<byte[]> buffers : mClasses) {
+            synchronized (buffers) {
+                byte[] buffer;
+                while ((buffer = buffers.pollLast()) != null) {
+                    mPooledBytes.addAndGet(-buffer.length);
+                }
+            }
+        }
+    }
+
+    private static int classFor(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+}
@@ -19,6 +19,7 @@
 package com.jungle.majorhttps.network;
 
 import com.android.volley.VolleyError;
+import com.jungle.majorhttps.request.base.BizParseError;
 
 public class CommonError {
 
@@ -28,9 +29,29 @@ public class CommonError {
     public static final int REQUEST_QUEUE_NOT_INITIALIZED = -4002;
     public static final int PARSE_JSON_OBJECT_FAILED = -4003;
     public static final int PARSE_JSON_ARRAY_FAILED = -4004;
+    public static final int CIRCUIT_OPEN = -4005;
+    public static final int DEADLINE_EXCEEDED = -4006;
+    public static final int DOWNLOAD_CHANGED = -4007;
+    public static final int CACHE_MISS = -4008;
 
 
     public static int fromError(VolleyError error) {
+        if (error instanceof CircuitOpenError) {
+            return CIRCUIT_OPEN;
+        }
+
+        if (error instanceof DeadlineExceededError) {
+            return DEADLINE_EXCEEDED;
+        }
+
+        if (error instanceof CacheMissError) {
+            return CACHE_MISS;
+        }
+
+        if (error instanceof BizParseError) {
+            return ((BizParseError) error).mErrorCode;
+        }
+
         if (error != null && error.networkResponse != null) {
             return error.networkResponse.statusCode;
         }
@@ -0,0 +1,58 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import android.os.SystemClock;
+
+import com.android.volley.DefaultRetryPolicy;
+
+/**
+ * Volley retry policy whose socket timeout never exceeds the time left until a deadline.
+ *
+ * The timeout is read when the attempt actually starts, so time spent waiting
+ * in the queue is taken into account.
+ */
+public class DeadlineRetryPolicy extends DefaultRetryPolicy {
+
+    public static final long NO_DEADLINE = 0;
+
+
+    private final long mDeadline;
+
+
+    /**
+     * @param deadline {@link SystemClock#elapsedRealtime()} based, or {@link #NO_DEADLINE}.
+     */
+    public DeadlineRetryPolicy(int timeoutMs, int maxRetries, long deadline) {
+        super(timeoutMs, maxRetries, 1.0f);
+        mDeadline = deadline;
+    }
+
+    @Override
+    public int getCurrentTimeout() {
+        int timeoutMs = super.getCurrentTimeout();
+        if (mDeadline == NO_DEADLINE) {
+            return timeoutMs;
+        }
+
+        // Zero means no timeout at all for HttpURLConnection.
+        long remainingMs = mDeadline - SystemClock.elapsedRealtime();
+        return (int) Math.max(1, Math.min(timeoutMs, remainingMs));
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import java.util.ArrayDeque;
+import java.util.zip.Deflater;
+
+/**
+ * Reuses {@link Deflater}s, each of them holds a native zlib stream of about 256KB
+ * that is otherwise only freed by the finalizer.
+ */
+public class DeflaterPool {
+
+    public static final int DEFAULT_MAX_POOLED = 4;
+
+    private static final DeflaterPool sDefault = new DeflaterPool(DEFAULT_MAX_POOLED);
+
+
+    public static DeflaterPool getDefault() {
+        return sDefault;
+    }
+
+
+    private final int mMaxPooled;
+    private final ArrayDeque<Deflater> mRawDeflaters = new ArrayDeque<>();
+    private final ArrayDeque<Deflater> mZlibDeflaters = new ArrayDeque<>();
+
+
+    public DeflaterPool(int maxPooled) {
+        mMaxPooled = maxPooled;
+    }
+
+    /**
+     * @param nowrap true for raw deflate data, as inside gzip, false for the zlib format.
+     */
+    public Deflater acquire(boolean nowrap) {
+        Deflater deflater;
+        synchronized (this) {
+            deflater = (nowrap ? mRawDeflaters : mZlibDeflaters).poll();
+        }
+
+        return deflater != null
+                ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+    }
+
+    public void release(Deflater deflater, boolean nowrap) {
+        if (deflater == null) {
+            return;
+        }
+
+        deflater.reset();
+        synchronized (this) {
+            ArrayDeque<Deflater> pool = nowrap ? mRawDeflaters : mZlibDeflaters;
+            if (pool.size() < mMaxPooled) {
+                pool.offer(deflater);
+                return;
+            }
+        }
+
+        deflater.end();
+    }
+}
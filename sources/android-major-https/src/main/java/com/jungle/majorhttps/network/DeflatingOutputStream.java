@@ -0,0 +1,147 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses into `out` as gzip or deflate with a pooled {@link Deflater} and buffer.
+ * {@link #finish()} writes the end of the stream and returns both to their pools,
+ * it does not close `out`.
+ */
+public class DeflatingOutputStream extends FilterOutputStream {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+
+    private final boolean mGzip;
+    private final CRC32 mCrc;
+    private Deflater mDeflater;
+    private byte[] mBuffer;
+
+
+    public DeflatingOutputStream(OutputStream out, ContentEncoding encoding) throws IOException {
+        super(out);
+
+        if (encoding != ContentEncoding.GZIP && encoding != ContentEncoding.DEFLATE) {
+            throw new IllegalArgumentException("Cannot compress as " + encoding);
+        }
+
+        mGzip = encoding == ContentEncoding.GZIP;
+        mCrc = mGzip ? new CRC32() : null;
+        mDeflater = DeflaterPool.getDefault().acquire(mGzip);
+        mBuffer = BufferPool.getDefault().acquire(BUFFER_SIZE);
+
+        if (mGzip) {
+            out.write(GZIP_HEADER);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (mDeflater == null) {
+            throw new IOException("Stream finished.");
+        }
+
+        if (len == 0) {
+            return;
+        }
+
+        if (mCrc != null) {
+            mCrc.update(b, off, len);
+        }
+
+        mDeflater.setInput(b, off, len);
+        while (!mDeflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    public void finish() throws IOException {
+        if (mDeflater == null) {
+            return;
+        }
+
+        try {
+            mDeflater.finish();
+            while (!mDeflater.finished()) {
+                deflate();
+            }
+
+            if (mGzip) {
+                writeIntLE(mCrc.getValue());
+                writeIntLE(mDeflater.getBytesRead());
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Returns the deflater and buffer without finishing, after a failed write.
+     */
+    public void release() {
+        if (mDeflater != null) {
+            DeflaterPool.getDefault().release(mDeflater, mGzip);
+            BufferPool.getDefault().release(mBuffer);
+            mDeflater = null;
+            mBuffer = null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void deflate() throws IOException {
+        int count = mDeflater.deflate(mBuffer, 0, mBuffer.length);
+        if (count > 0) {
+            out.write(mBuffer, 0, count);
+        }
+    }
+
+    private void writeIntLE(long value) throws IOException {
+        out.write((int) (value & 0xff));
+        out.write((int) ((value >> 8) & 0xff));
+        out.write((int) ((value >> 16) & 0xff));
+        out.write((int) ((value >> 24) & 0xff));
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+
+public enum FailureType {
+
+    /**
+     * The request was sent, but no response arrived in time.
+     */
+    TIMEOUT,
+
+    /**
+     * The connection could not be established, so the request never reached the server.
+     */
+    CONNECT,
+
+    /**
+     * The connection broke after it was established, the server may have seen the request.
+     */
+    NETWORK,
+
+    /**
+     * HTTP 5xx.
+     */
+    SERVER,
+
+    /**
+     * HTTP 429.
+     */
+    TOO_MANY_REQUESTS,
+
+    /**
+     * HTTP 4xx other than 429.
+     */
+    CLIENT,
+
+    /**
+     * Everything else, such as parse errors.
+     */
+    OTHER;
+
+
+    public static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+
+    public static FailureType fromError(VolleyError error) {
+        if (error instanceof TimeoutError) {
+            return TIMEOUT;
+        }
+
+        NetworkResponse response = error != null ? error.networkResponse : null;
+        if (response != null) {
+            if (response.statusCode == STATUS_TOO_MANY_REQUESTS) {
+                return TOO_MANY_REQUESTS;
+            } else if (response.statusCode >= 500) {
+                return SERVER;
+            } else if (response.statusCode >= 400) {
+                return CLIENT;
+            }
+        }
+
+        if (error instanceof NoConnectionError) {
+            Throwable cause = error.getCause();
+            if (cause instanceof ConnectException
+                    || cause instanceof UnknownHostException
+                    || cause instanceof NoRouteToHostException) {
+                return CONNECT;
+            }
+
+            return NETWORK;
+        }
+
+        if (error instanceof NetworkError) {
+            return NETWORK;
+        }
+
+        return OTHER;
+    }
+}
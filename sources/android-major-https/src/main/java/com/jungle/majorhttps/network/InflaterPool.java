@@ -0,0 +1,76 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import java.util.ArrayDeque;
+import java.util.zip.Inflater;
+
+/**
+ * Reuses {@link Inflater}s across responses, like {@link DeflaterPool} for request bodies.
+ */
+public class InflaterPool {
+
+    public static final int DEFAULT_MAX_POOLED = 4;
+
+    private static final InflaterPool sDefault = new InflaterPool(DEFAULT_MAX_POOLED);
+
+
+    public static InflaterPool getDefault() {
+        return sDefault;
+    }
+
+
+    private final int mMaxPooled;
+    private final ArrayDeque<Inflater> mRawInflaters = new ArrayDeque<>();
+    private final ArrayDeque<Inflater> mZlibInflaters = new ArrayDeque<>();
+
+
+    public InflaterPool(int maxPooled) {
+        mMaxPooled = maxPooled;
+    }
+
+    /**
+     * @param nowrap true for raw deflate data, as inside gzip, false for the zlib format.
+     */
+    public Inflater acquire(boolean nowrap) {
+        Inflater inflater;
+        synchronized (this) {
+            inflater = (nowrap ? mRawInflaters : mZlibInflaters).poll();
+        }
+
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    public void release(Inflater inflater, boolean nowrap) {
+        if (inflater == null) {
+            return;
+        }
+
+        inflater.reset();
+        synchronized (this) {
+            ArrayDeque<Inflater> pool = nowrap ? mRawInflaters : mZlibInflaters;
+            if (pool.size() < mMaxPooled) {
+                pool.offer(inflater);
+                return;
+            }
+        }
+
+        inflater.end();
+    }
+}
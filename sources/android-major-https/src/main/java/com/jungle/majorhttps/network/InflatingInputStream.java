@@ -0,0 +1,285 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes a gzip or deflate response body while it is read, with a pooled {@link Inflater}
+ * and buffer. Both go back to their pools on {@link #close()}.
+ *
+ * Deflate is meant to be zlib wrapped, but some servers send raw deflate data,
+ * so the format is detected from the first bytes.
+ */
+public class InflatingInputStream extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+
+    private final boolean mGzip;
+    private final CRC32 mCrc;
+    private Inflater mInflater;
+    private boolean mNowrap;
+    private byte[] mBuffer;
+    private int mPosition;
+    private int mLimit;
+    private boolean mStarted;
+    private boolean mEof;
+
+
+    public InflatingInputStream(InputStream in, ContentEncoding encoding) {
+        super(in);
+
+        if (encoding != ContentEncoding.GZIP && encoding != ContentEncoding.DEFLATE) {
+            throw new IllegalArgumentException("Cannot decode " + encoding);
+        }
+
+        mGzip = encoding == ContentEncoding.GZIP;
+        mCrc = mGzip ? new CRC32() : null;
+        mBuffer = BufferPool.getDefault().acquire(BUFFER_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (mBuffer == null) {
+            throw new IOException("Stream closed.");
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!mStarted) {
+            mStarted = true;
+            mEof = !start();
+        }
+
+        if (mEof) {
+            return -1;
+        }
+
+        try {
+            while (true) {
+                int count = mInflater.inflate(b, off, len);
+                if (count > 0) {
+                    if (mCrc != null) {
+                        mCrc.update(b, off, count);
+                    }
+
+                    return count;
+                }
+
+                if (mInflater.finished()) {
+                    mPosition = mLimit - mInflater.getRemaining();
+                    if (mGzip) {
+                        readGzipTrailer();
+                    }
+
+                    mEof = true;
+                    return -1;
+                }
+
+                if (mInflater.needsDictionary()) {
+                    throw new ZipException("Deflate dictionaries are not supported.");
+                }
+
+                if (mInflater.needsInput()) {
+                    // Bytes left behind by the gzip header go in first.
+                    if (mPosition >= mLimit && !fill()) {
+                        throw new EOFException("Unexpected end of compressed body.");
+                    }
+
+                    mInflater.setInput(mBuffer, mPosition, mLimit - mPosition);
+                    mPosition = mLimit;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return mEof ? 0 : 1;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] skipBuffer = new byte[(int) Math.min(n, 2048)];
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(skipBuffer, 0, (int) Math.min(n - skipped, skipBuffer.length));
+            if (count == -1) {
+                break;
+            }
+
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mBuffer == null) {
+            return;
+        }
+
+        InflaterPool.getDefault().release(mInflater, mNowrap);
+        BufferPool.getDefault().release(mBuffer);
+        mInflater = null;
+        mBuffer = null;
+        in.close();
+    }
+
+    /**
+     * @return false for an empty body.
+     */
+    private boolean start() throws IOException {
+        if (!fill()) {
+            return false;
+        }
+
+        if (mGzip) {
+            readGzipHeader();
+            mNowrap = true;
+        } else {
+            mNowrap = !isZlibHeader();
+        }
+
+        mInflater = InflaterPool.getDefault().acquire(mNowrap);
+        return true;
+    }
+
+    private boolean isZlibHeader() throws IOException {
+        if (mLimit - mPosition < 2) {
+            int next = in.read();
+            if (next == -1) {
+                return false;
+            }
+
+            mBuffer[mLimit++] = (byte) next;
+        }
+
+        int cmf = mBuffer[mPosition] & 0xff;
+        int flg = mBuffer[mPosition + 1] & 0xff;
+        return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    private void readGzipHeader() throws IOException {
+        if (readUShort() != GZIP_MAGIC) {
+            throw new ZipException("Not in gzip format.");
+        }
+
+        if (readUByte() != 8) {
+            throw new ZipException("Unsupported gzip compression method.");
+        }
+
+        int flags = readUByte();
+        // MTIME, XFL and OS.
+        skipBytes(6);
+
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(readUShort());
+        }
+
+        if ((flags & FNAME) != 0) {
+            while (readUByte() != 0) {
+                // Skip the file name.
+            }
+        }
+
+        if ((flags & FCOMMENT) != 0) {
+            while (readUByte() != 0) {
+                // Skip the comment.
+            }
+        }
+
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+    }
+
+    private void readGzipTrailer() throws IOException {
+        long crc = readUInt();
+        long size = readUInt();
+        if (crc != mCrc.getValue()) {
+            throw new ZipException("Corrupt gzip body, CRC mismatch.");
+        }
+
+        if (size != (mInflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt gzip body, size mismatch.");
+        }
+    }
+
+    private boolean fill() throws IOException {
+        mPosition = 0;
+        mLimit = in.read(mBuffer, 0, mBuffer.length);
+        if (mLimit < 0) {
+            mLimit = 0;
+        }
+
+        return mLimit > 0;
+    }
+
+    private int readUByte() throws IOException {
+        if (mPosition >= mLimit && !fill()) {
+            throw new EOFException("Unexpected end of gzip header.");
+        }
+
+        return mBuffer[mPosition++] & 0xff;
+    }
+
+    private int readUShort() throws IOException {
+        return readUByte() | (readUByte() << 8);
+    }
+
+    private long readUInt() throws IOException {
+        return (readUShort() & 0xffffL) | ((long) readUShort() << 16);
+    }
+
+    private void skipBytes(int count) throws IOException {
+        for (int i = 0; i < count; ++i) {
+            readUByte();
+        }
+    }
+}
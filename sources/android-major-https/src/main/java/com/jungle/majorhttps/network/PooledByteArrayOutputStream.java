@@ -0,0 +1,108 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * ByteArrayOutputStream whose backing arrays come from a {@link BufferPool}.
+ *
+ * Call {@link #release()} once the content is consumed, it hands the buffer back.
+ * {@link #close()} does not release, so wrapping writers may close it safely.
+ */
+public class PooledByteArrayOutputStream extends OutputStream {
+
+    private static final int DEFAULT_SIZE = 4096;
+
+
+    private final BufferPool mPool;
+    private byte[] mBuffer;
+    private int mCount;
+
+
+    public PooledByteArrayOutputStream() {
+        this(BufferPool.getDefault(), DEFAULT_SIZE);
+    }
+
+    public PooledByteArrayOutputStream(BufferPool pool, int initialSize) {
+        mPool = pool;
+        mBuffer = pool.acquire(Math.max(initialSize, 1));
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(mCount + 1);
+        mBuffer[mCount++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(mCount + len);
+        System.arraycopy(b, off, mBuffer, mCount, len);
+        mCount += len;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * The backing array, valid in [0, {@link #size()}) until the next write or release.
+     */
+    public byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(mBuffer, mCount);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(mBuffer, 0, mCount);
+    }
+
+    public void reset() {
+        mCount = 0;
+    }
+
+    public void release() {
+        if (mBuffer != null) {
+            mPool.release(mBuffer);
+            mBuffer = null;
+            mCount = 0;
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (mBuffer == null) {
+            throw new IllegalStateException("Stream was released.");
+        }
+
+        if (minCapacity <= mBuffer.length) {
+            return;
+        }
+
+        byte[] grown = mPool.acquire(Math.max(minCapacity, mBuffer.length << 1));
+        System.arraycopy(mBuffer, 0, grown, 0, mCount);
+        mPool.release(mBuffer);
+        mBuffer = grown;
+    }
+}
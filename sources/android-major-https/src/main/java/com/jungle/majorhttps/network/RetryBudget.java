@@ -0,0 +1,83 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps retries to a fraction of the live traffic, so an outage does not turn every
+ * failing request into several more requests.
+ *
+ * Every new request deposits `ratio` tokens, every retry withdraws one token.
+ * Tokens are kept in thousandths so the bucket can be a single AtomicLong.
+ */
+public class RetryBudget {
+
+    public static final float DEFAULT_RATIO = 0.1f;
+    public static final int DEFAULT_MAX_TOKENS = 10;
+
+    private static final long TOKEN_UNIT = 1000;
+
+
+    private final long mDeposit;
+    private final long mMaxTokens;
+    private final AtomicLong mTokens;
+
+
+    public RetryBudget() {
+        this(DEFAULT_RATIO, DEFAULT_MAX_TOKENS);
+    }
+
+    /**
+     * @param ratio     Retries allowed per new request, such as `0.1` for 10%.
+     * @param maxTokens Retries that can be saved up, this is also the initial allowance.
+     */
+    public RetryBudget(float ratio, int maxTokens) {
+        mDeposit = (long) (ratio * TOKEN_UNIT);
+        mMaxTokens = maxTokens * TOKEN_UNIT;
+        mTokens = new AtomicLong(mMaxTokens);
+    }
+
+    public void onRequest() {
+        while (true) {
+            long tokens = mTokens.get();
+            long next = Math.min(mMaxTokens, tokens + mDeposit);
+            if (tokens == next || mTokens.compareAndSet(tokens, next)) {
+                return;
+            }
+        }
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            long tokens = mTokens.get();
+            if (tokens < TOKEN_UNIT) {
+                return false;
+            }
+
+            if (mTokens.compareAndSet(tokens, tokens - TOKEN_UNIT)) {
+                return true;
+            }
+        }
+    }
+
+    public float getAvailableRetries() {
+        return mTokens.get() / (float) TOKEN_UNIT;
+    }
+}
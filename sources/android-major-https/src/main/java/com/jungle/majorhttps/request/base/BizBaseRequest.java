@@ -18,27 +18,58 @@
 
 package com.jungle.majorhttps.request.base;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 import com.android.volley.AuthFailureError;
+import com.android.volley.Cache;
 import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
+import com.jungle.majorhttps.network.ContentEncoding;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 public abstract class BizBaseRequest<T> extends Request<BizBaseResponse<T>> {
 
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+
     protected int mSeqId;
     private String mRedirectUrl;
     protected Map<String, ?> mRequestParams;
     protected Map<String, String> mRequestHeaders;
     protected ExtraHeadersFiller mExtraHeadersFiller;
     protected BizRequestListener<T> mListener;
+    private Priority mPriority = Priority.NORMAL;
+    private long mDeadline;
+    private String mDeadlineHeader;
+    private RequestTiming mTiming;
+    private RequestBody mBody;
+    private ProgressReporter mProgress;
+    private ContentEncoding mBodyEncoding = ContentEncoding.IDENTITY;
+    private int mMinCompressSize;
+    private Cache mCacheWriter;
+    private String mCacheKey;
+    private boolean mCacheable;
 
 
     public BizBaseRequest(
@@ -53,6 +84,11 @@ public abstract class BizBaseRequest<T> extends Request<BizBaseResponse<T>> {
         mRequestParams = params;
         mRequestHeaders = headers;
 
+        // Only GET responses are cached unless the request is marked cacheable.
+        if (method != Method.GET) {
+            setShouldCache(false);
+        }
+
         redirectRequest();
     }
 
@@ -60,6 +96,277 @@ public abstract class BizBaseRequest<T> extends Request<BizBaseResponse<T>> {
         mExtraHeadersFiller = filler;
     }
 
+    public void setPriority(Priority priority) {
+        mPriority = priority;
+    }
+
+    /**
+     * Sends the milliseconds left until the deadline in the given header.
+     *
+     * @param deadline {@link SystemClock#elapsedRealtime()} based.
+     */
+    public void setDeadline(long deadline, String headerName) {
+        mDeadline = deadline;
+        mDeadlineHeader = headerName;
+    }
+
+    public void setTiming(RequestTiming timing) {
+        mTiming = timing;
+    }
+
+    public void setRequestBody(RequestBody body) {
+        mBody = body;
+    }
+
+    /**
+     * @return the body {@link com.jungle.majorhttps.request.queue.MajorNetwork} writes to
+     * the connection, or null to fall back to {@link #getBody()}.
+     */
+    public RequestBody getRequestBody() {
+        return mBody;
+    }
+
+    /**
+     * Compress request bodies of at least {@code minSize} bytes with {@code encoding}.
+     */
+    public void setBodyEncoding(ContentEncoding encoding, int minSize) {
+        mBodyEncoding = encoding != null ? encoding : ContentEncoding.IDENTITY;
+        mMinCompressSize = minSize;
+    }
+
+    public ContentEncoding getBodyEncoding() {
+        return mBodyEncoding;
+    }
+
+    public int getMinCompressSize() {
+        return mMinCompressSize;
+    }
+
+    /**
+     * Store successful responses in {@code cache} from the network thread. Used with
+     * {@link #setShouldCache(boolean)} false, when the client reads the cache itself.
+     */
+    public void setCacheWriter(Cache cache) {
+        mCacheWriter = cache;
+    }
+
+    /**
+     * Parses a cached response outside of Volley's cache dispatcher, on the calling thread.
+     */
+    public Response<BizBaseResponse<T>> parseCacheEntry(Cache.Entry entry) {
+        Response<BizBaseResponse<T>> response =
+                parseNetworkResponse(new NetworkResponse(entry.data, entry.responseHeaders));
+
+        if (response.isSuccess() && response.result != null) {
+            response.result.mNetworkResp.mFromCache = true;
+        }
+
+        return response;
+    }
+
+    public void deliverCachedResponse(BizBaseResponse<T> response) {
+        deliverResponse(response);
+    }
+
+    /**
+     * Also cache responses to requests other than GET, e.g. read-only POST queries.
+     */
+    public void setCacheable(boolean cacheable) {
+        mCacheable = cacheable;
+        setShouldCache(isCacheable());
+    }
+
+    /**
+     * Unlike {@link #shouldCache()}, also true when the client reads the cache itself.
+     */
+    public boolean isCacheable() {
+        return mCacheable || getMethod() == Method.GET;
+    }
+
+    /**
+     * Method, url, sorted params and a hash of the body, so requests to the same url
+     * with other params or bodies never share an entry.
+     */
+    @Override
+    public String getCacheKey() {
+        if (mCacheKey == null) {
+            mCacheKey = buildCacheKey();
+        }
+
+        return mCacheKey;
+    }
+
+    protected String buildCacheKey() {
+        StringBuilder builder = new StringBuilder(methodName(getMethod()))
+                .append(' ').append(getOriginalUrl());
+
+        if (mRequestParams != null && !mRequestParams.isEmpty()) {
+            String encoding = getParamsEncoding();
+            char separator = ' ';
+            try {
+                for (Map.Entry<String, ?> entry
+                        : new TreeMap<String, Object>(mRequestParams).entrySet()) {
+                    builder.append(separator)
+                            .append(URLEncoder.encode(entry.getKey(), encoding))
+                            .append('=')
+                            .append(URLEncoder.encode(String.valueOf(entry.getValue()), encoding));
+                    separator = '&';
+                }
+            } catch (UnsupportedEncodingException e) {
+                e.printStackTrace();
+            }
+        }
+
+        int method = getMethod();
+        if (method != Method.GET && method != Method.HEAD) {
+            String digest = digestBody();
+            if (digest != null) {
+                builder.append(" #").append(digest);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static String methodName(int method) {
+        switch (method) {
+            case Method.GET:
+                return "GET";
+            case Method.POST:
+                return "POST";
+            case Method.PUT:
+                return "PUT";
+            case Method.DELETE:
+                return "DELETE";
+            case Method.HEAD:
+                return "HEAD";
+            case Method.OPTIONS:
+                return "OPTIONS";
+            case Method.TRACE:
+                return "TRACE";
+            case Method.PATCH:
+                return "PATCH";
+            default:
+                return String.valueOf(method);
+        }
+    }
+
+    /**
+     * SHA-256 of the body that is sent. A {@link RequestBody} is hashed while it is
+     * written, without materializing it.
+     *
+     * @return null without a body.
+     */
+    private String digestBody() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256.
+            throw new IllegalStateException(e);
+        }
+
+        if (mBody != null) {
+            try {
+                mBody.writeTo(new DigestOutputStream(DISCARD, digest));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        } else {
+            byte[] body = getPostBody();
+            if (body == null || body.length == 0) {
+                return null;
+            }
+
+            digest.update(body);
+        }
+
+        byte[] hash = digest.digest();
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return builder.toString();
+    }
+
+    public void setProgressReporter(ProgressReporter progress) {
+        mProgress = progress;
+    }
+
+    /**
+     * @return the reporter for the request body, null if this is no upload.
+     */
+    public ProgressReporter getUploadProgress() {
+        return isUpload() ? mProgress : null;
+    }
+
+    /**
+     * @return the reporter for the response body, null for uploads.
+     */
+    public ProgressReporter getDownloadProgress() {
+        return isUpload() ? null : mProgress;
+    }
+
+    public boolean isUpload() {
+        return false;
+    }
+
+    public RequestTiming getTiming() {
+        return mTiming;
+    }
+
+    @Override
+    public void addMarker(String tag) {
+        super.addMarker(tag);
+        if (mTiming != null) {
+            markTiming(tag);
+        }
+    }
+
+    private void markTiming(String tag) {
+        // Volley reports the progress of a request through these markers.
+        switch (tag) {
+            case "add-to-queue":
+                mTiming.mark(RequestTiming.Event.DISPATCHED);
+                break;
+            case "cache-queue-take":
+                mTiming.mark(RequestTiming.Event.CACHE_LOOKUP_START);
+                break;
+            case "cache-hit":
+                mTiming.mCacheHit = true;
+                mTiming.mark(RequestTiming.Event.CACHE_LOOKUP_END);
+                break;
+            case "cache-miss":
+            case "cache-hit-expired":
+                mTiming.mark(RequestTiming.Event.CACHE_LOOKUP_END);
+                break;
+            case "network-queue-take":
+                mTiming.mark(RequestTiming.Event.NETWORK_START);
+                break;
+            case "network-parse-complete":
+            case "cache-hit-parsed":
+                mTiming.mark(RequestTiming.Event.PARSE_END);
+                break;
+            case "post-error":
+                mTiming.mFailed = true;
+                mTiming.mark(RequestTiming.Event.DELIVERY_START);
+                break;
+            case "post-response":
+                mTiming.mark(RequestTiming.Event.DELIVERY_START);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
+
     @Override
     public String getUrl() {
         return mRedirectUrl != null ? mRedirectUrl : getOriginalUrl();
@@ -72,13 +379,39 @@ public abstract class BizBaseRequest<T> extends Request<BizBaseResponse<T>> {
     @Override
     public Map<String, String> getHeaders() throws AuthFailureError {
         Map<String, String> headers = new HashMap<>();
-        headers.putAll(mRequestHeaders);
+        if (mRequestHeaders != null) {
+            headers.putAll(mRequestHeaders);
+        }
 
         if (mExtraHeadersFiller != null) {
             mExtraHeadersFiller.fillHeaders(headers);
         }
 
-        return super.getHeaders();
+        // Computed when the attempt starts, so the server sees the real remaining budget.
+        if (mDeadlineHeader != null) {
+            long remainingMs = mDeadline - SystemClock.elapsedRealtime();
+            headers.put(mDeadlineHeader, String.valueOf(Math.max(0, remainingMs)));
+        }
+
+        return headers;
+    }
+
+    /**
+     * Serializes the {@link RequestBody} for networks that only take a byte[].
+     */
+    @Override
+    public byte[] getBody() throws AuthFailureError {
+        if (mBody == null) {
+            return super.getBody();
+        }
+
+        try {
+            return mBody.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
     }
 
     @Override
@@ -100,16 +433,49 @@ public abstract class BizBaseRequest<T> extends Request<BizBaseResponse<T>> {
 
     @Override
     protected Response<BizBaseResponse<T>> parseNetworkResponse(NetworkResponse response) {
-        return Response.success(
-                createBizResponse(response),
-                HttpHeaderParser.parseCacheHeaders(response));
+        try {
+            Cache.Entry entry = HttpHeaderParser.parseCacheHeaders(response);
+            BizBaseResponse<T> bizResponse = createBizResponse(response);
+            if (mCacheWriter != null) {
+                writeCache(response, entry);
+            }
+
+            return Response.success(bizResponse, entry);
+        } catch (BizParseError e) {
+            return Response.error(e);
+        }
+    }
+
+    private void writeCache(NetworkResponse response, Cache.Entry entry) {
+        if (entry == null) {
+            // `no-cache` only asks to revalidate, the entry is cached as already expired.
+            String cacheControl = response.headers != null
+                    ? response.headers.get("Cache-Control") : null;
+            if (cacheControl != null && cacheControl.contains("no-store")) {
+                return;
+            }
+
+            entry = new Cache.Entry();
+            entry.data = response.data;
+            entry.etag = response.headers != null ? response.headers.get("ETag") : null;
+            entry.responseHeaders = response.headers;
+        }
+
+        mCacheWriter.put(getCacheKey(), entry);
     }
 
-    protected BizBaseResponse<T> createBizResponse(NetworkResponse response) {
-        return new BizBaseResponse<>(response, parseResponseContent(response));
+    protected BizBaseResponse<T> createBizResponse(NetworkResponse response)
+            throws BizParseError {
+        BizBaseResponse<T> bizResponse =
+                new BizBaseResponse<>(response, parseResponseContent(response));
+        bizResponse.mNetworkResp.mTiming = mTiming;
+        return bizResponse;
     }
 
-    protected abstract T parseResponseContent(NetworkResponse response);
+    /**
+     * Runs on the network dispatcher thread.
+     */
+    protected abstract T parseResponseContent(NetworkResponse response) throws BizParseError;
 
     protected String parseResponseToStringContent(NetworkResponse response) {
         String content;
@@ -125,6 +491,10 @@ public abstract class BizBaseRequest<T> extends Request<BizBaseResponse<T>> {
     @SuppressWarnings("unchecked")
     @Override
     protected void deliverResponse(BizBaseResponse<T> response) {
+        if (mTiming != null) {
+            mTiming.mark(RequestTiming.Event.DELIVERED);
+        }
+
         if (mListener != null) {
             mListener.onSuccess(mSeqId, response);
         }
@@ -132,6 +502,10 @@ public abstract class BizBaseRequest<T> extends Request<BizBaseResponse<T>> {
 
     @Override
     public void deliverError(VolleyError error) {
+        if (mTiming != null) {
+            mTiming.mark(RequestTiming.Event.DELIVERED);
+        }
+
         if (mListener != null) {
             mListener.onError(mSeqId, error);
         }
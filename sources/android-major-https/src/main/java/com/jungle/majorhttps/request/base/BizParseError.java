@@ -0,0 +1,42 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.base;
+
+import com.android.volley.ParseError;
+
+/**
+ * The response could not be turned into the data of the model, or reported a failure
+ * in its body. Carries the {@link com.jungle.majorhttps.network.CommonError} code
+ * delivered to the model.
+ */
+public class BizParseError extends ParseError {
+
+    public final int mErrorCode;
+
+
+    public BizParseError(int errorCode, String message) {
+        super(message);
+        mErrorCode = errorCode;
+    }
+
+    public BizParseError(int errorCode, Throwable cause) {
+        this(errorCode, cause.getMessage());
+        initCause(cause);
+    }
+}
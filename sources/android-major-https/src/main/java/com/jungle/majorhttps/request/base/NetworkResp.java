@@ -28,6 +28,15 @@ public class NetworkResp {
     public Map<String, String> mHeaders;
     public boolean mNotModified;
     public long mNetworkTimeMs;
+    /**
+     * Delivered from the cache by a {@link com.jungle.majorhttps.model.base.CachePolicy}.
+     */
+    public boolean mFromCache;
+    /**
+     * Phases of the attempt that produced this response, null if no
+     * {@link RequestEventListener} is registered.
+     */
+    public RequestTiming mTiming;
 
 
     public NetworkResp(NetworkResponse response) {
@@ -0,0 +1,142 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.base;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import com.jungle.majorhttps.model.listener.ModelProgressListener;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts transferred bytes of one model request and reports them, throttled.
+ *
+ * Updated from network threads, possibly several at once for segmented downloads.
+ * A report is posted only once both `minIntervalMs` passed and `minStep` of the total
+ * was transferred since the previous one, or only the interval if the total is unknown.
+ * Start and completion are always reported.
+ */
+public class ProgressReporter {
+
+    public static final long DEFAULT_MIN_INTERVAL_MS = 100;
+    public static final float DEFAULT_MIN_STEP = 0.01f;
+
+
+    private static final Executor sMainThreadExecutor = new Executor() {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            mHandler.post(command);
+        }
+    };
+
+
+    private final int mSeqId;
+    private final ModelProgressListener mListener;
+    private final Executor mExecutor;
+    private final long mMinIntervalMs;
+    private final float mMinStep;
+
+    private final AtomicLong mTransferred = new AtomicLong();
+    private volatile long mTotal = -1;
+    private long mLastReportTime;
+    private long mLastTransferred = -1;
+    private long mLastTotal = -1;
+
+
+    /**
+     * @param executor null to report on the main thread.
+     */
+    public ProgressReporter(
+            int seqId, ModelProgressListener listener, Executor executor,
+            long minIntervalMs, float minStep) {
+
+        mSeqId = seqId;
+        mListener = listener;
+        mExecutor = executor != null ? executor : sMainThreadExecutor;
+        mMinIntervalMs = minIntervalMs;
+        mMinStep = minStep;
+    }
+
+    /**
+     * Starts an attempt that continues from `transferred` bytes.
+     */
+    public void start(long transferred, long total) {
+        mTotal = total;
+        mTransferred.set(transferred);
+        report(true);
+    }
+
+    public void setTotal(long total) {
+        mTotal = total;
+    }
+
+    public void add(long bytes) {
+        mTransferred.addAndGet(bytes);
+        report(false);
+    }
+
+    /**
+     * The body is complete, an unknown total becomes the transferred count.
+     */
+    public void finish() {
+        if (mTotal < 0) {
+            mTotal = mTransferred.get();
+        }
+
+        report(true);
+    }
+
+    private void report(boolean force) {
+        final long transferred = mTransferred.get();
+        final long total = mTotal;
+        long now = SystemClock.elapsedRealtime();
+
+        synchronized (this) {
+            if (transferred == mLastTransferred && total == mLastTotal) {
+                return;
+            }
+
+            boolean done = total >= 0 && transferred >= total;
+            if (!force && !done) {
+                if (now - mLastReportTime < mMinIntervalMs) {
+                    return;
+                }
+
+                if (total > 0 && transferred - mLastTransferred < mMinStep * total) {
+                    return;
+                }
+            }
+
+            mLastReportTime = now;
+            mLastTransferred = transferred;
+            mLastTotal = total;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onProgress(mSeqId, transferred, total);
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.base;
+
+import com.jungle.majorhttps.network.PooledByteArrayOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A request body that is written to the connection instead of being materialized
+ * as a byte[] up front.
+ */
+public abstract class RequestBody {
+
+    public static RequestBody create(final String contentType, final byte[] content) {
+        return new RequestBody() {
+            @Override
+            public String getContentType() {
+                return contentType;
+            }
+
+            @Override
+            public long getContentLength() {
+                return content.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(content);
+            }
+        };
+    }
+
+
+    /**
+     * @return the Content-Type, or null to use the request's one.
+     */
+    public abstract String getContentType();
+
+    /**
+     * @return the exact length in bytes, or -1 if it is only known after writing.
+     */
+    public long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * Called on the network thread, possibly once per attempt.
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    public byte[] toByteArray() throws IOException {
+        PooledByteArrayOutputStream out = new PooledByteArrayOutputStream();
+        try {
+            writeTo(out);
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.base;
+
+/**
+ * Observes the phases of every request attempt.
+ *
+ * Called on the thread the phase happened on: the scheduling thread, Volley's cache and
+ * network dispatchers, or the main thread for delivery. Implementations must be fast.
+ */
+public interface RequestEventListener {
+
+    /**
+     * @param timing Attempt the event belongs to, the time of the event is
+     *               {@code timing.getTime(event)}.
+     */
+    void onEvent(RequestTiming timing, RequestTiming.Event event);
+}
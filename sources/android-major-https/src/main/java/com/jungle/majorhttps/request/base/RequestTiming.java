@@ -0,0 +1,170 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.base;
+
+import android.os.SystemClock;
+
+/**
+ * Timestamps of the phases of one request attempt, {@link SystemClock#elapsedRealtime()}
+ * based. A phase that did not happen, such as DNS on a reused connection, stays 0.
+ *
+ * Only created while a {@link RequestEventListener} is registered, so requests carry
+ * no timing at all otherwise.
+ */
+public class RequestTiming {
+
+    public enum Event {
+        /**
+         * Handed to the client's scheduler.
+         */
+        QUEUED,
+        /**
+         * Admitted by the scheduler into Volley's queue.
+         */
+        DISPATCHED,
+        CACHE_LOOKUP_START,
+        CACHE_LOOKUP_END,
+        /**
+         * Taken by a network dispatcher thread.
+         */
+        NETWORK_START,
+        DNS_START,
+        DNS_END,
+        CONNECT_START,
+        SECURE_CONNECT_START,
+        SECURE_CONNECT_END,
+        CONNECT_END,
+        REQUEST_WRITE_START,
+        REQUEST_WRITE_END,
+        /**
+         * Status line and headers arrived, the time to first byte.
+         */
+        RESPONSE_HEADERS,
+        RESPONSE_BODY_END,
+        PARSE_END,
+        /**
+         * Posted to the main thread.
+         */
+        DELIVERY_START,
+        DELIVERED
+    }
+
+
+    private static final Event[] EVENTS = Event.values();
+
+
+    public final int mSeqId;
+    public final String mUrl;
+    public boolean mCacheHit;
+    public boolean mFailed;
+    /**
+     * Response body bytes as received and after decoding gzip, deflate or brotli.
+     */
+    public long mResponseWireBytes;
+    public long mResponseBodyBytes;
+
+    private final long[] mTimes = new long[EVENTS.length];
+    private final RequestEventListener mListener;
+
+
+    public RequestTiming(int seqId, String url, RequestEventListener listener) {
+        mSeqId = seqId;
+        mUrl = url;
+        mListener = listener;
+    }
+
+    public void mark(Event event) {
+        mTimes[event.ordinal()] = SystemClock.elapsedRealtime();
+        if (mListener != null) {
+            mListener.onEvent(this, event);
+        }
+    }
+
+    public long getTime(Event event) {
+        return mTimes[event.ordinal()];
+    }
+
+    /**
+     * @return milliseconds between two events, or -1 if either did not happen.
+     */
+    public long getDurationMs(Event from, Event to) {
+        long start = getTime(from);
+        long end = getTime(to);
+        return start != 0 && end != 0 ? end - start : -1;
+    }
+
+    /**
+     * @return time spent in the client's scheduler and in Volley's queues.
+     */
+    public long getQueueWaitMs() {
+        long waitMs = getDurationMs(Event.QUEUED, Event.NETWORK_START);
+        long cacheMs = getCacheLookupMs();
+        return waitMs >= 0 && cacheMs > 0 ? waitMs - cacheMs : waitMs;
+    }
+
+    public long getCacheLookupMs() {
+        return getDurationMs(Event.CACHE_LOOKUP_START, Event.CACHE_LOOKUP_END);
+    }
+
+    public long getDnsMs() {
+        return getDurationMs(Event.DNS_START, Event.DNS_END);
+    }
+
+    /**
+     * @return TCP connect and TLS handshake, close to 0 if a pooled connection was reused.
+     */
+    public long getConnectMs() {
+        return getDurationMs(Event.CONNECT_START, Event.CONNECT_END);
+    }
+
+    public long getSecureConnectMs() {
+        return getDurationMs(Event.SECURE_CONNECT_START, Event.SECURE_CONNECT_END);
+    }
+
+    public long getRequestWriteMs() {
+        return getDurationMs(Event.REQUEST_WRITE_START, Event.REQUEST_WRITE_END);
+    }
+
+    /**
+     * @return from the start of the network phase to the response headers.
+     */
+    public long getTimeToFirstByteMs() {
+        return getDurationMs(Event.NETWORK_START, Event.RESPONSE_HEADERS);
+    }
+
+    public long getBodyReadMs() {
+        return getDurationMs(Event.RESPONSE_HEADERS, Event.RESPONSE_BODY_END);
+    }
+
+    public long getParseMs() {
+        return getDurationMs(
+                mCacheHit ? Event.CACHE_LOOKUP_END : Event.RESPONSE_BODY_END, Event.PARSE_END);
+    }
+
+    /**
+     * @return time the response waited for the main thread.
+     */
+    public long getDeliveryMs() {
+        return getDurationMs(Event.DELIVERY_START, Event.DELIVERED);
+    }
+
+    public long getTotalMs() {
+        return getDurationMs(Event.QUEUED, Event.DELIVERED);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.base;
+
+/**
+ * Turns the response body into the data of a model.
+ *
+ * Runs on a Volley network dispatcher thread, so it must not touch UI state.
+ */
+public interface ResponseParser<T> {
+
+    T parse(String content) throws BizParseError;
+
+    /**
+     * @return identifies what this parser produces, so that requests parsed alike can
+     * share one network call. Null if its results must never be shared.
+     */
+    String getKey();
+}
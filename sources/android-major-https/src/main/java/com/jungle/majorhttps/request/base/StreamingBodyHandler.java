@@ -0,0 +1,42 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.base;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Implemented by requests that consume a successful response body as a stream.
+ *
+ * The network then hands over the connection's stream instead of buffering the body,
+ * and the NetworkResponse it returns has an empty body. Such requests must not be cached.
+ */
+public interface StreamingBodyHandler {
+
+    boolean isStreaming();
+
+    /**
+     * Called on the network dispatcher thread, before parseNetworkResponse().
+     *
+     * @throws IOException if reading the stream failed, which fails the attempt
+     *                     like any other network error.
+     */
+    void onResponseBody(InputStream in, Map<String, String> headers) throws IOException;
+}
@@ -0,0 +1,58 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.cache;
+
+/**
+ * Counters of a {@link TwoTierCache} since its creation or the last reset.
+ */
+public class CacheStats {
+
+    public final long mMemoryHits;
+    public final long mDiskHits;
+    public final long mMisses;
+    public final long mMemoryEvictions;
+    public final long mMemoryBytes;
+
+
+    public CacheStats(
+            long memoryHits, long diskHits, long misses, long memoryEvictions, long memoryBytes) {
+
+        mMemoryHits = memoryHits;
+        mDiskHits = diskHits;
+        mMisses = misses;
+        mMemoryEvictions = memoryEvictions;
+        mMemoryBytes = memoryBytes;
+    }
+
+    public long getHits() {
+        return mMemoryHits + mDiskHits;
+    }
+
+    public float getHitRate() {
+        long lookups = getHits() + mMisses;
+        return lookups > 0 ? (float) getHits() / lookups : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{memoryHits=" + mMemoryHits + ", diskHits=" + mDiskHits
+                + ", misses=" + mMisses + ", memoryEvictions=" + mMemoryEvictions
+                + ", memoryBytes=" + mMemoryBytes + "}";
+    }
+}
@@ -0,0 +1,716 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.cache;
+
+import com.android.volley.Cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Disk {@link Cache} that starts without touching the entry files.
+ *
+ * Keys, sizes, TTLs and ETags live in a memory-mapped, append-only index. Every change
+ * appends a record, {@link #initialize()} maps the index and replays it. Bodies and headers
+ * are stored one file per entry and read with positional {@link FileChannel} reads
+ * straight into the returned arrays.
+ *
+ * Once most of the index is outdated, live records are copied into a new index a few at a
+ * time, on every write, until the old index can be dropped. Until then both are replayed,
+ * the newer one last.
+ */
+public class MappedDiskCache implements Cache {
+
+    public static final int DEFAULT_MAX_BYTES = 5 * 1024 * 1024;
+
+    private static final String INDEX_FILE = "index";
+    private static final String NEXT_INDEX_FILE = "index.next";
+    private static final String ENTRY_PREFIX = "e";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x4D444331;
+    private static final int HEADER_SIZE = 8;
+    private static final int MIN_INDEX_SIZE = 64 * 1024;
+    private static final int COMPACT_BATCH = 16;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+
+
+    private static class IndexEntry {
+
+        long mFileId;
+        int mSize;
+        String mETag;
+        long mServerDate;
+        long mLastModified;
+        long mTtl;
+        long mSoftTtl;
+        /**
+         * The index holding the latest record of this entry.
+         */
+        Index mIndex;
+    }
+
+
+    /**
+     * A mapped index file and the bytes of it that are still current.
+     */
+    private static class Index {
+
+        final File mFile;
+        RandomAccessFile mAccessFile;
+        MappedByteBuffer mBuffer;
+        int mPosition = HEADER_SIZE;
+        long mLiveBytes;
+
+
+        Index(File file) {
+            mFile = file;
+        }
+    }
+
+
+    private final File mRootDir;
+    private final int mMaxBytes;
+    private final LinkedHashMap<String, IndexEntry> mEntries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private Index mIndex;
+    /**
+     * Receives new records while the live records of {@link #mIndex} are moved into it.
+     */
+    private Index mNextIndex;
+    private long mTotalSize;
+    private long mNextFileId;
+
+
+    public MappedDiskCache(File rootDir) {
+        this(rootDir, DEFAULT_MAX_BYTES);
+    }
+
+    public MappedDiskCache(File rootDir, int maxBytes) {
+        mRootDir = rootDir;
+        mMaxBytes = maxBytes;
+    }
+
+    @Override
+    public synchronized void initialize() {
+        if (mIndex != null) {
+            return;
+        }
+
+        if (!mRootDir.exists() && !mRootDir.mkdirs()) {
+            return;
+        }
+
+        try {
+            mIndex = openIndex(new File(mRootDir, INDEX_FILE));
+            File nextFile = new File(mRootDir, NEXT_INDEX_FILE);
+            if (nextFile.exists()) {
+                mNextIndex = openIndex(nextFile);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            reset();
+        }
+    }
+
+    @Override
+    public synchronized Entry get(String key) {
+        IndexEntry indexEntry = mEntries.get(key);
+        if (indexEntry == null) {
+            return null;
+        }
+
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(getEntryFile(indexEntry.mFileId));
+            FileChannel channel = stream.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(4);
+            readFully(channel, header, 0);
+            int headersLength = header.getInt(0);
+            if (headersLength < 0 || 4L + headersLength > indexEntry.mSize) {
+                throw new IOException("Corrupt cache entry " + key);
+            }
+
+            ByteBuffer headersBuffer = ByteBuffer.allocate(headersLength);
+            readFully(channel, headersBuffer, 4);
+            byte[] data = new byte[indexEntry.mSize - 4 - headersLength];
+            readFully(channel, ByteBuffer.wrap(data), 4 + headersLength);
+
+            Entry entry = new Entry();
+            entry.data = data;
+            entry.etag = indexEntry.mETag;
+            entry.serverDate = indexEntry.mServerDate;
+            entry.lastModified = indexEntry.mLastModified;
+            entry.ttl = indexEntry.mTtl;
+            entry.softTtl = indexEntry.mSoftTtl;
+            entry.responseHeaders = readHeaders(headersBuffer.array());
+            return entry;
+        } catch (IOException e) {
+            e.printStackTrace();
+            remove(key);
+            return null;
+        } finally {
+            close(stream);
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, Entry entry) {
+        if (mIndex == null) {
+            return;
+        }
+
+        byte[] headers = writeHeaders(entry.responseHeaders);
+        long size = 4L + headers.length + (entry.data != null ? entry.data.length : 0);
+        if (size > mMaxBytes) {
+            remove(key);
+            return;
+        }
+
+        IndexEntry indexEntry = new IndexEntry();
+        indexEntry.mFileId = mNextFileId++;
+        indexEntry.mSize = (int) size;
+        indexEntry.mETag = entry.etag;
+        indexEntry.mServerDate = entry.serverDate;
+        indexEntry.mLastModified = entry.lastModified;
+        indexEntry.mTtl = entry.ttl;
+        indexEntry.mSoftTtl = entry.softTtl;
+
+        File file = getEntryFile(indexEntry.mFileId);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            FileChannel channel = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(4);
+            header.putInt(0, headers.length);
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(headers));
+            if (entry.data != null) {
+                writeFully(channel, ByteBuffer.wrap(entry.data));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            close(out);
+            file.delete();
+            return;
+        } finally {
+            close(out);
+        }
+
+        IndexEntry previous = mEntries.get(key);
+        if (!appendPut(key, indexEntry)) {
+            file.delete();
+            return;
+        }
+
+        if (previous != null) {
+            dropEntry(key, previous);
+        }
+
+        mEntries.put(key, indexEntry);
+        mTotalSize += size;
+        trimToSize();
+        compactStep();
+    }
+
+    @Override
+    public synchronized void invalidate(String key, boolean fullExpire) {
+        IndexEntry indexEntry = mEntries.get(key);
+        if (indexEntry == null) {
+            return;
+        }
+
+        indexEntry.mSoftTtl = 0;
+        if (fullExpire) {
+            indexEntry.mTtl = 0;
+        }
+
+        Index previousIndex = indexEntry.mIndex;
+        int previousLength = recordLength(key, indexEntry);
+        if (appendPut(key, indexEntry)) {
+            previousIndex.mLiveBytes -= previousLength;
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        IndexEntry indexEntry = mEntries.remove(key);
+        if (indexEntry == null) {
+            return;
+        }
+
+        appendRemove(key);
+        dropEntry(key, indexEntry);
+        compactStep();
+    }
+
+    @Override
+    public synchronized void clear() {
+        mEntries.clear();
+        mTotalSize = 0;
+        closeIndex(mIndex);
+        closeIndex(mNextIndex);
+        mIndex = null;
+        mNextIndex = null;
+
+        File[] files = mRootDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        initialize();
+    }
+
+    public synchronized long size() {
+        return mTotalSize;
+    }
+
+    public synchronized int getEntryCount() {
+        return mEntries.size();
+    }
+
+    private Index openIndex(File file) throws IOException {
+        Index index = new Index(file);
+        boolean created = !file.exists() || file.length() < HEADER_SIZE;
+        index.mAccessFile = new RandomAccessFile(file, "rw");
+        long length = Math.max(MIN_INDEX_SIZE, index.mAccessFile.length());
+        mapIndex(index, length);
+
+        if (created || index.mBuffer.getInt(0) != MAGIC) {
+            index.mBuffer.putInt(0, MAGIC);
+            index.mBuffer.putInt(4, 0);
+            index.mBuffer.putInt(HEADER_SIZE, 0);
+            return index;
+        }
+
+        replay(index);
+        return index;
+    }
+
+    private static void mapIndex(Index index, long length) throws IOException {
+        index.mAccessFile.setLength(length);
+        index.mBuffer = index.mAccessFile.getChannel().map(
+                FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+
+    private void replay(Index index) {
+        MappedByteBuffer buffer = index.mBuffer;
+        int position = HEADER_SIZE;
+        int limit = buffer.capacity();
+
+        while (position + 4 <= limit) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + length > limit) {
+                break;
+            }
+
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + 4);
+            record.limit(position + length);
+            byte type = record.get();
+            String key = readString(record);
+            if (key == null) {
+                break;
+            }
+
+            IndexEntry previous = mEntries.remove(key);
+            if (previous != null) {
+                previous.mIndex.mLiveBytes -= recordLength(key, previous);
+                mTotalSize -= previous.mSize;
+            }
+
+            if (type == TYPE_PUT) {
+                IndexEntry entry = new IndexEntry();
+                entry.mFileId = record.getLong();
+                entry.mSize = record.getInt();
+                entry.mServerDate = record.getLong();
+                entry.mLastModified = record.getLong();
+                entry.mTtl = record.getLong();
+                entry.mSoftTtl = record.getLong();
+                entry.mETag = readString(record);
+                entry.mIndex = index;
+
+                mEntries.put(key, entry);
+                mTotalSize += entry.mSize;
+                index.mLiveBytes += length;
+                mNextFileId = Math.max(mNextFileId, entry.mFileId + 1);
+            }
+
+            position += length;
+        }
+
+        // Anything after the last complete record was torn by a crash.
+        index.mPosition = position;
+        if (position + 4 <= limit) {
+            buffer.putInt(position, 0);
+        }
+    }
+
+    private boolean appendPut(String key, IndexEntry entry) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte[] eTagBytes = entry.mETag != null ? entry.mETag.getBytes(UTF_8) : null;
+        int length = 4 + 1 + stringLength(keyBytes) + 8 + 4 + 8 * 4 + stringLength(eTagBytes);
+
+        Index index = mNextIndex != null ? mNextIndex : mIndex;
+        ByteBuffer record = reserve(index, length);
+        if (record == null) {
+            return false;
+        }
+
+        record.put(TYPE_PUT);
+        putString(record, keyBytes);
+        record.putLong(entry.mFileId);
+        record.putInt(entry.mSize);
+        record.putLong(entry.mServerDate);
+        record.putLong(entry.mLastModified);
+        record.putLong(entry.mTtl);
+        record.putLong(entry.mSoftTtl);
+        putString(record, eTagBytes);
+        commit(index, length);
+
+        entry.mIndex = index;
+        index.mLiveBytes += length;
+        return true;
+    }
+
+    private void appendRemove(String key) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int length = 4 + 1 + stringLength(keyBytes);
+
+        Index index = mNextIndex != null ? mNextIndex : mIndex;
+        ByteBuffer record = reserve(index, length);
+        if (record != null) {
+            record.put(TYPE_REMOVE);
+            putString(record, keyBytes);
+            commit(index, length);
+        }
+    }
+
+    /**
+     * @return a buffer for the record body after its length, or null if the index failed.
+     */
+    private ByteBuffer reserve(Index index, int length) {
+        if (index == null) {
+            return null;
+        }
+
+        try {
+            // One more int for the terminating 0 after the record.
+            long required = (long) index.mPosition + length + 4;
+            if (required > index.mBuffer.capacity()) {
+                long capacity = index.mBuffer.capacity();
+                while (capacity < required) {
+                    capacity <<= 1;
+                }
+
+                mapIndex(index, capacity);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            reset();
+            return null;
+        }
+
+        ByteBuffer record = index.mBuffer.duplicate();
+        record.position(index.mPosition + 4);
+        return record;
+    }
+
+    /**
+     * Writes the length last, a record cut short by a crash is never replayed.
+     */
+    private static void commit(Index index, int length) {
+        index.mBuffer.putInt(index.mPosition + length, 0);
+        index.mBuffer.putInt(index.mPosition, length);
+        index.mPosition += length;
+    }
+
+    /**
+     * Moves a few live records out of an outdated index, or starts doing so.
+     */
+    private void compactStep() {
+        if (mIndex == null) {
+            return;
+        }
+
+        if (mNextIndex == null) {
+            long used = mIndex.mPosition - HEADER_SIZE;
+            if (used < MIN_INDEX_SIZE || mIndex.mLiveBytes * 2 > used) {
+                return;
+            }
+
+            try {
+                File nextFile = new File(mRootDir, NEXT_INDEX_FILE);
+                nextFile.delete();
+                mNextIndex = openIndex(nextFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+
+        int moved = 0;
+        List<Map.Entry<String, IndexEntry>> pending = new ArrayList<>(COMPACT_BATCH);
+        for (Map.Entry<String, IndexEntry> entry : mEntries.entrySet()) {
+            if (entry.getValue().mIndex == mIndex) {
+                pending.add(entry);
+                if (++moved == COMPACT_BATCH) {
+                    break;
+                }
+            }
+        }
+
+        for (Map.Entry<String, IndexEntry> entry : pending) {
+            IndexEntry indexEntry = entry.getValue();
+            int length = recordLength(entry.getKey(), indexEntry);
+            if (!appendPut(entry.getKey(), indexEntry)) {
+                return;
+            }
+
+            mIndex.mLiveBytes -= length;
+        }
+
+        if (moved < COMPACT_BATCH) {
+            finishCompaction();
+        }
+    }
+
+    private void finishCompaction() {
+        // Everything current is in the next index now.
+        closeIndex(mIndex);
+        File indexFile = new File(mRootDir, INDEX_FILE);
+        if (!mNextIndex.mFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!mNextIndex.mFile.renameTo(indexFile)) {
+                return;
+            }
+        }
+
+        Index index = new Index(indexFile);
+        index.mAccessFile = mNextIndex.mAccessFile;
+        index.mBuffer = mNextIndex.mBuffer;
+        index.mPosition = mNextIndex.mPosition;
+        index.mLiveBytes = mNextIndex.mLiveBytes;
+        for (IndexEntry entry : mEntries.values()) {
+            entry.mIndex = index;
+        }
+
+        mIndex = index;
+        mNextIndex = null;
+        deleteOrphans();
+    }
+
+    /**
+     * Entry files written just before a crash never made it into the index.
+     */
+    private void deleteOrphans() {
+        Set<String> live = new HashSet<>();
+        for (IndexEntry entry : mEntries.values()) {
+            live.add(getEntryFile(entry.mFileId).getName());
+        }
+
+        File[] files = mRootDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(ENTRY_PREFIX) && !live.contains(name)) {
+                file.delete();
+            }
+        }
+    }
+
+    private void trimToSize() {
+        if (mTotalSize <= mMaxBytes) {
+            return;
+        }
+
+        // Leave some room, so not every put evicts again.
+        long target = mMaxBytes * 9L / 10;
+        Iterator<Map.Entry<String, IndexEntry>> iterator = mEntries.entrySet().iterator();
+        List<String> evicted = new ArrayList<>();
+        while (mTotalSize > target && iterator.hasNext()) {
+            Map.Entry<String, IndexEntry> eldest = iterator.next();
+            iterator.remove();
+            dropEntry(eldest.getKey(), eldest.getValue());
+            evicted.add(eldest.getKey());
+        }
+
+        for (String key : evicted) {
+            appendRemove(key);
+        }
+    }
+
+    private void dropEntry(String key, IndexEntry entry) {
+        mTotalSize -= entry.mSize;
+        if (entry.mIndex != null) {
+            entry.mIndex.mLiveBytes -= recordLength(key, entry);
+        }
+
+        getEntryFile(entry.mFileId).delete();
+    }
+
+    private void reset() {
+        // An unusable index loses the whole cache, the next initialize() starts empty.
+        mEntries.clear();
+        mTotalSize = 0;
+        closeIndex(mIndex);
+        closeIndex(mNextIndex);
+        mIndex = null;
+        mNextIndex = null;
+        new File(mRootDir, INDEX_FILE).delete();
+        new File(mRootDir, NEXT_INDEX_FILE).delete();
+    }
+
+    private File getEntryFile(long fileId) {
+        return new File(mRootDir, ENTRY_PREFIX + Long.toHexString(fileId));
+    }
+
+    private static int recordLength(String key, IndexEntry entry) {
+        byte[] eTagBytes = entry.mETag != null ? entry.mETag.getBytes(UTF_8) : null;
+        return 4 + 1 + stringLength(key.getBytes(UTF_8)) + 8 + 4 + 8 * 4
+                + stringLength(eTagBytes);
+    }
+
+    private static int stringLength(byte[] bytes) {
+        return 4 + (bytes != null ? bytes.length : 0);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static byte[] writeHeaders(Map<String, String> headers) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(headers != null ? headers.size() : 0);
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    out.writeUTF(header.getKey());
+                    out.writeUTF(header.getValue());
+                }
+            }
+
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, String> readHeaders(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int count = in.readInt();
+        Map<String, String> headers = new HashMap<>(Math.max(4, count * 2));
+        for (int i = 0; i < count; ++i) {
+            headers.put(in.readUTF(), in.readUTF());
+        }
+
+        return headers;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Cache entry truncated.");
+            }
+
+            position += count;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void closeIndex(Index index) {
+        if (index != null && index.mAccessFile != null) {
+            try {
+                index.mAccessFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
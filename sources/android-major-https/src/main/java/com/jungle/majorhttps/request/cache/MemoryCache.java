@@ -0,0 +1,161 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.cache;
+
+import com.android.volley.Cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory LRU {@link Cache}, bounded by the bytes of the cached bodies and headers.
+ * Entries larger than an eighth of the capacity are not kept, so a single
+ * download cannot flush everything else.
+ */
+public class MemoryCache implements Cache {
+
+    public static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final int ENTRY_OVERHEAD = 64;
+
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int mMaxBytes;
+    private long mSize;
+    private long mEvictionCount;
+
+
+    public MemoryCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public MemoryCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return a copy of the entry, so callers can not change what is cached. The body and
+     * headers are shared, they are never modified once cached.
+     */
+    @Override
+    public synchronized Entry get(String key) {
+        Entry entry = mEntries.get(key);
+        return entry != null ? copyOf(entry) : null;
+    }
+
+    @Override
+    public synchronized void put(String key, Entry entry) {
+        long size = sizeOf(key, entry);
+        if (size > mMaxBytes / 8) {
+            remove(key);
+            return;
+        }
+
+        Entry previous = mEntries.put(key, copyOf(entry));
+        if (previous != null) {
+            mSize -= sizeOf(key, previous);
+        }
+
+        mSize += size;
+        trimToSize(mMaxBytes);
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public synchronized void invalidate(String key, boolean fullExpire) {
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            // A caller may still hold the entry, the expired one replaces it.
+            entry = copyOf(entry);
+            entry.softTtl = 0;
+            if (fullExpire) {
+                entry.ttl = 0;
+            }
+
+            mEntries.put(key, entry);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mSize -= sizeOf(key, entry);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSize > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            mSize -= sizeOf(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            ++mEvictionCount;
+        }
+    }
+
+    private static Entry copyOf(Entry entry) {
+        Entry copy = new Entry();
+        copy.data = entry.data;
+        copy.etag = entry.etag;
+        copy.serverDate = entry.serverDate;
+        copy.lastModified = entry.lastModified;
+        copy.ttl = entry.ttl;
+        copy.softTtl = entry.softTtl;
+        copy.responseHeaders = entry.responseHeaders;
+        return copy;
+    }
+
+    private static long sizeOf(String key, Entry entry) {
+        long size = ENTRY_OVERHEAD + key.length() * 2;
+        if (entry.data != null) {
+            size += entry.data.length;
+        }
+
+        if (entry.responseHeaders != null) {
+            for (Map.Entry<String, String> header : entry.responseHeaders.entrySet()) {
+                size += (header.getKey().length() + header.getValue().length()) * 2;
+            }
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps parsed response data, so a cached or revalidated (304) response with an unchanged
+ * validator skips parsing and delivers the same object again.
+ *
+ * Entries are keyed by the cache key of the request and the key of its parser, and only
+ * match the ETag, or Last-Modified, they were parsed from. The size of an entry is the
+ * length of the body it was parsed from. Delivered objects are shared between loads, like
+ * the results of coalesced requests, so they must be treated as read-only.
+ */
+public class ParsedObjectCache {
+
+    public static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+
+    private static class Entry {
+
+        final String mValidator;
+        final Object mValue;
+        final int mSize;
+
+
+        Entry(String validator, Object value, int size) {
+            mValidator = validator;
+            mValue = value;
+            mSize = size;
+        }
+    }
+
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int mMaxBytes;
+    private long mSize;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+
+    public ParsedObjectCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public ParsedObjectCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the validator of a response, or null if its data cannot be matched later.
+     */
+    public static String getValidator(Map<String, String> headers) {
+        if (headers == null) {
+            return null;
+        }
+
+        String eTag = getHeader(headers, "ETag");
+        if (eTag != null) {
+            return eTag;
+        }
+
+        String lastModified = getHeader(headers, "Last-Modified");
+        return lastModified != null ? "lm " + lastModified : null;
+    }
+
+    private static String getHeader(Map<String, String> headers, String name) {
+        String value = headers.get(name);
+        if (value != null) {
+            return value;
+        }
+
+        // Headers restored from the disk cache lose their case-insensitive map.
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the data parsed from the same response, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(String cacheKey, String parserKey, String validator) {
+        Entry entry = mEntries.get(makeKey(cacheKey, parserKey));
+        if (entry == null || !entry.mValidator.equals(validator)) {
+            ++mMissCount;
+            return null;
+        }
+
+        ++mHitCount;
+        return (T) entry.mValue;
+    }
+
+    public synchronized void put(
+            String cacheKey, String parserKey, String validator, Object value, int size) {
+
+        String key = makeKey(cacheKey, parserKey);
+        if (value == null || size > mMaxBytes / 8) {
+            removeKey(key);
+            return;
+        }
+
+        Entry previous = mEntries.put(key, new Entry(validator, value, size));
+        if (previous != null) {
+            mSize -= previous.mSize;
+        }
+
+        mSize += size;
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxBytes && iterator.hasNext()) {
+            mSize -= iterator.next().getValue().mSize;
+            iterator.remove();
+            ++mEvictionCount;
+        }
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private void removeKey(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mSize -= entry.mSize;
+        }
+    }
+
+    private static String makeKey(String cacheKey, String parserKey) {
+        return parserKey + '\n' + cacheKey;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.cache;
+
+import com.android.volley.Cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MemoryCache} in front of a disk {@link Cache}. Disk hits are promoted
+ * into memory, writes go to both tiers.
+ */
+public class TwoTierCache implements Cache {
+
+    private final MemoryCache mMemoryCache;
+    private final Cache mDiskCache;
+    private final AtomicLong mMemoryHits = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private volatile long mEvictionBase;
+
+
+    public TwoTierCache(MemoryCache memoryCache, Cache diskCache) {
+        mMemoryCache = memoryCache;
+        mDiskCache = diskCache;
+    }
+
+    @Override
+    public Entry get(String key) {
+        Entry entry = mMemoryCache.get(key);
+        if (entry != null) {
+            mMemoryHits.incrementAndGet();
+            return entry;
+        }
+
+        entry = mDiskCache.get(key);
+        if (entry == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        mDiskHits.incrementAndGet();
+        mMemoryCache.put(key, entry);
+        return entry;
+    }
+
+    @Override
+    public void put(String key, Entry entry) {
+        mMemoryCache.put(key, entry);
+        mDiskCache.put(key, entry);
+    }
+
+    @Override
+    public void initialize() {
+        mDiskCache.initialize();
+    }
+
+    @Override
+    public void invalidate(String key, boolean fullExpire) {
+        mMemoryCache.invalidate(key, fullExpire);
+        mDiskCache.invalidate(key, fullExpire);
+    }
+
+    @Override
+    public void remove(String key) {
+        mMemoryCache.remove(key);
+        mDiskCache.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        mMemoryCache.clear();
+        mDiskCache.clear();
+    }
+
+    public MemoryCache getMemoryCache() {
+        return mMemoryCache;
+    }
+
+    public Cache getDiskCache() {
+        return mDiskCache;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(mMemoryHits.get(), mDiskHits.get(), mMisses.get(),
+                mMemoryCache.getEvictionCount() - mEvictionBase, mMemoryCache.size());
+    }
+
+    public void resetStats() {
+        mMemoryHits.set(0);
+        mDiskHits.set(0);
+        mMisses.set(0);
+        mEvictionBase = mMemoryCache.getEvictionCount();
+    }
+}
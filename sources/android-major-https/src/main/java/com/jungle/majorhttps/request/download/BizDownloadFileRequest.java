@@ -19,31 +19,132 @@
 package com.jungle.majorhttps.request.download;
 
 import android.text.TextUtils;
+import com.android.volley.AuthFailureError;
 import com.android.volley.NetworkResponse;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
+import com.jungle.majorhttps.network.BufferPool;
+import com.jungle.majorhttps.network.CommonError;
 import com.jungle.majorhttps.request.base.BizBaseRequest;
 import com.jungle.majorhttps.request.base.BizBaseResponse;
+import com.jungle.majorhttps.request.base.BizParseError;
 import com.jungle.majorhttps.request.base.BizRequestListener;
+import com.jungle.majorhttps.request.base.ProgressReporter;
+import com.jungle.majorhttps.request.base.StreamingBodyHandler;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Map;
 
-public class BizDownloadFileRequest extends BizBaseRequest<String> {
+/**
+ * Streams the response body to disk, heap use does not depend on the file size.
+ *
+ * By default the body goes to a temp file next to the target, which is renamed over
+ * the target once the whole body is on disk. A resumable request keeps the partial data
+ * and a {@link DownloadState} instead, and continues with a Range request validated by
+ * If-Range. A segment request downloads one byte range of a segmented download into
+ * the shared, preallocated data file.
+ */
+public class BizDownloadFileRequest extends BizBaseRequest<String> implements StreamingBodyHandler {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_FILE_SUFFIX = ".download";
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
 
     private String mFilePath;
+    private boolean mResumable;
+    private DownloadState mState;
+    private int mSegment = -1;
+    private long mRequestedPosition;
+    private boolean mStreamed;
+    private VolleyError mWriteError;
 
 
     public BizDownloadFileRequest(
             int seqId, int method, String url, Map<String, ?> params, Map<String, String> headers,
             String filePath, BizRequestListener<String> listener) {
 
+        this(seqId, method, url, params, headers, filePath, false, listener);
+    }
+
+    public BizDownloadFileRequest(
+            int seqId, int method, String url, Map<String, ?> params, Map<String, String> headers,
+            String filePath, boolean resumable, BizRequestListener<String> listener) {
+
         super(seqId, method, url, params, headers, listener);
         mFilePath = filePath;
+        mResumable = resumable;
+
+        // The body goes to the file, there is nothing left to cache.
+        setShouldCache(false);
+    }
+
+    /**
+     * Downloads segment `segment` of `state`.
+     */
+    public BizDownloadFileRequest(
+            int seqId, Map<String, String> headers, String filePath,
+            DownloadState state, int segment, BizRequestListener<String> listener) {
+
+        this(seqId, Method.GET, state.getUrl(), null, headers, filePath, true, listener);
+        mState = state;
+        mSegment = segment;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() throws AuthFailureError {
+        Map<String, String> headers = super.getHeaders();
+        if (mSegment >= 0) {
+            addRange(headers, mState.getPosition(mSegment),
+                    mState.getSegmentEnd(mSegment), mState.getValidator());
+            return headers;
+        }
+
+        if (!mResumable || TextUtils.isEmpty(mFilePath)) {
+            return headers;
+        }
+
+        // Every attempt continues from what the previous ones left on disk.
+        mRequestedPosition = 0;
+        mState = DownloadState.load(mFilePath, getOriginalUrl());
+        if (mState != null && mState.getSegmentCount() == 1 && mState.getValidator() != null) {
+            long position = mState.getPosition(0);
+            if (position > 0 && position <= mState.getDataFile().length()) {
+                mRequestedPosition = position;
+                addRange(headers, position, mState.getSegmentEnd(0), mState.getValidator());
+            }
+        }
+
+        return headers;
+    }
+
+    @Override
+    public void onResponseBody(InputStream in, Map<String, String> headers) throws IOException {
+        mStreamed = true;
+        mWriteError = null;
+        if (TextUtils.isEmpty(mFilePath)) {
+            return;
+        }
+
+        if (mSegment >= 0) {
+            saveSegment(in, headers);
+        } else if (mResumable) {
+            saveResumable(in, headers);
+        } else {
+            saveToFile(in, parseContentLength(headers));
+        }
     }
 
     @Override
@@ -52,45 +153,338 @@ public class BizDownloadFileRequest extends BizBaseRequest<String> {
             return Response.error(new VolleyError("Download file path must not be null!"));
         }
 
-        File file = new File(mFilePath);
+        if (!mStreamed) {
+            // The network did not stream the body, so it is already in memory.
+            try {
+                onResponseBody(new ByteArrayInputStream(
+                        response.data != null ? response.data : new byte[0]), response.headers);
+            } catch (IOException e) {
+                mWriteError = new VolleyError(e.getMessage());
+            }
+        }
+
+        if (mWriteError != null) {
+            return Response.error(mWriteError);
+        }
+
+        return super.parseNetworkResponse(response);
+    }
+
+    @Override
+    protected VolleyError parseNetworkError(VolleyError volleyError) {
+        // The saved position is beyond the entity, start over next time.
+        if (mSegment < 0 && mResumable && volleyError.networkResponse != null
+                && volleyError.networkResponse.statusCode == HTTP_RANGE_NOT_SATISFIABLE) {
+            DownloadState.delete(mFilePath);
+        }
+
+        return super.parseNetworkError(volleyError);
+    }
+
+    @Override
+    protected String parseResponseContent(NetworkResponse response) {
+        return mFilePath;
+    }
+
+    private static void addRange(
+            Map<String, String> headers, long position, long end, String validator) {
+
+        headers.put("Range", "bytes=" + position + "-"
+                + (end != DownloadState.UNKNOWN_END ? String.valueOf(end) : ""));
+        if (validator != null) {
+            headers.put("If-Range", validator);
+        }
+    }
+
+    /**
+     * @return the first byte of a "Content-Range: bytes first-last/length" header, or -1.
+     */
+    private static long parseRangeStart(Map<String, String> headers) {
+        String contentRange = headers != null ? headers.get("Content-Range") : null;
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+
+        int dash = contentRange.indexOf('-');
+        try {
+            return dash > 0 ? Long.parseLong(contentRange.substring(6, dash).trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long parseContentLength(Map<String, String> headers) {
+        String contentLength = headers != null ? headers.get("Content-Length") : null;
         try {
-            if (!file.exists()) {
-                file.getParentFile().mkdirs();
-                file.createNewFile();
+            return contentLength != null ? Long.parseLong(contentLength.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void saveSegment(InputStream in, Map<String, String> headers) throws IOException {
+        long position = mState.getPosition(mSegment);
+        if (parseRangeStart(headers) != position) {
+            // If-Range did not match, the entity changed since the download started.
+            mWriteError = new BizParseError(CommonError.DOWNLOAD_CHANGED,
+                    "Download changed on the server: " + getOriginalUrl());
+            return;
+        }
+
+        long end = mState.getSegmentEnd(mSegment);
+        position = writeRange(in, mState, mSegment, position, end);
+        if (mWriteError == null && position <= end) {
+            throw new IOException("Segment " + mSegment + " ended early.");
+        }
+    }
+
+    private void saveResumable(InputStream in, Map<String, String> headers) throws IOException {
+        DownloadState state = mState;
+        long position = mRequestedPosition;
+        if (position == 0 || parseRangeStart(headers) != position) {
+            // A full body: nothing saved yet, or the server ignored the range.
+            long contentLength = parseContentLength(headers);
+            if (state == null) {
+                state = DownloadState.create(mFilePath, getOriginalUrl(), headers, contentLength, 1);
+            } else {
+                state.restart(headers, contentLength);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.error(new VolleyError(e.getMessage()));
+
+            position = 0;
+            if (!truncate(state.getDataFile())) {
+                return;
+            }
+
+            mState = state;
+        }
+
+        ProgressReporter progress = getDownloadProgress();
+        if (progress != null) {
+            progress.start(position, state.getContentLength());
+        }
+
+        long end = state.getSegmentEnd(0);
+        position = writeRange(in, state, 0, position, end);
+        if (mWriteError != null) {
+            return;
+        }
+
+        if (end != DownloadState.UNKNOWN_END && position <= end) {
+            throw new IOException("Download ended early.");
         }
 
-        boolean success = false;
-        BufferedOutputStream stream = null;
+        if (commit(state.getDataFile(), new File(mFilePath))) {
+            DownloadState.getStateFile(mFilePath).delete();
+            if (progress != null) {
+                progress.finish();
+            }
+        }
+    }
+
+    private boolean truncate(File dataFile) {
         try {
-            stream = new BufferedOutputStream(new FileOutputStream(mFilePath));
-            stream.write(response.data);
-            stream.flush();
-            success = true;
-        } catch (FileNotFoundException e) {
+            File dir = dataFile.getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                dir.mkdirs();
+            }
+
+            new FileOutputStream(dataFile).close();
+            return true;
+        } catch (IOException e) {
             e.printStackTrace();
-            return Response.error(new VolleyError(e.getMessage()));
+            mWriteError = new VolleyError(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the body at `position` of the data file, never past `end` unless it is unknown.
+     * Read errors are thrown, file errors are kept in `mWriteError`.
+     *
+     * @return the position after the last written byte.
+     */
+    private long writeRange(
+            InputStream in, DownloadState state, int segment, long position, long end)
+            throws IOException {
+
+        FileChannel channel;
+        try {
+            channel = new RandomAccessFile(state.getDataFile(), "rw").getChannel();
         } catch (IOException e) {
             e.printStackTrace();
-            return Response.error(new VolleyError(e.getMessage()));
-        } finally {
-            if (stream != null) {
+            mWriteError = new VolleyError(e.getMessage());
+            return position;
+        }
+
+        ProgressReporter progress = getDownloadProgress();
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(COPY_BUFFER_SIZE);
+        try {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            int count;
+            while ((end == DownloadState.UNKNOWN_END || position <= end)
+                    && (count = in.read(buffer)) != -1) {
+
+                if (isCanceled()) {
+                    throw new IOException("Download canceled.");
+                }
+
+                if (end != DownloadState.UNKNOWN_END) {
+                    count = (int) Math.min(count, end - position + 1);
+                }
+
+                byteBuffer.clear();
+                byteBuffer.limit(count);
                 try {
-                    stream.close();
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+
+                    if (state.setPosition(segment, position)) {
+                        channel.force(false);
+                        state.savePosition(segment, position);
+                    }
+
+                    if (progress != null) {
+                        progress.add(count);
+                    }
                 } catch (IOException e) {
                     e.printStackTrace();
+                    mWriteError = new VolleyError(e.getMessage());
+                    return position;
                 }
             }
+
+            return position;
+        } finally {
+            pool.release(buffer);
+
+            // Keep what was written for the next attempt, also after a read error.
+            // Without a successful force the last saved position stays.
+            try {
+                channel.force(false);
+                state.savePosition(segment, position);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            close(channel);
         }
+    }
 
-        return super.parseNetworkResponse(response);
+    /**
+     * Read errors are thrown and fail the attempt like any network error,
+     * file errors are kept in `mWriteError` and fail the request.
+     */
+    private void saveToFile(InputStream in, long contentLength) throws IOException {
+        File target = new File(mFilePath);
+        File temp;
+        FileChannel channel;
+        try {
+            File dir = target.getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                dir.mkdirs();
+            }
+
+            // Unique per attempt, so a hedged or retried attempt never shares it.
+            temp = File.createTempFile(target.getName() + ".", TEMP_FILE_SUFFIX, dir);
+            channel = new FileOutputStream(temp).getChannel();
+        } catch (IOException e) {
+            e.printStackTrace();
+            mWriteError = new VolleyError(e.getMessage());
+            return;
+        }
+
+        ProgressReporter progress = getDownloadProgress();
+        if (progress != null) {
+            progress.start(0, contentLength);
+        }
+
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(COPY_BUFFER_SIZE);
+        boolean committed = false;
+        try {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                if (isCanceled()) {
+                    throw new IOException("Download canceled.");
+                }
+
+                byteBuffer.clear();
+                byteBuffer.limit(count);
+                if (!write(channel, byteBuffer)) {
+                    return;
+                }
+
+                if (progress != null) {
+                    progress.add(count);
+                }
+            }
+
+            if (sync(channel)) {
+                committed = commit(temp, target);
+            }
+
+            if (committed && progress != null) {
+                progress.finish();
+            }
+        } finally {
+            pool.release(buffer);
+            close(channel);
+            if (!committed) {
+                temp.delete();
+            }
+        }
     }
 
-    @Override
-    protected String parseResponseContent(NetworkResponse response) {
-        return mFilePath;
+    private boolean write(FileChannel channel, ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            mWriteError = new VolleyError(e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean sync(FileChannel channel) {
+        try {
+            // On disk before the rename, so the target is never a partial file.
+            channel.force(false);
+            channel.close();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            mWriteError = new VolleyError(e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean commit(File source, File target) {
+        if (source.renameTo(target)) {
+            return true;
+        }
+
+        // Some file systems refuse to replace an existing file.
+        target.delete();
+        if (source.renameTo(target)) {
+            return true;
+        }
+
+        mWriteError = new VolleyError("Cannot move download to " + target);
+        return false;
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -0,0 +1,316 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.download;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Progress of a resumable download, persisted next to the target as
+ * `<target>.download.state` while the data goes to `<target>.download`.
+ *
+ * The byte range `[start, end]` of each segment is fixed when the download starts,
+ * `position` is the next byte to write. A single segment with an unknown end is used
+ * when the length is unknown. Positions are only saved after the bytes before them
+ * were forced to disk, so a reloaded state never claims data that is not in the file.
+ */
+public class DownloadState {
+
+    public static final String DATA_FILE_SUFFIX = ".download";
+    public static final String STATE_FILE_SUFFIX = ".download.state";
+    public static final long UNKNOWN_END = -1;
+
+    private static final int MAGIC = 0x4D484453;
+    private static final int VERSION = 1;
+    private static final long SAVE_INTERVAL_MS = 1000;
+
+
+    public static File getDataFile(String filePath) {
+        return new File(filePath + DATA_FILE_SUFFIX);
+    }
+
+    public static File getStateFile(String filePath) {
+        return new File(filePath + STATE_FILE_SUFFIX);
+    }
+
+    /**
+     * @return the saved state, or null if there is none or it cannot be used.
+     */
+    public static DownloadState load(String filePath, String url) {
+        File stateFile = getStateFile(filePath);
+        if (!stateFile.exists() || !getDataFile(filePath).exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            DownloadState state = new DownloadState(filePath, in.readUTF());
+            state.mETag = in.readUTF();
+            state.mLastModified = in.readUTF();
+            state.mContentLength = in.readLong();
+
+            int count = in.readInt();
+            if (count <= 0) {
+                return null;
+            }
+
+            state.initSegments(count);
+            for (int i = 0; i < count; ++i) {
+                state.mStarts[i] = in.readLong();
+                state.mEnds[i] = in.readLong();
+                state.mPositions[i] = in.readLong();
+                state.mSavedPositions[i] = state.mPositions[i];
+            }
+
+            return state.mUrl.equals(url) ? state : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits `contentLength` bytes into `segmentCount` ranges, or one open range
+     * if the length is unknown.
+     */
+    public static DownloadState create(
+            String filePath, String url, Map<String, String> headers,
+            long contentLength, int segmentCount) {
+
+        DownloadState state = new DownloadState(filePath, url);
+        state.setValidators(headers);
+        state.mContentLength = contentLength;
+
+        if (contentLength < 0) {
+            segmentCount = 1;
+        }
+
+        segmentCount = Math.max(1, segmentCount);
+        state.initSegments(segmentCount);
+        long segmentSize = contentLength / segmentCount;
+        for (int i = 0; i < segmentCount; ++i) {
+            state.mStarts[i] = i * segmentSize;
+            state.mPositions[i] = state.mStarts[i];
+            state.mSavedPositions[i] = state.mStarts[i];
+            state.mEnds[i] = contentLength < 0 ? UNKNOWN_END
+                    : i == segmentCount - 1 ? contentLength - 1 : (i + 1) * segmentSize - 1;
+        }
+
+        return state;
+    }
+
+
+    private final String mFilePath;
+    private final String mUrl;
+    private String mETag = "";
+    private String mLastModified = "";
+    private long mContentLength = -1;
+    private long[] mStarts;
+    private long[] mEnds;
+    private long[] mPositions;
+    /**
+     * Positions whose data is on disk, the only ones written to the state file.
+     */
+    private long[] mSavedPositions;
+    private long mLastSaveTime;
+    private boolean mDiscarded;
+
+
+    private DownloadState(String filePath, String url) {
+        mFilePath = filePath;
+        mUrl = url;
+    }
+
+    private void initSegments(int count) {
+        mStarts = new long[count];
+        mEnds = new long[count];
+        mPositions = new long[count];
+        mSavedPositions = new long[count];
+    }
+
+    private void setValidators(Map<String, String> headers) {
+        String eTag = headers != null ? headers.get("ETag") : null;
+        String lastModified = headers != null ? headers.get("Last-Modified") : null;
+
+        // If-Range needs a strong validator, a weak ETag never matches.
+        mETag = eTag != null && !eTag.startsWith("W/") ? eTag : "";
+        mLastModified = lastModified != null ? lastModified : "";
+    }
+
+    /**
+     * @return the value for If-Range, or null if the entity cannot be validated.
+     */
+    public synchronized String getValidator() {
+        if (!TextUtils.isEmpty(mETag)) {
+            return mETag;
+        }
+
+        return !TextUtils.isEmpty(mLastModified) ? mLastModified : null;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public File getDataFile() {
+        return getDataFile(mFilePath);
+    }
+
+    public synchronized long getContentLength() {
+        return mContentLength;
+    }
+
+    public synchronized int getSegmentCount() {
+        return mStarts.length;
+    }
+
+    public synchronized long getSegmentEnd(int segment) {
+        return mEnds[segment];
+    }
+
+    public synchronized long getPosition(int segment) {
+        return mPositions[segment];
+    }
+
+    public synchronized boolean isSegmentComplete(int segment) {
+        return mEnds[segment] != UNKNOWN_END && mPositions[segment] > mEnds[segment];
+    }
+
+    public synchronized long getDownloadedBytes() {
+        long downloaded = 0;
+        for (int i = 0; i < mStarts.length; ++i) {
+            downloaded += mPositions[i] - mStarts[i];
+        }
+
+        return downloaded;
+    }
+
+    /**
+     * Starts over with a fresh entity, used when the server answered a single open
+     * range with the whole body.
+     */
+    public synchronized void restart(Map<String, String> headers, long contentLength) {
+        setValidators(headers);
+        mContentLength = contentLength;
+        initSegments(1);
+        mEnds[0] = contentLength >= 0 ? contentLength - 1 : UNKNOWN_END;
+    }
+
+    /**
+     * Records written bytes.
+     *
+     * @return true at most once per second, when the data should be forced to disk
+     * and {@link #savePosition(int, long)} called.
+     */
+    public synchronized boolean setPosition(int segment, long position) {
+        mPositions[segment] = position;
+        long now = SystemClock.elapsedRealtime();
+        if (now - mLastSaveTime < SAVE_INTERVAL_MS) {
+            return false;
+        }
+
+        mLastSaveTime = now;
+        return true;
+    }
+
+    /**
+     * Saves the state, only call it once the data before `position` was forced to disk.
+     */
+    public void savePosition(int segment, long position) throws IOException {
+        synchronized (this) {
+            mPositions[segment] = position;
+            mSavedPositions[segment] = position;
+        }
+
+        save();
+    }
+
+    public synchronized void save() throws IOException {
+        if (mDiscarded) {
+            return;
+        }
+
+        File stateFile = getStateFile(mFilePath);
+        File temp = new File(stateFile.getPath() + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(temp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mUrl);
+            out.writeUTF(mETag);
+            out.writeUTF(mLastModified);
+            out.writeLong(mContentLength);
+            out.writeInt(mStarts.length);
+            for (int i = 0; i < mStarts.length; ++i) {
+                out.writeLong(mStarts[i]);
+                out.writeLong(mEnds[i]);
+                out.writeLong(mSavedPositions[i]);
+            }
+
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(stateFile)) {
+            throw new IOException("Cannot save download state " + stateFile);
+        }
+    }
+
+    /**
+     * Deletes the saved state and data. Attempts still running can no longer save it.
+     */
+    public synchronized void discard() {
+        mDiscarded = true;
+        delete(mFilePath);
+    }
+
+    /**
+     * Removes the state and the partial data.
+     */
+    public static void delete(String filePath) {
+        getStateFile(filePath).delete();
+        getDataFile(filePath).delete();
+    }
+}
@@ -19,20 +19,54 @@
 package com.jungle.majorhttps.request.queue;
 
 import android.content.Context;
+import com.android.volley.Cache;
+import com.android.volley.Network;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.jungle.majorhttps.request.cache.MappedDiskCache;
+import com.jungle.majorhttps.request.cache.MemoryCache;
+import com.jungle.majorhttps.request.cache.TwoTierCache;
+
+import java.io.File;
 
 public class HttpRequestQueueFactory implements RequestQueueFactory {
 
+    private static final String DEFAULT_CACHE_DIR = "volley";
+
+
+    /**
+     * A {@link MemoryCache} in front of the given disk cache, on top of the given network.
+     * Without a disk cache it is the same as Volley.newRequestQueue().
+     */
+    static RequestQueue newRequestQueue(Context context, Network network, Cache diskCache) {
+        if (diskCache == null) {
+            diskCache = new DiskBasedCache(new File(context.getCacheDir(), DEFAULT_CACHE_DIR));
+        }
+
+        Cache cache = new TwoTierCache(new MemoryCache(), diskCache);
+        RequestQueue queue = new RequestQueue(cache, network);
+        queue.start();
+        return queue;
+    }
+
+
     private Context mContext;
+    private Cache mDiskCache;
 
 
     public HttpRequestQueueFactory(Context context) {
         mContext = context;
     }
 
+    /**
+     * Replace Volley's disk cache, e.g. with a {@link MappedDiskCache}.
+     */
+    public void setDiskCache(Cache diskCache) {
+        mDiskCache = diskCache;
+    }
+
     @Override
     public RequestQueue createRequestQueue() {
-        return Volley.newRequestQueue(mContext);
+        return newRequestQueue(mContext, new MajorNetwork(), mDiskCache);
     }
 }
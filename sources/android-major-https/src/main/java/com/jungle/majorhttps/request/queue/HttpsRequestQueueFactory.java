@@ -20,8 +20,8 @@ package com.jungle.majorhttps.request.queue;
 
 import android.content.Context;
 import android.support.annotation.RawRes;
+import com.android.volley.Cache;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
 import com.jungle.majorhttps.network.HttpsUtils;
 
 import javax.net.ssl.HostnameVerifier;
@@ -53,6 +53,7 @@ public class HttpsRequestQueueFactory implements RequestQueueFactory {
 
     private Context mContext;
     private HostnameVerifier mHostnameVerifier;
+    private Cache mDiskCache;
     private List<Certificate> mCertificateList = new ArrayList<>();
 
 
@@ -94,13 +95,20 @@ public class HttpsRequestQueueFactory implements RequestQueueFactory {
         mHostnameVerifier = hostnameVerifier;
     }
 
+    /**
+     * @see HttpRequestQueueFactory#setDiskCache(Cache)
+     */
+    public void setDiskCache(Cache diskCache) {
+        mDiskCache = diskCache;
+    }
+
     @Override
     public RequestQueue createRequestQueue() {
         if (mHostnameVerifier == null) {
             mHostnameVerifier = new HttpsUtils.DefaultHostnameVerifier();
         }
 
-        VolleyHttpsStack stack = null;
+        MajorNetwork network = null;
         if (!mCertificateList.isEmpty()) {
             Certificate[] certs = mCertificateList.toArray(new Certificate[mCertificateList.size()]);
             SSLContext sslContext = HttpsUtils.getSSLContext(
@@ -108,10 +116,14 @@ public class HttpsRequestQueueFactory implements RequestQueueFactory {
 
             if (sslContext != null) {
                 SSLSocketFactory factory = sslContext.getSocketFactory();
-                stack = new VolleyHttpsStack(null, factory, mHostnameVerifier);
+                network = new MajorNetwork(null, factory, mHostnameVerifier);
             }
         }
 
-        return Volley.newRequestQueue(mContext, stack);
+        if (network == null) {
+            network = new MajorNetwork();
+        }
+
+        return HttpRequestQueueFactory.newRequestQueue(mContext, network, mDiskCache);
     }
 }
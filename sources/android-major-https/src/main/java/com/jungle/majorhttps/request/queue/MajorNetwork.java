@@ -0,0 +1,886 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.queue;
+
+import android.os.SystemClock;
+import com.android.volley.AuthFailureError;
+import com.android.volley.Cache;
+import com.android.volley.Network;
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.Request;
+import com.android.volley.RetryPolicy;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HurlStack;
+import com.jungle.majorhttps.network.BufferPool;
+import com.jungle.majorhttps.network.ContentEncoding;
+import com.jungle.majorhttps.network.DeflatingOutputStream;
+import com.jungle.majorhttps.network.InflatingInputStream;
+import com.jungle.majorhttps.network.PooledByteArrayOutputStream;
+import com.jungle.majorhttps.request.base.BizBaseRequest;
+import com.jungle.majorhttps.request.base.ProgressReporter;
+import com.jungle.majorhttps.request.base.RequestBody;
+import com.jungle.majorhttps.request.base.RequestTiming;
+import com.jungle.majorhttps.request.base.StreamingBodyHandler;
+import org.brotli.dec.BrotliInputStream;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Volley {@link Network} on top of HttpURLConnection, replacing BasicNetwork and HurlStack.
+ *
+ * Owning the whole exchange lets it report every phase of an attempt to the
+ * {@link RequestTiming} of the request: DNS, connect, TLS, request write,
+ * first byte and body read.
+ */
+public class MajorNetwork implements Network {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    public static final String DEFAULT_ACCEPT_ENCODING = "gzip, deflate, br";
+
+    /**
+     * Smaller bodies stay buffered by HttpURLConnection, so a request on a stale
+     * pooled connection can still be replayed transparently.
+     */
+    private static final int FIXED_LENGTH_STREAMING_THRESHOLD = 64 * 1024;
+
+    /**
+     * Larger bodies are not allocated up front from the Content-Length alone, they grow
+     * in the pooled buffer as the data arrives.
+     */
+    private static final int MAX_PREALLOCATED_BODY = 256 * 1024;
+
+
+    private HurlStack.UrlRewriter mUrlRewriter;
+    private SSLSocketFactory mSslSocketFactory;
+    private HostnameVerifier mHostnameVerifier;
+    private BufferPool mBufferPool = BufferPool.getDefault();
+    /**
+     * Hosts that rejected a compressed body, with the strongest encoding still worth trying.
+     */
+    private Map<String, ContentEncoding> mBodyEncodingFallbacks = new ConcurrentHashMap<>();
+    private String mAcceptEncoding = DEFAULT_ACCEPT_ENCODING;
+    private AtomicLong mResponseWireBytes = new AtomicLong();
+    private AtomicLong mResponseBodyBytes = new AtomicLong();
+
+
+    public MajorNetwork() {
+        this(null, null, null);
+    }
+
+    public MajorNetwork(
+            HurlStack.UrlRewriter urlRewriter, SSLSocketFactory sslSocketFactory,
+            HostnameVerifier verifier) {
+
+        if (sslSocketFactory == null) {
+            sslSocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+
+        mUrlRewriter = urlRewriter;
+        mSslSocketFactory = new TimingSSLSocketFactory(sslSocketFactory);
+        mHostnameVerifier = verifier;
+    }
+
+    /**
+     * Encodings advertised in {@code Accept-Encoding} and decoded here, instead of relying on
+     * HttpURLConnection, whose transparent gzip differs between Android versions.
+     *
+     * @param acceptEncoding null to not advertise any, bodies are still decoded.
+     */
+    public void setAcceptEncoding(String acceptEncoding) {
+        mAcceptEncoding = acceptEncoding;
+    }
+
+    /**
+     * @return response body bytes received from the network, still encoded.
+     */
+    public long getResponseWireBytes() {
+        return mResponseWireBytes.get();
+    }
+
+    /**
+     * @return response body bytes after decoding, equal to the wire bytes without compression.
+     */
+    public long getResponseBodyBytes() {
+        return mResponseBodyBytes.get();
+    }
+
+    @Override
+    public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+        long requestStart = SystemClock.elapsedRealtime();
+        RequestTiming timing = request instanceof BizBaseRequest
+                ? ((BizBaseRequest<?>) request).getTiming() : null;
+
+        while (true) {
+            int statusCode = -1;
+            Map<String, String> responseHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            byte[] responseContents = null;
+
+            // The encoding the body was actually sent with, set by `openConnection`.
+            ContentEncoding[] bodyEncoding = {ContentEncoding.IDENTITY};
+
+            try {
+                HttpURLConnection connection = openConnection(request, timing, bodyEncoding);
+                statusCode = connection.getResponseCode();
+                if (statusCode == -1) {
+                    throw new IOException("Could not retrieve response code from HttpUrlConnection.");
+                }
+
+                if (statusCode == HTTP_UNSUPPORTED_MEDIA_TYPE
+                        && bodyEncoding[0] != ContentEncoding.IDENTITY) {
+                    // The server cannot decode the body, send it again with a weaker encoding.
+                    discardBody(connection, responseHeaders, timing);
+                    mBodyEncodingFallbacks.put(
+                            hostOf(request.getUrl()), bodyEncoding[0].getFallback());
+                    request.addMarker("body-encoding-fallback [" + bodyEncoding[0].getName() + "]");
+                    continue;
+                }
+
+                mark(timing, RequestTiming.Event.RESPONSE_HEADERS);
+                for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                    if (header.getKey() != null && !header.getValue().isEmpty()) {
+                        responseHeaders.put(header.getKey(), header.getValue().get(0));
+                    }
+                }
+
+                if (statusCode == HTTP_NOT_MODIFIED) {
+                    return notModified(request, responseHeaders, requestStart);
+                }
+
+                if (!hasResponseBody(request.getMethod(), statusCode)) {
+                    responseContents = new byte[0];
+                } else if (isSuccess(statusCode) && isStreaming(request)) {
+                    // Streaming handlers report their own progress.
+                    CountingInputStream body = openBody(connection, responseHeaders, null);
+                    try {
+                        ((StreamingBodyHandler) request).onResponseBody(body, responseHeaders);
+                    } finally {
+                        closeBody(body, timing);
+                    }
+
+                    responseContents = new byte[0];
+                } else {
+                    ProgressReporter progress = isSuccess(statusCode)
+                            ? getProgress(request, false) : null;
+
+                    CountingInputStream body = openBody(connection, responseHeaders, progress);
+                    try {
+                        responseContents = readBody(
+                                body, getContentLength(responseHeaders), progress);
+                    } finally {
+                        closeBody(body, timing);
+                    }
+                }
+
+                mark(timing, RequestTiming.Event.RESPONSE_BODY_END);
+
+                if (!isSuccess(statusCode)) {
+                    throw new IOException("Unexpected response code " + statusCode);
+                }
+
+                return new NetworkResponse(statusCode, responseContents, responseHeaders,
+                        false, SystemClock.elapsedRealtime() - requestStart);
+
+            } catch (SocketTimeoutException e) {
+                attemptRetryOnException("socket", request, new TimeoutError());
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("Bad URL " + request.getUrl(), e);
+            } catch (IOException e) {
+                if (statusCode == -1) {
+                    throw new NoConnectionError(e);
+                }
+
+                NetworkResponse networkResponse = new NetworkResponse(
+                        statusCode, responseContents, responseHeaders,
+                        false, SystemClock.elapsedRealtime() - requestStart);
+
+                if (responseContents == null) {
+                    // A 2xx whose body broke off is a network failure, not an HTTP status.
+                    throw new NetworkError(isSuccess(statusCode) ? null : networkResponse);
+                }
+
+                if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED
+                        || statusCode == HttpURLConnection.HTTP_FORBIDDEN) {
+                    attemptRetryOnException("auth", request, new AuthFailureError(networkResponse));
+                } else {
+                    throw new ServerError(networkResponse);
+                }
+            }
+        }
+    }
+
+    protected HttpURLConnection createConnection(URL url) throws IOException {
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private HttpURLConnection openConnection(
+            Request<?> request, RequestTiming timing, ContentEncoding[] bodyEncoding)
+            throws IOException, AuthFailureError {
+
+        String url = request.getUrl();
+        if (mUrlRewriter != null) {
+            String rewritten = mUrlRewriter.rewriteUrl(url);
+            if (rewritten == null) {
+                throw new IOException("URL blocked by rewriter: " + url);
+            }
+
+            url = rewritten;
+        }
+
+        URL parsedUrl = new URL(url);
+        if (timing != null) {
+            // Resolving ahead of the connection times DNS on its own, the connection
+            // then hits the resolver cache.
+            mark(timing, RequestTiming.Event.DNS_START);
+            InetAddress.getAllByName(parsedUrl.getHost());
+            mark(timing, RequestTiming.Event.DNS_END);
+        }
+
+        HttpURLConnection connection = createConnection(parsedUrl);
+        int timeoutMs = request.getTimeoutMs();
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+        connection.setUseCaches(false);
+        connection.setDoInput(true);
+
+        if ("https".equals(parsedUrl.getProtocol())) {
+            HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
+            httpsConnection.setSSLSocketFactory(mSslSocketFactory);
+            if (mHostnameVerifier != null) {
+                httpsConnection.setHostnameVerifier(mHostnameVerifier);
+            }
+        }
+
+        Map<String, String> headers = new HashMap<>(request.getHeaders());
+        addCacheHeaders(headers, request.getCacheEntry());
+        // Ranges of an encoded body are ranges of the encoded bytes, so they stay unencoded.
+        // HEAD has no body to decode, its Content-Length must describe the identity bytes.
+        if (mAcceptEncoding != null && !containsHeader(headers, "Accept-Encoding")
+                && !containsHeader(headers, "Range")
+                && request.getMethod() != Request.Method.HEAD) {
+            headers.put("Accept-Encoding", mAcceptEncoding);
+        }
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.addRequestProperty(header.getKey(), header.getValue());
+        }
+
+        RequestBody body = setConnectionParametersForRequest(connection, request);
+        ProgressReporter progress = getProgress(request, true);
+        PooledByteArrayOutputStream buffered = null;
+        long length = 0;
+        try {
+            if (body != null) {
+                length = body.getContentLength();
+                if (length < 0) {
+                    // Serialize into a pooled buffer first, the length decides how it is sent.
+                    buffered = new PooledByteArrayOutputStream(mBufferPool, BUFFER_SIZE);
+                    body.writeTo(buffered);
+                    length = buffered.size();
+                }
+
+                ContentEncoding encoding = getBodyEncoding(request);
+                if (encoding != ContentEncoding.IDENTITY
+                        && length >= ((BizBaseRequest<?>) request).getMinCompressSize()) {
+                    // Compressed up front, the compressed length decides how it is sent.
+                    PooledByteArrayOutputStream compressed = compress(body, buffered, encoding);
+                    if (buffered != null) {
+                        buffered.release();
+                    }
+
+                    buffered = compressed;
+                    length = compressed.size();
+                    connection.setRequestProperty("Content-Encoding", encoding.getName());
+                    bodyEncoding[0] = encoding;
+                }
+
+                // A buffered body would report the copy into the buffer, not the upload.
+                if ((length >= FIXED_LENGTH_STREAMING_THRESHOLD || progress != null)
+                        && length <= Integer.MAX_VALUE) {
+                    connection.setFixedLengthStreamingMode((int) length);
+                }
+            }
+
+            connect(connection, timing);
+
+            if (body != null) {
+                mark(timing, RequestTiming.Event.REQUEST_WRITE_START);
+                OutputStream out = connection.getOutputStream();
+                if (progress != null) {
+                    progress.start(0, length);
+                    out = new ProgressOutputStream(out, progress);
+                }
+
+                try {
+                    if (buffered != null) {
+                        buffered.writeTo(out);
+                    } else {
+                        body.writeTo(out);
+                    }
+                } finally {
+                    out.close();
+                }
+
+                if (progress != null) {
+                    progress.finish();
+                }
+
+                mark(timing, RequestTiming.Event.REQUEST_WRITE_END);
+            }
+        } finally {
+            if (buffered != null) {
+                buffered.release();
+            }
+        }
+
+        return connection;
+    }
+
+    private ContentEncoding getBodyEncoding(Request<?> request) {
+        if (!(request instanceof BizBaseRequest)) {
+            return ContentEncoding.IDENTITY;
+        }
+
+        ContentEncoding encoding = ((BizBaseRequest<?>) request).getBodyEncoding();
+        if (encoding == ContentEncoding.IDENTITY || mBodyEncodingFallbacks.isEmpty()) {
+            return encoding;
+        }
+
+        ContentEncoding fallback = mBodyEncodingFallbacks.get(hostOf(request.getUrl()));
+        return fallback != null && fallback.ordinal() < encoding.ordinal() ? fallback : encoding;
+    }
+
+    private PooledByteArrayOutputStream compress(
+            RequestBody body, PooledByteArrayOutputStream buffered, ContentEncoding encoding)
+            throws IOException {
+
+        PooledByteArrayOutputStream compressed =
+                new PooledByteArrayOutputStream(mBufferPool, BUFFER_SIZE);
+        DeflatingOutputStream out = new DeflatingOutputStream(compressed, encoding);
+        try {
+            if (buffered != null) {
+                buffered.writeTo(out);
+            } else {
+                body.writeTo(out);
+            }
+
+            out.finish();
+            return compressed;
+        } catch (IOException e) {
+            out.release();
+            compressed.release();
+            throw e;
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = new URL(url).getHost();
+            return host != null ? host : "";
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    private static void connect(HttpURLConnection connection, RequestTiming timing)
+            throws IOException {
+
+        if (timing == null) {
+            connection.connect();
+            return;
+        }
+
+        mark(timing, RequestTiming.Event.CONNECT_START);
+        TimingSSLSocketFactory.setCurrentTiming(timing);
+        try {
+            connection.connect();
+        } finally {
+            TimingSSLSocketFactory.setCurrentTiming(null);
+        }
+
+        // The handshake and hostname verification finish inside connect().
+        if (timing.getTime(RequestTiming.Event.SECURE_CONNECT_START) != 0) {
+            mark(timing, RequestTiming.Event.SECURE_CONNECT_END);
+        }
+
+        mark(timing, RequestTiming.Event.CONNECT_END);
+    }
+
+    /**
+     * @return the body to write once connected, or null.
+     */
+    @SuppressWarnings("deprecation")
+    private static RequestBody setConnectionParametersForRequest(
+            HttpURLConnection connection, Request<?> request) throws IOException, AuthFailureError {
+
+        switch (request.getMethod()) {
+            case Request.Method.DEPRECATED_GET_OR_POST:
+                byte[] postBody = request.getPostBody();
+                if (postBody == null) {
+                    return null;
+                }
+
+                connection.setRequestMethod("POST");
+                return prepareBody(connection,
+                        RequestBody.create(null, postBody), request.getPostBodyContentType());
+            case Request.Method.GET:
+                connection.setRequestMethod("GET");
+                return null;
+            case Request.Method.DELETE:
+                connection.setRequestMethod("DELETE");
+                return null;
+            case Request.Method.POST:
+                connection.setRequestMethod("POST");
+                return prepareBody(connection, request);
+            case Request.Method.PUT:
+                connection.setRequestMethod("PUT");
+                return prepareBody(connection, request);
+            case Request.Method.HEAD:
+                connection.setRequestMethod("HEAD");
+                return null;
+            case Request.Method.OPTIONS:
+                connection.setRequestMethod("OPTIONS");
+                return null;
+            case Request.Method.TRACE:
+                connection.setRequestMethod("TRACE");
+                return null;
+            case Request.Method.PATCH:
+                connection.setRequestMethod("PATCH");
+                return prepareBody(connection, request);
+            default:
+                throw new IllegalStateException("Unknown method type.");
+        }
+    }
+
+    private static RequestBody prepareBody(HttpURLConnection connection, Request<?> request)
+            throws AuthFailureError {
+
+        RequestBody body = request instanceof BizBaseRequest
+                ? ((BizBaseRequest<?>) request).getRequestBody() : null;
+
+        if (body == null) {
+            byte[] content = request.getBody();
+            if (content == null) {
+                return null;
+            }
+
+            body = RequestBody.create(null, content);
+        }
+
+        return prepareBody(connection, body, request.getBodyContentType());
+    }
+
+    private static RequestBody prepareBody(
+            HttpURLConnection connection, RequestBody body, String defaultContentType) {
+
+        String contentType = body.getContentType();
+        connection.setDoOutput(true);
+        connection.addRequestProperty("Content-Type",
+                contentType != null ? contentType : defaultContentType);
+        return body;
+    }
+
+    private static void addCacheHeaders(Map<String, String> headers, Cache.Entry entry) {
+        if (entry == null) {
+            return;
+        }
+
+        if (entry.etag != null) {
+            headers.put("If-None-Match", entry.etag);
+        }
+
+        if (entry.lastModified > 0) {
+            SimpleDateFormat format = new SimpleDateFormat(
+                    "EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            headers.put("If-Modified-Since", format.format(new Date(entry.lastModified)));
+        }
+    }
+
+    private static NetworkResponse notModified(
+            Request<?> request, Map<String, String> responseHeaders, long requestStart) {
+
+        long networkTimeMs = SystemClock.elapsedRealtime() - requestStart;
+        Cache.Entry entry = request.getCacheEntry();
+        if (entry == null) {
+            return new NetworkResponse(HTTP_NOT_MODIFIED, null, responseHeaders, true, networkTimeMs);
+        }
+
+        // Fresh headers override the cached ones.
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(entry.responseHeaders);
+        headers.putAll(responseHeaders);
+        return new NetworkResponse(HTTP_NOT_MODIFIED, entry.data, headers, true, networkTimeMs);
+    }
+
+    private static boolean hasResponseBody(int requestMethod, int statusCode) {
+        return requestMethod != Request.Method.HEAD
+                && !(statusCode >= 100 && statusCode < 200)
+                && statusCode != HttpURLConnection.HTTP_NO_CONTENT
+                && statusCode != HTTP_NOT_MODIFIED;
+    }
+
+    private static boolean isSuccess(int statusCode) {
+        return statusCode >= 200 && statusCode <= 299;
+    }
+
+    private static boolean isStreaming(Request<?> request) {
+        return request instanceof StreamingBodyHandler
+                && ((StreamingBodyHandler) request).isStreaming();
+    }
+
+    private static ProgressReporter getProgress(Request<?> request, boolean upload) {
+        if (!(request instanceof BizBaseRequest)) {
+            return null;
+        }
+
+        BizBaseRequest<?> bizRequest = (BizBaseRequest<?>) request;
+        return upload ? bizRequest.getUploadProgress() : bizRequest.getDownloadProgress();
+    }
+
+    /**
+     * @return the decoded response body. Decoded bodies lose their Content-Encoding and
+     * Content-Length headers, which only described the encoded bytes.
+     */
+    private static CountingInputStream openBody(
+            HttpURLConnection connection, Map<String, String> responseHeaders,
+            ProgressReporter progress) throws IOException {
+
+        InputStream raw;
+        try {
+            raw = connection.getInputStream();
+        } catch (IOException e) {
+            raw = connection.getErrorStream();
+        }
+
+        if (raw == null) {
+            raw = new ByteArrayInputStream(new byte[0]);
+        }
+
+        CountingInputStream wire = new CountingInputStream(raw, null);
+        InputStream in = wire;
+        if (progress != null) {
+            // Progress follows the bytes on the wire, which the Content-Length counts.
+            long contentLength = getContentLength(responseHeaders);
+            progress.start(0, contentLength > 0 ? contentLength : -1);
+            in = new ProgressInputStream(in, progress);
+        }
+
+        InputStream decoded = decode(in, responseHeaders.get("Content-Encoding"));
+        if (decoded != in) {
+            responseHeaders.remove("Content-Encoding");
+            responseHeaders.remove("Content-Length");
+        }
+
+        return new CountingInputStream(decoded, wire);
+    }
+
+    private static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return in;
+        }
+
+        String encoding = contentEncoding.trim().toLowerCase(Locale.US);
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+            return new InflatingInputStream(in, ContentEncoding.GZIP);
+        }
+
+        if ("deflate".equals(encoding)) {
+            return new InflatingInputStream(in, ContentEncoding.DEFLATE);
+        }
+
+        if ("br".equals(encoding)) {
+            return new BrotliInputStream(in);
+        }
+
+        // identity, or an encoding the caller asked for and decodes itself.
+        return in;
+    }
+
+    private void closeBody(CountingInputStream body, RequestTiming timing) throws IOException {
+        // Fully read and closed, the connection goes back to the pool.
+        try {
+            body.close();
+        } finally {
+            long wireBytes = body.mWire.mCount;
+            mResponseWireBytes.addAndGet(wireBytes);
+            mResponseBodyBytes.addAndGet(body.mCount);
+            if (timing != null) {
+                timing.mResponseWireBytes = wireBytes;
+                timing.mResponseBodyBytes = body.mCount;
+            }
+        }
+    }
+
+    private void discardBody(
+            HttpURLConnection connection, Map<String, String> responseHeaders,
+            RequestTiming timing) throws IOException {
+
+        CountingInputStream body = openBody(connection, responseHeaders, null);
+        byte[] buffer = mBufferPool.acquire(BUFFER_SIZE);
+        try {
+            while (body.read(buffer) != -1) {
+                // Drained so the connection can be reused.
+            }
+        } finally {
+            mBufferPool.release(buffer);
+            closeBody(body, timing);
+        }
+    }
+
+    private byte[] readBody(InputStream in, long contentLength, ProgressReporter progress)
+            throws IOException {
+
+        PooledByteArrayOutputStream out = null;
+        byte[] buffer = null;
+
+        try {
+            if (contentLength > 0 && contentLength <= MAX_PREALLOCATED_BODY) {
+                // Known length: read straight into the result, no copy.
+                int length = (int) contentLength;
+                byte[] data = new byte[length];
+                int offset = 0;
+                int count;
+                while (offset < length
+                        && (count = in.read(data, offset, length - offset)) != -1) {
+                    offset += count;
+                }
+
+                checkComplete(offset, contentLength);
+                int next = in.read();
+                if (next == -1) {
+                    if (progress != null) {
+                        progress.finish();
+                    }
+
+                    return data;
+                }
+
+                // Content-Length was too small, keep the rest.
+                out = new PooledByteArrayOutputStream(mBufferPool, length << 1);
+                out.write(data, 0, length);
+                out.write(next);
+            } else {
+                out = new PooledByteArrayOutputStream(mBufferPool, BUFFER_SIZE);
+            }
+
+            buffer = mBufferPool.acquire(BUFFER_SIZE);
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+
+            checkComplete(out.size(), contentLength);
+            if (progress != null) {
+                progress.finish();
+            }
+
+            return out.toByteArray();
+        } finally {
+            mBufferPool.release(buffer);
+            if (out != null) {
+                out.release();
+            }
+        }
+    }
+
+    /**
+     * A body that ended early must not be parsed or cached as if it were complete.
+     */
+    private static void checkComplete(long received, long contentLength) throws IOException {
+        if (contentLength > 0 && received < contentLength) {
+            throw new IOException("Response body ended after " + received
+                    + " of " + contentLength + " bytes");
+        }
+    }
+
+    private static long getContentLength(Map<String, String> responseHeaders) {
+        String contentLength = responseHeaders.get("Content-Length");
+        if (contentLength == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean containsHeader(Map<String, String> headers, String name) {
+        for (String key : headers.keySet()) {
+            if (name.equalsIgnoreCase(key)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void attemptRetryOnException(
+            String logPrefix, Request<?> request, VolleyError exception) throws VolleyError {
+
+        RetryPolicy retryPolicy = request.getRetryPolicy();
+        int oldTimeout = request.getTimeoutMs();
+
+        try {
+            retryPolicy.retry(exception);
+        } catch (VolleyError e) {
+            request.addMarker(String.format("%s-timeout-giveup [timeout=%s]", logPrefix, oldTimeout));
+            throw e;
+        }
+
+        request.addMarker(String.format("%s-retry [timeout=%s]", logPrefix, oldTimeout));
+    }
+
+    private static void mark(RequestTiming timing, RequestTiming.Event event) {
+        if (timing != null) {
+            timing.mark(event);
+        }
+    }
+
+
+    private static class ProgressOutputStream extends FilterOutputStream {
+
+        private static final int CHUNK_SIZE = 16 * 1024;
+
+        private final ProgressReporter mProgress;
+
+
+        ProgressOutputStream(OutputStream out, ProgressReporter progress) {
+            super(out);
+            mProgress = progress;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mProgress.add(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // A whole body in one call would report a single jump.
+            while (len > 0) {
+                int count = Math.min(len, CHUNK_SIZE);
+                out.write(b, off, count);
+                mProgress.add(count);
+                off += count;
+                len -= count;
+            }
+        }
+    }
+
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        /**
+         * The count of the encoded bytes below this stream, or null on the wire itself.
+         */
+        final CountingInputStream mWire;
+        long mCount;
+
+
+        CountingInputStream(InputStream in, CountingInputStream wire) {
+            super(in);
+            mWire = wire;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                ++mCount;
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                mCount += count;
+            }
+
+            return count;
+        }
+    }
+
+
+    private static class ProgressInputStream extends FilterInputStream {
+
+        private final ProgressReporter mProgress;
+
+
+        ProgressInputStream(InputStream in, ProgressReporter progress) {
+            super(in);
+            mProgress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                mProgress.add(1);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                mProgress.add(count);
+            }
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.queue;
+
+import com.jungle.majorhttps.request.base.RequestTiming;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Marks when HttpURLConnection layers TLS over its freshly connected socket.
+ *
+ * The connection is made on the network dispatcher thread, so the attempt being timed
+ * is handed over through a thread local.
+ */
+class TimingSSLSocketFactory extends SSLSocketFactory {
+
+    private static final ThreadLocal<RequestTiming> sCurrentTiming = new ThreadLocal<>();
+
+
+    static void setCurrentTiming(RequestTiming timing) {
+        sCurrentTiming.set(timing);
+    }
+
+
+    private final SSLSocketFactory mDelegate;
+
+
+    TimingSSLSocketFactory(SSLSocketFactory delegate) {
+        mDelegate = delegate;
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+            throws IOException {
+
+        RequestTiming timing = sCurrentTiming.get();
+        if (timing != null) {
+            timing.mark(RequestTiming.Event.SECURE_CONNECT_START);
+        }
+
+        return mDelegate.createSocket(socket, host, port, autoClose);
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return mDelegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return mDelegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return mDelegate.createSocket();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return mDelegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+            throws IOException {
+        return mDelegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return mDelegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        return mDelegate.createSocket(address, port, localAddress, localPort);
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.text;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.jungle.majorhttps.request.base.BizBaseRequest;
+import com.jungle.majorhttps.request.base.BizParseError;
+import com.jungle.majorhttps.request.base.BizRequestListener;
+import com.jungle.majorhttps.request.base.ResponseParser;
+import com.jungle.majorhttps.request.base.StreamingBodyHandler;
+import com.jungle.majorhttps.request.base.StreamingResponseParser;
+import com.jungle.majorhttps.request.cache.ParsedObjectCache;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+
+/**
+ * Text request whose body is parsed on the network dispatcher thread, so only
+ * the ready data is delivered to the main thread.
+ *
+ * When streaming with a {@link StreamingResponseParser}, the body is parsed straight from
+ * the socket if the network supports {@link StreamingBodyHandler}. Such requests are
+ * not cached.
+ */
+public class BizParsedTextRequest<T> extends BizBaseRequest<T> implements StreamingBodyHandler {
+
+    private static final String PROTOCOL_CHARSET = "utf-8";
+    private static final String PROTOCOL_CONTENT_TYPE =
+            String.format("application/json; charset=%s", PROTOCOL_CHARSET);
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+
+    /**
+     * Remembers read failures, so they are not mistaken for malformed content.
+     */
+    private static class TrackingInputStream extends FilterInputStream {
+
+        IOException mReadError;
+
+
+        TrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                mReadError = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            try {
+                return super.read(buffer, offset, count);
+            } catch (IOException e) {
+                mReadError = e;
+                throw e;
+            }
+        }
+    }
+
+
+    private byte[] mRequestBody;
+    private ResponseParser<T> mParser;
+    private boolean mStreaming;
+    private boolean mStreamed;
+    private T mStreamedContent;
+    private BizParseError mStreamError;
+    private ParsedObjectCache mParsedCache;
+
+
+    public BizParsedTextRequest(
+            int seqId, int method, String url,
+            Map<String, Object> params, Map<String, String> headers, byte[] requestBody,
+            ResponseParser<T> parser, boolean streaming, BizRequestListener<T> listener) {
+
+        super(seqId, method, url, params, headers, listener);
+        mRequestBody = requestBody;
+        mParser = parser;
+        mStreaming = streaming && parser instanceof StreamingResponseParser;
+
+        // A streamed response leaves no body to cache.
+        if (isStreaming()) {
+            setShouldCache(false);
+        }
+    }
+
+    /**
+     * Reuse data parsed from an unchanged response, if the parser has a key.
+     */
+    public void setParsedCache(ParsedObjectCache cache) {
+        mParsedCache = cache;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return mStreaming;
+    }
+
+    @Override
+    public void onResponseBody(InputStream in, Map<String, String> headers) throws IOException {
+        TrackingInputStream trackingIn = new TrackingInputStream(in);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                trackingIn, HttpHeaderParser.parseCharset(headers)), READ_BUFFER_SIZE);
+
+        mStreamed = true;
+        try {
+            reader.mark(1);
+            if (reader.read() == -1) {
+                mStreamedContent = mParser.parse("");
+                return;
+            }
+
+            reader.reset();
+            mStreamedContent = ((StreamingResponseParser<T>) mParser).parse(reader);
+        } catch (BizParseError e) {
+            if (trackingIn.mReadError != null) {
+                throw trackingIn.mReadError;
+            }
+
+            mStreamError = e;
+        }
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return PROTOCOL_CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] getBody() throws AuthFailureError {
+        return mRequestBody != null ? mRequestBody : super.getBody();
+    }
+
+    @Override
+    protected T parseResponseContent(NetworkResponse response) throws BizParseError {
+        if (mStreamed) {
+            if (mStreamError != null) {
+                throw mStreamError;
+            }
+
+            return mStreamedContent;
+        }
+
+        String parserKey = mParser.getKey();
+        // Only responses that may be cached at all, so no POST body is hashed for a key.
+        String validator = mParsedCache != null && parserKey != null && isCacheable()
+                ? ParsedObjectCache.getValidator(response.headers) : null;
+        if (validator == null) {
+            return mParser.parse(parseResponseToStringContent(response));
+        }
+
+        String cacheKey = getCacheKey();
+        T content = mParsedCache.get(cacheKey, parserKey, validator);
+        if (content == null) {
+            content = mParser.parse(parseResponseToStringContent(response));
+            mParsedCache.put(cacheKey, parserKey, validator, content,
+                    response.data != null ? response.data.length : 0);
+        }
+
+        return content;
+    }
+}
@@ -18,6 +18,7 @@
 
 package com.jungle.majorhttps.request.text;
 
+import com.android.volley.AuthFailureError;
 import com.android.volley.NetworkResponse;
 import com.jungle.majorhttps.request.base.BizBaseRequest;
 import com.jungle.majorhttps.request.base.BizRequestListener;
@@ -49,8 +50,8 @@ public class BizTextRequest extends BizBaseRequest<String> {
     }
 
     @Override
-    public byte[] getBody() {
-        return mRequestBody;
+    public byte[] getBody() throws AuthFailureError {
+        return mRequestBody != null ? mRequestBody : super.getBody();
     }
 
     @Override
@@ -0,0 +1,170 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.text;
+
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.jungle.majorhttps.network.BufferPool;
+import com.jungle.majorhttps.request.base.RequestBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Serializes a value as UTF-8 JSON straight into the output stream, on the network thread.
+ *
+ * fastjson flushes its char buffer into {@link Utf8Writer}, which encodes into a pooled
+ * byte buffer, so no intermediate String or byte[] of the whole document is built.
+ */
+public class JsonRequestBody extends RequestBody {
+
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final int ENCODE_BUFFER_SIZE = 4096;
+
+
+    private final Object mValue;
+
+
+    /**
+     * @param value serialized at write time, so it must not change once the request is sent.
+     */
+    public JsonRequestBody(Object value) {
+        mValue = value;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Utf8Writer writer = new Utf8Writer(out, BufferPool.getDefault());
+        SerializeWriter serializeWriter = new SerializeWriter(writer);
+        try {
+            new JSONSerializer(serializeWriter).write(mValue);
+            serializeWriter.flush();
+            writer.finish();
+        } finally {
+            serializeWriter.close();
+            writer.release();
+        }
+    }
+
+
+    private static class Utf8Writer extends Writer {
+
+        private final OutputStream mOut;
+        private final BufferPool mPool;
+        private byte[] mBuffer;
+        private int mCount;
+        private char mPendingHighSurrogate;
+
+
+        Utf8Writer(OutputStream out, BufferPool pool) {
+            mOut = out;
+            mPool = pool;
+            mBuffer = pool.acquire(ENCODE_BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) throws IOException {
+            byte[] buffer = mBuffer;
+            int limit = buffer.length - 4;
+            int count = mCount;
+
+            for (int i = off, end = off + len; i < end; ++i) {
+                if (count > limit) {
+                    mOut.write(buffer, 0, count);
+                    count = 0;
+                }
+
+                char c = chars[i];
+                if (mPendingHighSurrogate != 0) {
+                    char high = mPendingHighSurrogate;
+                    mPendingHighSurrogate = 0;
+                    if (Character.isLowSurrogate(c)) {
+                        int codePoint = Character.toCodePoint(high, c);
+                        buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                        buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                        buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                        buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                        continue;
+                    }
+
+                    buffer[count++] = '?';
+                    if (count > limit) {
+                        mOut.write(buffer, 0, count);
+                        count = 0;
+                    }
+                }
+
+                if (c < 0x80) {
+                    buffer[count++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[count++] = (byte) (0xC0 | (c >> 6));
+                    buffer[count++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c)) {
+                    // May be split across two writes.
+                    mPendingHighSurrogate = c;
+                } else if (Character.isLowSurrogate(c)) {
+                    buffer[count++] = '?';
+                } else {
+                    buffer[count++] = (byte) (0xE0 | (c >> 12));
+                    buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[count++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+
+            mCount = count;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // fastjson also flushes whenever its own buffer fills up, so a pending
+            // high surrogate is kept for the next write.
+            if (mCount > 0) {
+                mOut.write(mBuffer, 0, mCount);
+                mCount = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        void finish() throws IOException {
+            if (mPendingHighSurrogate != 0) {
+                mPendingHighSurrogate = 0;
+                write('?');
+            }
+
+            flush();
+        }
+
+        void release() {
+            if (mBuffer != null) {
+                mPool.release(mBuffer);
+                mBuffer = null;
+            }
+        }
+    }
+}
@@ -18,108 +18,49 @@
 
 package com.jungle.majorhttps.request.upload;
 
-import com.android.volley.AuthFailureError;
 import com.android.volley.NetworkResponse;
 import com.jungle.majorhttps.request.base.BizBaseRequest;
 import com.jungle.majorhttps.request.base.BizRequestListener;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
 public class BizMultipartRequest extends BizBaseRequest<String> {
 
-    private static final String UPLOAD_CONTENT_TYPE = "multipart/form-data";
-    private static final String UPLOAD_BOUNDARY = "biz-upload-request-";
-
-
-    private List<MultipartFormItem> mFormItems;
+    public BizMultipartRequest(
+            int seqId, int method, String url, List<MultipartFormItem> list,
+            Map<String, String> headers,
+            BizRequestListener<String> listener) {
 
+        this(seqId, method, url, new MultipartRequestBody(list), headers, listener);
+    }
 
+    /**
+     * @param body shared by all attempts of one upload, so it is only prepared once.
+     */
     public BizMultipartRequest(
-            int seqId, int method, String url, List<MultipartFormItem> list,
+            int seqId, int method, String url, MultipartRequestBody body,
             Map<String, String> headers,
             BizRequestListener<String> listener) {
 
         super(seqId, method, url, null, headers, listener);
 
-        mFormItems = list;
+        // Without items the request has no body, as before.
+        if (body != null && !body.isEmpty()) {
+            setRequestBody(body);
+        }
+
         setShouldCache(false);
     }
 
     @Override
-    public String getBodyContentType() {
-        return String.format("%s; boundary=%s", UPLOAD_CONTENT_TYPE, UPLOAD_BOUNDARY);
+    public boolean isUpload() {
+        return true;
     }
 
     @Override
-    public byte[] getBody() throws AuthFailureError {
-        if (mFormItems == null || mFormItems.isEmpty()) {
-            return super.getBody();
-        }
-
-        int size = 0;
-        for (MultipartFormItem item : mFormItems) {
-            byte[] content = item.getFormContent();
-            size += content != null ? content.length : 0;
-        }
-
-        //
-        // Write Format:
-        //
-        // --boundary
-        // Content-Disposition: form-data; name="files0"; filename="item_file_name_0"
-        // Content-Type: application/octet-stream
-        // Content-Transfer-Encoding: binary
-        //
-        // item_file_content_0
-        //
-        // --boundary
-        // Content-Disposition: form-data; name="files1"; filename="item_file_name_1"
-        // Content-Type: application/octet-stream
-        // Content-Transfer-Encoding: binary
-        //
-        // item_file_content_1
-        //
-        // --boundary--
-        //
-
-        int index = 0;
-        ByteArrayOutputStream stream = new ByteArrayOutputStream(size);
-        for (MultipartFormItem item : mFormItems) {
-            byte[] content = item.getFormContent();
-            if (content == null) {
-                continue;
-            }
-
-            StringBuilder buffer = new StringBuilder();
-            buffer.append("--").append(UPLOAD_BOUNDARY).append("\r\n");
-            buffer.append("Content-Disposition: form-data;")
-                    .append(" name=\"").append("files").append(index).append("\";")
-                    .append(" filename=\"").append(item.getFormName()).append("\"\r\n");
-
-            buffer.append("Content-Type: ").append(item.getMimeType()).append("\r\n");
-            buffer.append("Content-Transfer-Encoding: binary\r\n\r\n");
-
-            try {
-                stream.write(buffer.toString().getBytes("utf-8"));
-                stream.write(content);
-                stream.write("\r\n".getBytes("utf-8"));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-            ++index;
-        }
-
-        try {
-            stream.write(String.format("--%s--\r\n", UPLOAD_BOUNDARY).getBytes("utf-8"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return stream.toByteArray();
+    public String getBodyContentType() {
+        return MultipartRequestBody.CONTENT_TYPE;
     }
 
     @Override
@@ -0,0 +1,52 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.upload;
+
+import com.android.volley.NetworkResponse;
+import com.jungle.majorhttps.request.base.BizBaseRequest;
+import com.jungle.majorhttps.request.base.BizRequestListener;
+import com.jungle.majorhttps.request.base.RequestBody;
+
+import java.util.Map;
+
+/**
+ * One call of a chunked upload: creating it, sending a chunk or committing it.
+ */
+public class BizUploadCallRequest extends BizBaseRequest<String> {
+
+    public BizUploadCallRequest(
+            int seqId, int method, String url, Map<String, String> headers,
+            RequestBody body, BizRequestListener<String> listener) {
+
+        super(seqId, method, url, null, headers, listener);
+
+        setRequestBody(body);
+        setShouldCache(false);
+    }
+
+    @Override
+    public boolean isUpload() {
+        return true;
+    }
+
+    @Override
+    protected String parseResponseContent(NetworkResponse response) {
+        return parseResponseToStringContent(response);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.upload;
+
+import android.text.TextUtils;
+import com.jungle.majorhttps.model.base.ModelMethod;
+import com.jungle.majorhttps.request.base.NetworkResp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The calls of a chunked upload. Override it to talk to another server API.
+ *
+ * By default:
+ *
+ *     POST {url}                       Upload-Length, Upload-Name -> Upload-Id header or body
+ *     PUT  {url}/{uploadId}/{index}    Content-Range: bytes first-last/total
+ *     POST {url}/{uploadId}/commit     -> the response body is the result of the model
+ *
+ * Chunks are retried, so the server must accept the same chunk more than once.
+ */
+public class ChunkedUploadProtocol {
+
+    public static final ChunkedUploadProtocol DEFAULT = new ChunkedUploadProtocol();
+
+
+    public ModelMethod getCreateMethod() {
+        return ModelMethod.POST;
+    }
+
+    public String getCreateUrl(String url) {
+        return url;
+    }
+
+    public Map<String, String> getCreateHeaders(UploadState state, String fileName) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Upload-Length", String.valueOf(state.getFileLength()));
+        if (!TextUtils.isEmpty(fileName)) {
+            headers.put("Upload-Name", fileName);
+        }
+
+        return headers;
+    }
+
+    /**
+     * @return the id of the new upload, null if the response has none.
+     */
+    public String parseUploadId(NetworkResp networkResp, String response) {
+        String uploadId = networkResp != null && networkResp.mHeaders != null
+                ? networkResp.mHeaders.get("Upload-Id") : null;
+
+        if (TextUtils.isEmpty(uploadId) && response != null) {
+            uploadId = response.trim();
+        }
+
+        return TextUtils.isEmpty(uploadId) ? null : uploadId;
+    }
+
+    public ModelMethod getChunkMethod() {
+        return ModelMethod.PUT;
+    }
+
+    public String getChunkUrl(String url, String uploadId, int chunk) {
+        return url + "/" + uploadId + "/" + chunk;
+    }
+
+    public Map<String, String> getChunkHeaders(UploadState state, int chunk) {
+        long offset = state.getChunkOffset(chunk);
+        long last = offset + state.getChunkLength(chunk) - 1;
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Range",
+                "bytes " + offset + "-" + last + "/" + state.getFileLength());
+        return headers;
+    }
+
+    public ModelMethod getCommitMethod() {
+        return ModelMethod.POST;
+    }
+
+    public String getCommitUrl(String url, String uploadId) {
+        return url + "/" + uploadId + "/commit";
+    }
+
+    public Map<String, String> getCommitHeaders(UploadState state) {
+        return new HashMap<>();
+    }
+
+    /**
+     * @return true if the error means the server forgot the upload, so it has to start over.
+     */
+    public boolean isUploadLost(int errorCode) {
+        return errorCode == 404 || errorCode == 410;
+    }
+}
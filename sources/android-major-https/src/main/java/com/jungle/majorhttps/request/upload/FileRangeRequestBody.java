@@ -0,0 +1,88 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.upload;
+
+import com.jungle.majorhttps.network.BufferPool;
+import com.jungle.majorhttps.request.base.RequestBody;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * `length` bytes of a file starting at `offset`, read from disk on every write.
+ */
+public class FileRangeRequestBody extends RequestBody {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+
+    private final String mFilePath;
+    private final long mOffset;
+    private final long mLength;
+    private final String mContentType;
+
+
+    public FileRangeRequestBody(String filePath, long offset, long length, String contentType) {
+        mFilePath = filePath;
+        mOffset = offset;
+        mLength = length;
+        mContentType = contentType;
+    }
+
+    @Override
+    public String getContentType() {
+        return mContentType;
+    }
+
+    @Override
+    public long getContentLength() {
+        return mLength;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        FileInputStream stream = new FileInputStream(mFilePath);
+        FileChannel channel = stream.getChannel();
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(COPY_BUFFER_SIZE);
+        try {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long position = mOffset;
+            long remaining = mLength;
+            while (remaining > 0) {
+                byteBuffer.clear();
+                byteBuffer.limit((int) Math.min(buffer.length, remaining));
+                int count = channel.read(byteBuffer, position);
+                if (count < 0) {
+                    throw new IOException(mFilePath + " was truncated while uploading.");
+                }
+
+                out.write(buffer, 0, count);
+                position += count;
+                remaining -= count;
+            }
+        } finally {
+            pool.release(buffer);
+            stream.close();
+        }
+    }
+}
@@ -19,13 +19,25 @@
 package com.jungle.majorhttps.request.upload;
 
 import android.text.TextUtils;
+import com.jungle.majorhttps.network.BufferPool;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Uploads a file. Unless its content was given up front, the file is streamed from
+ * disk by {@link MultipartRequestBody} and never held in memory.
+ */
+public class FileUploadFormItem extends BinaryMultipartFormItem implements StreamingFormItem {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
-public class FileUploadFormItem extends BinaryMultipartFormItem {
 
     private String mFilePath;
 
@@ -63,6 +75,50 @@ public class FileUploadFormItem extends BinaryMultipartFormItem {
         return mMimeType;
     }
 
+    @Override
+    public long getContentLength() {
+        if (mFormContent != null) {
+            return mFormContent.length;
+        }
+
+        if (TextUtils.isEmpty(mFilePath)) {
+            return -1;
+        }
+
+        File file = new File(mFilePath);
+        return file.isFile() ? file.length() : -1;
+    }
+
+    @Override
+    public void writeContentTo(OutputStream out, long length) throws IOException {
+        if (mFormContent != null) {
+            out.write(mFormContent);
+            return;
+        }
+
+        FileInputStream stream = new FileInputStream(mFilePath);
+        FileChannel channel = stream.getChannel();
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(COPY_BUFFER_SIZE);
+        try {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            while (length > 0) {
+                byteBuffer.clear();
+                byteBuffer.limit((int) Math.min(buffer.length, length));
+                int count = channel.read(byteBuffer);
+                if (count < 0) {
+                    throw new IOException(mFilePath + " was truncated while uploading.");
+                }
+
+                out.write(buffer, 0, count);
+                length -= count;
+            }
+        } finally {
+            pool.release(buffer);
+            stream.close();
+        }
+    }
+
     public static byte[] getFileContent(String filePath) {
         if (TextUtils.isEmpty(filePath)) {
             return null;
@@ -71,9 +127,15 @@ public class FileUploadFormItem extends BinaryMultipartFormItem {
         FileInputStream stream = null;
         try {
             stream = new FileInputStream(filePath);
-            byte[] content = new byte[stream.available()];
-            stream.read(content);
-            return content;
+            byte[] content = new byte[(int) stream.getChannel().size()];
+            int offset = 0;
+            int count;
+            while (offset < content.length
+                    && (count = stream.read(content, offset, content.length - offset)) != -1) {
+                offset += count;
+            }
+
+            return offset == content.length ? content : Arrays.copyOf(content, offset);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -0,0 +1,160 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.upload;
+
+import com.jungle.majorhttps.request.base.RequestBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * multipart/form-data body written part by part, file parts straight from disk.
+ *
+ * Part headers and the total length are built once, on the first use from a network
+ * thread, and reused by every attempt of the upload.
+ *
+ * Write Format:
+ *
+ * --boundary
+ * Content-Disposition: form-data; name="files0"; filename="item_file_name_0"
+ * Content-Type: application/octet-stream
+ * Content-Transfer-Encoding: binary
+ *
+ * item_file_content_0
+ * --boundary
+ * ...
+ * --boundary--
+ */
+public class MultipartRequestBody extends RequestBody {
+
+    public static final String UPLOAD_CONTENT_TYPE = "multipart/form-data";
+    public static final String UPLOAD_BOUNDARY = "biz-upload-request-";
+    public static final String CONTENT_TYPE =
+            String.format("%s; boundary=%s", UPLOAD_CONTENT_TYPE, UPLOAD_BOUNDARY);
+
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    private static final byte[] CRLF = "\r\n".getBytes(UTF_8);
+    private static final byte[] CLOSING =
+            String.format("--%s--\r\n", UPLOAD_BOUNDARY).getBytes(UTF_8);
+
+
+    private static class Part {
+        final byte[] mHeader;
+        final MultipartFormItem mItem;
+        final byte[] mContent;
+        final long mLength;
+
+        Part(byte[] header, MultipartFormItem item, byte[] content, long length) {
+            mHeader = header;
+            mItem = item;
+            mContent = content;
+            mLength = length;
+        }
+    }
+
+
+    private final List<MultipartFormItem> mFormItems;
+    private List<Part> mParts;
+    private long mContentLength;
+
+
+    public MultipartRequestBody(List<MultipartFormItem> formItems) {
+        mFormItems = formItems != null
+                ? new ArrayList<>(formItems) : new ArrayList<MultipartFormItem>();
+    }
+
+    public boolean isEmpty() {
+        return mFormItems.isEmpty();
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public long getContentLength() {
+        prepare();
+        return mContentLength;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        for (Part part : prepare()) {
+            out.write(part.mHeader);
+            if (part.mContent != null) {
+                out.write(part.mContent);
+            } else {
+                ((StreamingFormItem) part.mItem).writeContentTo(out, part.mLength);
+            }
+
+            out.write(CRLF);
+        }
+
+        out.write(CLOSING);
+    }
+
+    private synchronized List<Part> prepare() {
+        if (mParts != null) {
+            return mParts;
+        }
+
+        List<Part> parts = new ArrayList<>(mFormItems.size());
+        long contentLength = CLOSING.length;
+        int index = 0;
+        for (MultipartFormItem item : mFormItems) {
+            byte[] content = null;
+            long length;
+            if (item instanceof StreamingFormItem) {
+                length = ((StreamingFormItem) item).getContentLength();
+            } else {
+                content = item.getFormContent();
+                length = content != null ? content.length : -1;
+            }
+
+            if (length < 0) {
+                continue;
+            }
+
+            byte[] header = buildHeader(index, item);
+            parts.add(new Part(header, item, content, length));
+            contentLength += header.length + length + CRLF.length;
+            ++index;
+        }
+
+        mContentLength = contentLength;
+        mParts = parts;
+        return parts;
+    }
+
+    private static byte[] buildHeader(int index, MultipartFormItem item) {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("--").append(UPLOAD_BOUNDARY).append("\r\n");
+        buffer.append("Content-Disposition: form-data;")
+                .append(" name=\"").append("files").append(index).append("\";")
+                .append(" filename=\"").append(item.getFormName()).append("\"\r\n");
+
+        buffer.append("Content-Type: ").append(item.getMimeType()).append("\r\n");
+        buffer.append("Content-Transfer-Encoding: binary\r\n\r\n");
+        return buffer.toString().getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.upload;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A form item whose content is written to the connection instead of being held in memory.
+ */
+public interface StreamingFormItem extends MultipartFormItem {
+
+    /**
+     * @return the exact content length, or -1 if the item has no content and is skipped.
+     */
+    long getContentLength();
+
+    /**
+     * Writes exactly {@code length}, the value {@link #getContentLength()} returned when the
+     * body was prepared, called once per attempt.
+     *
+     * @throws IOException also if the content no longer has {@code length} bytes.
+     */
+    void writeContentTo(OutputStream out, long length) throws IOException;
+}
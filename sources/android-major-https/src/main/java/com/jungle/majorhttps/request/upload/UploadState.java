@@ -0,0 +1,202 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.request.upload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Progress of a chunked upload: the server's upload id and the chunks it confirmed.
+ *
+ * The state only applies to the same url, file, file size, modification time and chunk
+ * size, anything else starts a new upload.
+ */
+public class UploadState {
+
+    private static final int MAGIC = 0x4D485553;
+    private static final int VERSION = 1;
+
+
+    /**
+     * @return the saved state, or null if there is none or it does not apply.
+     */
+    public static UploadState load(
+            String stateFilePath, String url, String filePath, int chunkSize) {
+
+        File stateFile = new File(stateFilePath);
+        if (!stateFile.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            String savedUrl = in.readUTF();
+            String savedFilePath = in.readUTF();
+            long fileLength = in.readLong();
+            long lastModified = in.readLong();
+            int savedChunkSize = in.readInt();
+            String uploadId = in.readUTF();
+
+            UploadState state = create(stateFilePath, url, filePath, chunkSize);
+            if (!savedUrl.equals(url) || !savedFilePath.equals(filePath)
+                    || fileLength != state.mFileLength || lastModified != state.mLastModified
+                    || savedChunkSize != chunkSize) {
+                return null;
+            }
+
+            state.mUploadId = uploadId;
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                state.mDoneChunks.set(in.readInt());
+            }
+
+            return state;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    public static UploadState create(
+            String stateFilePath, String url, String filePath, int chunkSize) {
+
+        File file = new File(filePath);
+        UploadState state = new UploadState(stateFilePath, url, filePath, chunkSize);
+        state.mFileLength = file.length();
+        state.mLastModified = file.lastModified();
+        return state;
+    }
+
+
+    private final String mStateFilePath;
+    private final String mUrl;
+    private final String mFilePath;
+    private final int mChunkSize;
+    private long mFileLength;
+    private long mLastModified;
+    private String mUploadId = "";
+    private final BitSet mDoneChunks = new BitSet();
+
+
+    private UploadState(String stateFilePath, String url, String filePath, int chunkSize) {
+        mStateFilePath = stateFilePath;
+        mUrl = url;
+        mFilePath = filePath;
+        mChunkSize = chunkSize;
+    }
+
+    public String getFilePath() {
+        return mFilePath;
+    }
+
+    public long getFileLength() {
+        return mFileLength;
+    }
+
+    public String getUploadId() {
+        return mUploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        mUploadId = uploadId != null ? uploadId : "";
+    }
+
+    public int getChunkCount() {
+        return (int) ((mFileLength + mChunkSize - 1) / mChunkSize);
+    }
+
+    public long getChunkOffset(int chunk) {
+        return (long) chunk * mChunkSize;
+    }
+
+    public long getChunkLength(int chunk) {
+        return Math.min(mChunkSize, mFileLength - getChunkOffset(chunk));
+    }
+
+    public boolean isChunkDone(int chunk) {
+        return mDoneChunks.get(chunk);
+    }
+
+    public void setChunkDone(int chunk) {
+        mDoneChunks.set(chunk);
+    }
+
+    public long getUploadedBytes() {
+        long uploaded = 0;
+        for (int i = mDoneChunks.nextSetBit(0); i >= 0; i = mDoneChunks.nextSetBit(i + 1)) {
+            uploaded += getChunkLength(i);
+        }
+
+        return uploaded;
+    }
+
+    public void save() throws IOException {
+        File stateFile = new File(mStateFilePath);
+        File temp = new File(mStateFilePath + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(temp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mUrl);
+            out.writeUTF(mFilePath);
+            out.writeLong(mFileLength);
+            out.writeLong(mLastModified);
+            out.writeInt(mChunkSize);
+            out.writeUTF(mUploadId);
+            out.writeInt(mDoneChunks.cardinality());
+            for (int i = mDoneChunks.nextSetBit(0); i >= 0; i = mDoneChunks.nextSetBit(i + 1)) {
+                out.writeInt(i);
+            }
+
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(stateFile)) {
+            throw new IOException("Cannot save upload state " + stateFile);
+        }
+    }
+
+    public void delete() {
+        new File(mStateFilePath).delete();
+    }
+}
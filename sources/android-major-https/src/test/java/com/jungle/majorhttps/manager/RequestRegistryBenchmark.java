@@ -0,0 +1,185 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Contention benchmark of {@link RequestRegistry} against the map it replaced, a
+ * {@code HashMap<Integer, Node>} guarded by the client monitor.
+ *
+ * Every thread keeps a window of requests in flight, registering a new one and removing
+ * the oldest, like loads completing on the main thread while others start on workers.
+ * Not an assertion on speed and left out of the unit tests, run it with
+ * {@code gradle test -Pbenchmark} and read the printed timings. Correctness is covered
+ * by {@link RequestRegistryTest}.
+ */
+public class RequestRegistryBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+    private static final int OPERATIONS_PER_THREAD = 200 * 1000;
+    private static final int IN_FLIGHT_PER_THREAD = 32;
+    private static final int WARMUP_ROUNDS = 3;
+
+
+    private static class TestNode extends RequestRegistry.Node {
+
+        TestNode(int seqId) {
+            super(seqId);
+        }
+    }
+
+
+    private interface Registry {
+
+        void put(TestNode node);
+
+        TestNode get(int seqId);
+
+        TestNode remove(int seqId);
+    }
+
+
+    private static class LockFreeRegistry implements Registry {
+
+        private final RequestRegistry<TestNode> mRegistry = new RequestRegistry<>();
+
+
+        @Override
+        public void put(TestNode node) {
+            mRegistry.put(node);
+        }
+
+        @Override
+        public TestNode get(int seqId) {
+            return mRegistry.get(seqId);
+        }
+
+        @Override
+        public TestNode remove(int seqId) {
+            return mRegistry.remove(seqId);
+        }
+    }
+
+
+    private static class SynchronizedMapRegistry implements Registry {
+
+        private final Map<Integer, TestNode> mRequestList = new HashMap<>();
+
+
+        @Override
+        public synchronized void put(TestNode node) {
+            mRequestList.put(node.mSeqId, node);
+        }
+
+        @Override
+        public synchronized TestNode get(int seqId) {
+            return mRequestList.get(seqId);
+        }
+
+        @Override
+        public synchronized TestNode remove(int seqId) {
+            return mRequestList.remove(seqId);
+        }
+    }
+
+
+    @Test
+    public void registerAndRemoveUnderContention() throws InterruptedException {
+        for (int i = 0; i < WARMUP_ROUNDS; ++i) {
+            run(new SynchronizedMapRegistry(), 4);
+            run(new LockFreeRegistry(), 4);
+        }
+
+        for (int threads : THREAD_COUNTS) {
+            long mapNs = run(new SynchronizedMapRegistry(), threads);
+            long registryNs = run(new LockFreeRegistry(), threads);
+            long operations = (long) threads * OPERATIONS_PER_THREAD;
+            System.out.println(String.format(
+                    "%d threads: synchronized map %d ns/op, registry %d ns/op",
+                    threads, mapNs / operations, registryNs / operations));
+        }
+    }
+
+    /**
+     * @return the elapsed nanoseconds until every thread finished.
+     */
+    private static long run(final Registry registry, int threadCount)
+            throws InterruptedException {
+
+        final AtomicInteger seqIds = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threadCount);
+
+        for (int t = 0; t < threadCount; ++t) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int[] window = new int[IN_FLIGHT_PER_THREAD];
+                    try {
+                        start.await();
+                        for (int i = 0; i < OPERATIONS_PER_THREAD; ++i) {
+                            int slot = i % IN_FLIGHT_PER_THREAD;
+                            if (window[slot] != 0
+                                    && registry.remove(window[slot]) == null) {
+                                failures.incrementAndGet();
+                            }
+
+                            int seqId = seqIds.incrementAndGet();
+                            registry.put(new TestNode(seqId));
+                            if (registry.get(seqId) == null) {
+                                failures.incrementAndGet();
+                            }
+
+                            window[slot] = seqId;
+                        }
+
+                        for (int seqId : window) {
+                            if (seqId != 0) {
+                                registry.remove(seqId);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        assertEquals(0, failures.get());
+        assertNull(registry.get(seqIds.get()));
+        return elapsed;
+    }
+}
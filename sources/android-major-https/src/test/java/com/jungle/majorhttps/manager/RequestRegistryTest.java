@@ -0,0 +1,223 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.manager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RequestRegistryTest {
+
+    private static final int THREAD_COUNT = 4;
+    private static final int NODES_PER_THREAD = 20 * 1000;
+
+
+    private static class TestNode extends RequestRegistry.Node {
+
+        TestNode(int seqId) {
+            super(seqId);
+        }
+    }
+
+
+    private abstract static class Worker implements Runnable {
+
+        private final CountDownLatch mStart;
+        private final CountDownLatch mDone;
+        private final List<Throwable> mErrors;
+        final int mIndex;
+
+
+        Worker(int index, CountDownLatch start, CountDownLatch done, List<Throwable> errors) {
+            mIndex = index;
+            mStart = start;
+            mDone = done;
+            mErrors = errors;
+        }
+
+        abstract void work();
+
+        @Override
+        public void run() {
+            try {
+                mStart.await();
+                work();
+            } catch (Throwable e) {
+                synchronized (mErrors) {
+                    mErrors.add(e);
+                }
+            } finally {
+                mDone.countDown();
+            }
+        }
+    }
+
+
+    private interface WorkerFactory {
+        Worker create(
+                int index, CountDownLatch start, CountDownLatch done, List<Throwable> errors);
+    }
+
+
+    @Test
+    public void concurrentPutsAreAllFound() throws Throwable {
+        final RequestRegistry<TestNode> registry = new RequestRegistry<>();
+        final TestNode[] nodes = new TestNode[THREAD_COUNT * NODES_PER_THREAD + 1];
+
+        runConcurrently(new WorkerFactory() {
+            @Override
+            public Worker create(
+                    int index, CountDownLatch start, CountDownLatch done, List<Throwable> errors) {
+
+                return new Worker(index, start, done, errors) {
+                    @Override
+                    void work() {
+                        // Interleaved ids, so every thread keeps growing the same table.
+                        for (int seqId = mIndex + 1; seqId < nodes.length;
+                                seqId += THREAD_COUNT) {
+                            nodes[seqId] = new TestNode(seqId);
+                            registry.put(nodes[seqId]);
+                        }
+                    }
+                };
+            }
+        });
+
+        assertEquals(nodes.length - 1, registry.size());
+        for (int seqId = 1; seqId < nodes.length; ++seqId) {
+            assertSame(nodes[seqId], registry.get(seqId));
+        }
+    }
+
+    @Test
+    public void churnDuringResizeKeepsOtherNodes() throws Throwable {
+        final RequestRegistry<TestNode> registry = new RequestRegistry<>();
+        final int kept = 1000;
+        final TestNode[] keptNodes = new TestNode[kept + 1];
+        for (int seqId = 1; seqId <= kept; ++seqId) {
+            keptNodes[seqId] = new TestNode(seqId);
+            registry.put(keptNodes[seqId]);
+        }
+
+        final AtomicInteger lost = new AtomicInteger();
+        runConcurrently(new WorkerFactory() {
+            @Override
+            public Worker create(
+                    int index, CountDownLatch start, CountDownLatch done, List<Throwable> errors) {
+
+                return new Worker(index, start, done, errors) {
+                    @Override
+                    void work() {
+                        // Every thread keeps a growing window in flight, which resizes
+                        // the table while the others remove theirs.
+                        int base = kept + 1 + mIndex * NODES_PER_THREAD;
+                        int window = 1 + mIndex * 64;
+                        for (int i = 0; i < NODES_PER_THREAD; ++i) {
+                            registry.put(new TestNode(base + i));
+                            if (i >= window && registry.remove(base + i - window) == null) {
+                                lost.incrementAndGet();
+                            }
+                        }
+
+                        for (int i = Math.max(0, NODES_PER_THREAD - window);
+                                i < NODES_PER_THREAD; ++i) {
+                            if (registry.remove(base + i) == null) {
+                                lost.incrementAndGet();
+                            }
+                        }
+                    }
+                };
+            }
+        });
+
+        assertEquals(0, lost.get());
+        assertEquals(kept, registry.size());
+        for (int seqId = 1; seqId <= kept; ++seqId) {
+            assertSame(keptNodes[seqId], registry.get(seqId));
+        }
+
+        for (int seqId = kept + 1; seqId <= kept + THREAD_COUNT * NODES_PER_THREAD; ++seqId) {
+            assertNull(registry.get(seqId));
+        }
+    }
+
+    @Test
+    public void everyNodeIsRemovedExactlyOnce() throws Throwable {
+        final RequestRegistry<TestNode> registry = new RequestRegistry<>();
+        final int count = 10 * 1000;
+        for (int seqId = 1; seqId <= count; ++seqId) {
+            registry.put(new TestNode(seqId));
+        }
+
+        final AtomicIntegerArray removals = new AtomicIntegerArray(count + 1);
+        runConcurrently(new WorkerFactory() {
+            @Override
+            public Worker create(
+                    int index, CountDownLatch start, CountDownLatch done, List<Throwable> errors) {
+
+                return new Worker(index, start, done, errors) {
+                    @Override
+                    void work() {
+                        // Removers race each other while new nodes resize the table.
+                        int base = count + 1 + mIndex * NODES_PER_THREAD;
+                        for (int seqId = 1; seqId <= count; ++seqId) {
+                            TestNode node = registry.remove(seqId);
+                            if (node != null) {
+                                assertEquals(seqId, node.mSeqId);
+                                removals.incrementAndGet(seqId);
+                            }
+
+                            registry.put(new TestNode(base + seqId));
+                        }
+                    }
+                };
+            }
+        });
+
+        for (int seqId = 1; seqId <= count; ++seqId) {
+            assertEquals("seqId " + seqId, 1, removals.get(seqId));
+            assertNull(registry.get(seqId));
+        }
+
+        assertEquals(THREAD_COUNT * count, registry.size());
+    }
+
+    private static void runConcurrently(WorkerFactory factory) throws Throwable {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+        List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < THREAD_COUNT; ++i) {
+            new Thread(factory.create(i, start, done, errors)).start();
+        }
+
+        start.countDown();
+        done.await();
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.model.text;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.jungle.majorhttps.network.CommonError;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares {@link JsonEnvelope#decode} with the previous decoding of
+ * {@link BizJsonRequestModel}, a JSONObject DOM followed by {@code getObject("data", clazz)}.
+ *
+ * Only prints timings, so the unit test tasks skip it unless {@code -Pbenchmark} is set.
+ * The decoding itself is tested by {@link JsonEnvelopeTest}.
+ */
+public class JsonEnvelopeBenchmark {
+
+    private static final int ITEM_COUNT = 200;
+    private static final int WARMUP_ROUNDS = 500;
+    private static final int ROUNDS = 2000;
+
+
+    public static class Item {
+
+        public long id;
+        public String name;
+        public double price;
+        public boolean available;
+        public List<String> tags;
+    }
+
+
+    public static class Page {
+
+        public int total;
+        public List<Item> items;
+    }
+
+
+    private interface Decoder {
+
+        Page decode(String body) throws Exception;
+    }
+
+
+    @Test
+    public void singlePassAgainstJsonObject() throws Exception {
+        String body = createBody();
+
+        Decoder dom = new Decoder() {
+            @Override
+            public Page decode(String body) {
+                JSONObject json = JSON.parseObject(body);
+                if (json.getIntValue("ret") != CommonError.SUCCESS) {
+                    throw new IllegalStateException(json.getString("msg"));
+                }
+
+                return json.getObject("data", Page.class);
+            }
+        };
+
+        Decoder singlePass = new Decoder() {
+            @Override
+            public Page decode(String body) throws Exception {
+                return JsonEnvelope.DEFAULT.decode(new StringReader(body), Page.class);
+            }
+        };
+
+        assertEquals(ITEM_COUNT, dom.decode(body).items.size());
+        assertEquals(ITEM_COUNT, singlePass.decode(body).items.size());
+
+        run(dom, body, WARMUP_ROUNDS);
+        run(singlePass, body, WARMUP_ROUNDS);
+
+        long domNs = run(dom, body, ROUNDS);
+        long singlePassNs = run(singlePass, body, ROUNDS);
+        System.out.println(String.format(
+                "envelope of %d bytes: JSONObject %d us/op, single pass %d us/op",
+                body.length(), domNs / ROUNDS / 1000, singlePassNs / ROUNDS / 1000));
+    }
+
+    private static long run(Decoder decoder, String body, int rounds) throws Exception {
+        int total = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; ++i) {
+            total += decoder.decode(body).total;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        assertEquals(ITEM_COUNT * rounds, total);
+        return elapsed;
+    }
+
+    private static String createBody() {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < ITEM_COUNT; ++i) {
+            Item item = new Item();
+            item.id = i;
+            item.name = "item " + i;
+            item.price = i * 1.25;
+            item.available = i % 3 != 0;
+            item.tags = new ArrayList<>();
+            item.tags.add("tag" + (i % 7));
+            item.tags.add("tag" + (i % 11));
+            items.add(item);
+        }
+
+        Page page = new Page();
+        page.total = ITEM_COUNT;
+        page.items = items;
+
+        JSONObject envelope = new JSONObject();
+        envelope.put("ret", CommonError.SUCCESS);
+        envelope.put("msg", "success");
+        envelope.put("data", page);
+        return JSON.toJSONString(envelope);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Android Jungle-Major-Https framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.majorhttps.model.text;
+
+import com.jungle.majorhttps.network.CommonError;
+import com.jungle.majorhttps.request.base.BizParseError;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class JsonEnvelopeTest {
+
+    public static class Item {
+
+        public int id;
+        public String name;
+    }
+
+
+    @Test
+    public void decodesData() throws BizParseError {
+        Item item = decode("{\"ret\":0,\"msg\":\"ok\",\"data\":{\"id\":7,\"name\":\"a\"}}");
+
+        assertEquals(7, item.id);
+        assertEquals("a", item.name);
+    }
+
+    @Test
+    public void decodesDataBeforeRet() throws BizParseError {
+        Item item = decode("{\"data\":{\"id\":7,\"name\":\"a\"},\"msg\":\"ok\",\"ret\":0}");
+
+        assertEquals(7, item.id);
+        assertEquals("a", item.name);
+    }
+
+    @Test
+    public void reportsRetOfErrorEnvelope() {
+        try {
+            decode("{\"ret\":1001,\"msg\":\"no such item\",\"data\":\"not an item\"}");
+            fail("Expected the error of the envelope.");
+        } catch (BizParseError e) {
+            assertEquals(CommonError.FAILED, e.mErrorCode);
+            assertEquals("no such item", e.getMessage());
+        }
+    }
+
+    @Test
+    public void reportsRetOfErrorEnvelopeAfterData() {
+        // The data does not match the model, the code that follows it still wins.
+        try {
+            decode("{\"data\":[1,2,3],\"ret\":1001,\"msg\":\"no such item\"}");
+            fail("Expected the error of the envelope.");
+        } catch (BizParseError e) {
+            assertEquals(CommonError.FAILED, e.mErrorCode);
+            assertEquals("no such item", e.getMessage());
+        }
+    }
+
+    @Test
+    public void usesCustomFields() throws BizParseError {
+        JsonEnvelope envelope = new JsonEnvelope("code", "message", "result", 200);
+        Item item = envelope.decode(new StringReader(
+                "{\"code\":200,\"result\":{\"id\":3}}"), Item.class);
+
+        assertEquals(3, item.id);
+        assertNull(item.name);
+    }
+
+    @Test
+    public void reportsMalformedBody() {
+        try {
+            decode("{\"ret\":0,\"data\":{\"id\":");
+            fail("Expected a parse error.");
+        } catch (BizParseError e) {
+            assertEquals(CommonError.PARSE_BODY_ERROR, e.mErrorCode);
+        }
+    }
+
+    private static Item decode(String body) throws BizParseError {
+        return JsonEnvelope.DEFAULT.decode(new StringReader(body), Item.class);
+    }
+}